@@ -1,6 +1,7 @@
 package appium;
 
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.remote.CapabilityType;
@@ -15,6 +16,11 @@ import static org.junit.Assert.assertEquals;
 
 public class Test {
 
+    // sessions started and session starts avoided by tests which never used the driver
+    private static int started;
+    private static int avoided;
+
+    private DesiredCapabilities capabilities;
     private WebDriver driver;
 
     static {
@@ -25,17 +31,36 @@ public class Test {
     @Before
     public void setUp() throws Exception {
         final String appPath = Paths.get(System.getProperty("user.dir"), "UICatalog.app").toAbsolutePath().toString();
-        final DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities = new DesiredCapabilities();
         capabilities.setCapability(CapabilityType.VERSION, "7.1");
         capabilities.setCapability(CapabilityType.PLATFORM, "OS X 10.9");
         capabilities.setCapability("device", "iPhone Simulator");
         capabilities.setCapability("app", appPath);
-        driver = new RemoteWebDriver(new URL("http://127.0.0.1:4723/wd/hub"), capabilities);
+    }
+
+    /** The driver, starting the session on first use **/
+    private WebDriver driver() throws Exception {
+        if (driver == null) {
+            // another server, e.g. a stand-in, with -Dserver=<url>
+            driver = new RemoteWebDriver(new URL(System.getProperty("server", "http://127.0.0.1:4723/wd/hub")), capabilities);
+            started++;
+        }
+        return driver;
     }
 
     @After
     public void tearDown() throws Exception {
+        if (driver == null) {
+            avoided++;
+            return;
+        }
         driver.quit();
+        driver = null;
+    }
+
+    @AfterClass
+    public static void printSessions() {
+        System.out.println("Driver sessions: " + started + " opened, " + avoided + " starts avoided");
     }
 
     @org.junit.Test
@@ -0,0 +1,114 @@
+package appium.tutorial.android.benchmark;
+
+import appium.tutorial.android.util.AppiumTest;
+import appium.tutorial.android.util.LazyDriver;
+import appium.tutorial.android.util.ScreenScript;
+import appium.tutorial.android.util.WaitEngine;
+import io.appium.java_client.android.AndroidDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppiumTest helpers running against a {@link FakeAndroidDriver}: finding lists, evaluating
+ * wait conditions and reading the rows of a list as AutomatingASimpleActionTest.four() does.
+ *
+ * With latencyMicros=0 the numbers are the client side cost alone. A latency shows how much
+ * of a helper call is spent waiting on commands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppiumTestBenchmark {
+
+    private static final String TEXT_VIEW = "android.widget.TextView";
+
+    @Param({"0", "200"})
+    public long latencyMicros;
+
+    @Param({"20", "200"})
+    public int rows;
+
+    private Fixture test;
+
+    /** An AppiumTest driving the fake instead of a session it starts itself **/
+    static class Fixture extends AppiumTest {
+        Fixture(AndroidDriver fake) {
+            session = LazyDriver.opened(fake);
+        }
+
+        @Override
+        protected WaitEngine waitEngine() {
+            return super.waitEngine();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        test = new Fixture(new FakeAndroidDriver(ScreenScript.of(FakeAndroidDriver.list(rows)), latencyMicros,
+                TimeUnit.MICROSECONDS));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        test.tearDown();
+    }
+
+    /** Find all text views **/
+    @Benchmark
+    public List<WebElement> findElementsByClassName() {
+        return test.findElementsByClassName(TEXT_VIEW);
+    }
+
+    /** Wait for a visible element, which is found on the first poll **/
+    @Benchmark
+    public WebElement waitForKey() {
+        return test.waitForKey(test.setKeyByMatchesText("Row 0"));
+    }
+
+    /** The wait engine around a condition that holds at once, without any command **/
+    @Benchmark
+    public Boolean waitOverhead() {
+        return test.waitEngine().until(new ExpectedCondition<Boolean>() {
+            public Boolean apply(WebDriver webDriver) {
+                return Boolean.TRUE;
+            }
+        });
+    }
+
+    /** Row names as four() reads them now, in one exchange **/
+    @Benchmark
+    public List<String> rowNamesBulk() {
+        return test.findAttributes(By.className(TEXT_VIEW), "name");
+    }
+
+    /** Row names as four() used to read them, one getAttribute per row **/
+    @Benchmark
+    public List<String> rowNamesPerElement() {
+        List<String> names = new ArrayList<String>();
+        for (WebElement row : test.findElementsByClassName(TEXT_VIEW)) {
+            names.add(row.getAttribute("name"));
+        }
+        return names;
+    }
+}
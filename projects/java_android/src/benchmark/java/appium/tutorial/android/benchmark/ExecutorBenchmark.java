@@ -0,0 +1,117 @@
+package appium.tutorial.android.benchmark;
+
+import appium.tutorial.android.util.InstrumentedAndroidDriver;
+import appium.tutorial.android.util.ScreenScript;
+import appium.tutorial.android.util.StandInServer;
+import io.appium.java_client.MobileBy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command throughput of the default and the pooled command executor, with 1, 8 and 32
+ * sessions sending commands at the same time to a {@link StandInServer} over HTTP.
+ *
+ * A command is either a find with a small reply or a page source of a couple hundred rows,
+ * which the server gzips for the pooled executor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"default", "pooled"})
+        public String executor;
+
+        StandInServer server;
+        final Queue<InstrumentedAndroidDriver> drivers = new ConcurrentLinkedQueue<InstrumentedAndroidDriver>();
+
+        @Setup
+        public void setUp() throws IOException {
+            // read when a driver is created; every parameter runs in its own forked JVM
+            System.setProperty("executor", executor);
+            server = new StandInServer(ScreenScript.of(FakeAndroidDriver.list(200)), 0, 0, 0);
+        }
+
+        // quits the sessions too, the server may be torn down before the thread states are
+        @TearDown
+        public void tearDown() {
+            for (InstrumentedAndroidDriver driver : drivers) {
+                driver.quit();
+            }
+            server.stop();
+        }
+    }
+
+    /** One session per benchmark thread **/
+    @State(Scope.Thread)
+    public static class Session {
+        InstrumentedAndroidDriver driver;
+
+        @Setup
+        public void setUp(Server server) {
+            driver = new InstrumentedAndroidDriver(server.server.url(), new DesiredCapabilities());
+            server.drivers.add(driver);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object find1(Session session) {
+        return find(session);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object find8(Session session) {
+        return find(session);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object find32(Session session) {
+        return find(session);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String pageSource1(Session session) {
+        return session.driver.getPageSource();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String pageSource8(Session session) {
+        return session.driver.getPageSource();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String pageSource32(Session session) {
+        return session.driver.getPageSource();
+    }
+
+    private static Object find(Session session) {
+        return session.driver.findElement(MobileBy.AccessibilityId("Row 0"));
+    }
+}
@@ -0,0 +1,63 @@
+package appium.tutorial.android.benchmark;
+
+import appium.tutorial.android.util.InstrumentedAndroidDriver;
+import appium.tutorial.android.util.ScreenScript;
+import appium.tutorial.android.util.ScriptedExecutor;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InstrumentedAndroidDriver whose commands are answered in process by a {@link ScriptedExecutor}.
+ *
+ * Everything above the command executor (element conversion, error handling, the screen
+ * generation and command stats) runs as it does against a server.
+ */
+public class FakeAndroidDriver extends InstrumentedAndroidDriver {
+
+    private static final URL NOWHERE = url("http://127.0.0.1:1/wd/hub");
+
+    public FakeAndroidDriver(ScreenScript script, long latency, TimeUnit unit) {
+        super(NOWHERE, new DesiredCapabilities());
+        setCommandExecutor(new ScriptedExecutor(script, latency, unit));
+    }
+
+    // Called by the super constructor, there is no server to start a session on.
+    @Override
+    protected void startSession(Capabilities desiredCapabilities, Capabilities requiredCapabilities) {
+        setSessionId("fake");
+    }
+
+    private static URL url(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Page source of a list with the given number of rows, like the API Demos home screen **/
+    public static String list(int rows) {
+        StringBuilder source = new StringBuilder("<hierarchy rotation=\"0\">")
+                .append("<android.widget.FrameLayout index=\"0\" text=\"\" class=\"android.widget.FrameLayout\"")
+                .append(" content-desc=\"\" resource-id=\"\" scrollable=\"false\" bounds=\"[0,0][768,1184]\">")
+                .append("<android.widget.TextView index=\"0\" text=\"API Demos\" class=\"android.widget.TextView\"")
+                .append(" content-desc=\"\" resource-id=\"android:id/action_bar_title\" scrollable=\"false\"")
+                .append(" bounds=\"[0,50][768,146]\"/>")
+                .append("<android.widget.ListView index=\"1\" text=\"\" class=\"android.widget.ListView\"")
+                .append(" content-desc=\"\" resource-id=\"android:id/list\" scrollable=\"true\" bounds=\"[0,146][768,1184]\">");
+        for (int i = 0; i < rows; i++) {
+            // rows below the fold are in the hierarchy without any area
+            int top = 146 + i * 96;
+            String bounds = top + 96 <= 1184 ? "[0," + top + "][768," + (top + 96) + "]" : "[0,0][0,0]";
+            source.append("<android.widget.TextView index=\"").append(i).append("\" text=\"Row ").append(i)
+                    .append("\" class=\"android.widget.TextView\" content-desc=\"Row ").append(i)
+                    .append("\" resource-id=\"android:id/text1\" scrollable=\"false\" bounds=\"").append(bounds)
+                    .append("\"/>");
+        }
+        return source.append("</android.widget.ListView></android.widget.FrameLayout></hierarchy>").toString();
+    }
+}
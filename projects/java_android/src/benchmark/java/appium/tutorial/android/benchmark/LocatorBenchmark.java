@@ -0,0 +1,67 @@
+package appium.tutorial.android.benchmark;
+
+import appium.tutorial.android.util.AppiumTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the locators tests ask for, which happens on every setKeyBy* call.
+ * No driver is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocatorBenchmark {
+
+    // as many distinct texts as a long test uses
+    private static final int TEXTS = 64;
+
+    private final AppiumTest test = new AppiumTest() {};
+    private final String[] texts = new String[TEXTS];
+    private int next;
+
+    public LocatorBenchmark() {
+        for (int i = 0; i < TEXTS; i++) {
+            texts[i] = "Row " + i;
+        }
+    }
+
+    private String nextText() {
+        next = (next + 1) % TEXTS;
+        return texts[next];
+    }
+
+    @Benchmark
+    public By setKeyByResources() {
+        return test.setKeyByResources(nextText());
+    }
+
+    @Benchmark
+    public By setKeyByContainsText() {
+        return test.setKeyByContainsText(nextText());
+    }
+
+    @Benchmark
+    public By setKeyByMatchesText() {
+        return test.setKeyByMatchesText(nextText());
+    }
+
+    @Benchmark
+    public By setKeyByIndex() {
+        next = (next + 1) % TEXTS;
+        return test.setKeyByIndex(next + 2);
+    }
+}
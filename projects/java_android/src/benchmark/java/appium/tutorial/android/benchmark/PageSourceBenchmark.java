@@ -0,0 +1,70 @@
+package appium.tutorial.android.benchmark;
+
+import appium.tutorial.android.util.Locators;
+import appium.tutorial.android.util.NodeTable;
+import appium.tutorial.android.util.PageSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a page source the way polling waits do: into a {@link PageSnapshot} and matching an
+ * xpath, or into a {@link NodeTable} and matching only what changed since the previous poll.
+ * Run with -prof gc to compare the allocation per poll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageSourceBenchmark {
+
+    @Param({"200", "2000"})
+    public int rows;
+
+    private String before;
+    private String after;
+    private By locator;
+    private NodeTable.Watch watch;
+    private boolean changed;
+
+    @Setup
+    public void setUp() {
+        before = FakeAndroidDriver.list(rows);
+        // one row changes between the polls
+        after = before.replace("text=\"Row 1\"", "text=\"Row one\"");
+        locator = Locators.textExact("Row one");
+        watch = new NodeTable.Watch(NodeTable.matcher(locator));
+        watch.update(NodeTable.parse(before));
+    }
+
+    @Benchmark
+    public boolean snapshot() {
+        return PageSnapshot.parse(after, -1).contains(locator);
+    }
+
+    @Benchmark
+    public NodeTable parseTable() {
+        return NodeTable.parse(after);
+    }
+
+    /** A poll of a wait, which only matches the changed row again **/
+    @Benchmark
+    public int watch() {
+        changed = !changed;
+        watch.update(NodeTable.parse(changed ? after : before));
+        return watch.shown();
+    }
+}
@@ -1,10 +1,10 @@
 package appium.tutorial.android;
 
 import appium.tutorial.android.util.AppiumTest;
+import appium.tutorial.android.util.Steps.Step;
 
 import org.openqa.selenium.WebElement;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
@@ -16,7 +16,7 @@ public class AutomatingASimpleActionTest extends AppiumTest {
         // Find a text view with the name "Accessibility" and then click
         findElementContainsText("Accessibility").click();
         // Check that the element exists
-        findElementMatchesText("Accessibility Node Provider");
+        checkForKey(setKeyByMatchesText("Accessibility Node Provider"));
     }
 
     @Test
@@ -34,26 +34,24 @@ public class AutomatingASimpleActionTest extends AppiumTest {
 
     @Test
     public void four() throws Exception {
-    	setWaitingTimeInSeconds(0);
-
-        List<String> cellNames = new ArrayList<String>();
-
-        for (WebElement cell : findElementsByClassName("android.widget.TextView")) {
-        	cellNames.add(cell.getAttribute("name"));
-        }
-
-        // delete title cell
-        cellNames.remove(0);
-
-        for (String cellName : cellNames) {
-            WebElement webElement = scrollToExact(cellName);
-            webElement.click();
-            waitInvisible(setKeyByMatchesText(cellName));
-            back();
-            waitForKey(setKeyByResources("Accessibility"));
-            waitForKey(setKeyByResources("Animation"));
+        // the rows on screen, without the title; the list is indexed once, on the first scroll to a row
+        List<String> cellNames = visibleListRows();
+        // a row which fails to open is retried from the list, without starting over. The probe
+        // runs every 100 ms while a step is retried, so it is a UiSelector text match, not an xpath
+        checkpoint("on the home list", setKeyByMatchesText("Animation"));
+
+        for (final String cellName : cellNames) {
+            step(cellName, new Step<Void>() {
+                public Void run() {
+                    WebElement webElement = scrollToRow(cellName);
+                    webElement.click();
+                    waitInvisible(setKeyByMatchesText(cellName));
+                    capture(cellName);
+                    back();
+                    waitForAll(setKeyByResources("Accessibility"), setKeyByResources("Animation"));
+                    return null;
+                }
+            });
         }
-
-        setWaitingTimeInSeconds(30); // restore old implicit wait
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package appium.tutorial.android;
+
+import appium.tutorial.android.util.MatrixSuite;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * All tests on every target of the matrix, longest first across all endpoints.
+ * Run with mvn -Dtest=Matrix -Dmatrix=4.3/Android,4.4/Android test
+ */
+@RunWith(MatrixSuite.class)
+@Suite.SuiteClasses({AutomatingASimpleActionTest.class})
+public class Matrix {
+}
@@ -9,12 +9,20 @@ import org.junit.Rule;
 import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
+import org.junit.runner.RunWith;
 import org.openqa.selenium.By;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
+import org.w3c.dom.Element;
 
+import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -22,6 +30,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+@RunWith(HistoryRunner.class)
 public abstract class AppiumTest {
 
     /*
@@ -53,13 +62,14 @@ public abstract class AppiumTest {
     private static final String PLATFORM_NAME_KEY = "platformName";
     private static final String PLATFORM_NAME_VALUE = "Android";
 
-    //    Device name
+    //    Device name and platform version, those of the target of the matrix the test runs on.
+    //    See Target and MatrixSuite.
     private static final String DEVICE_NAME_KEY = "deviceName";
-    private static final String DEVICE_NAME_VALUE = "Android";
+    protected String deviceNameValue = Target.current().deviceName();
 
     //    Platform Version
     private static final String PLATFORM_VERSION_KEY = "platformVersion";
-    protected String platformVersionValue = "4.3";
+    protected String platformVersionValue = Target.current().platformVersion();
 
     //    Name
     private static final String NAME_KEY = "name";
@@ -70,8 +80,12 @@ public abstract class AppiumTest {
     private static final String LOCAL_APP_NAME = "api.apk";
 
     // Other properties
-    private static final String SERVER_ADDRESS = "http://127.0.0.1:4723/wd/hub";
-
+    // The Appium server is -Dserver=<url>, or the one of the worker thread, see Endpoints.
+    // With -Dstandin=<screens directory> the tests run against a StandInServer started in
+    // this JVM instead.
+    //
+    // How long finds wait for an element to appear. The implicit wait itself is off,
+    // see WaitEngine.
     protected int defaultWaitingTime = 30;
     protected TimeUnit defaultWaitingTimeUnit = TimeUnit.SECONDS;
 
@@ -79,6 +93,24 @@ public abstract class AppiumTest {
     // waiting for 30 seconds works locally however it fails on Sauce.
     protected int maximumWaitingTime = 60;
 
+    // Reuse sessions between tests instead of reinstalling the app every time.
+    // Enable with -Dpool=true. Not while recording or replaying traffic, a log belongs to one test.
+    protected boolean reuseSessions = Boolean.getBoolean("pool")
+            && !TrafficLog.recording() && !TrafficLog.replaying();
+
+    // Evaluate xpath locators on a page source snapshot instead of on the device.
+    // Enable with -Dsnapshot=true
+    protected boolean useSnapshots = Boolean.getBoolean("snapshot");
+
+    private static final SessionPool<AndroidDriver> pool = new SessionPool<AndroidDriver>(
+            new SessionPool.Factory<AndroidDriver>() {
+                public AndroidDriver create(URL server, Capabilities capabilities) throws Exception {
+                    return new InstrumentedAndroidDriver(server, capabilities);
+                }
+            },
+            Long.getLong("pool.maxAgeSeconds", 900), TimeUnit.SECONDS,
+            Integer.getInteger("pool.maxLeases", 50));
+
     static {
         // Disable annoying cookie warnings.
         // WARNING: Invalid cookie header
@@ -86,17 +118,91 @@ public abstract class AppiumTest {
     }
 
     // The follow elements are protected to allow the class which extends this class
-    // to use other functions if needed
-    protected AndroidDriver driver;
-    protected WebDriverWait driverWait;
+    // to use other functions if needed. The session is opened on first use of driver(),
+    // so a test which never talks to the device doesn't start one.
+    protected LazyDriver<AndroidDriver> session;
+    // the session of a test which tearDown has left to printTests, see Captures
+    private AndroidDriver unreleased;
+    private WebDriverWait driverWait;
+    private WaitEngine waitEngine;
+    private ElementCache elementCache;
+    private ListIndex listIndex;
+
+    // Page source of the current screen, see snapshot()
+    private PageSnapshot snapshot;
+
+    // Retries failed steps from the last checkpoint in the same session, see step()
+    @Rule
+    public Steps steps = new Steps(new Steps.Navigation() {
+        public void back() {
+            AppiumTest.this.back();
+        }
+
+        public void resetApp() {
+            driver().resetApp();
+        }
+    });
 
     @Rule
     public TestRule printTests = new TestWatcher() {
+        private long start;
+        private long span;
+        private Boolean passed;
+
         protected void starting(Description description) {
             System.out.print("  Appium test: " + description.getMethodName() + "\n");
+            start = System.nanoTime();
+            CommandStats.start(description.getClassName() + "." + description.getMethodName());
+            Captures.start(TimingHistory.key(description));
+            TrafficLog.start(TimingHistory.key(description));
+            Trace.start(TimingHistory.key(description));
+            span = Trace.begin();
+        }
+
+        protected void succeeded(Description description) {
+            passed = true;
+        }
+
+        protected void failed(Throwable e, Description description) {
+            passed = false;
+            // the session is still open, see tearDown
+            if (unreleased != null) {
+                Captures.failure(unreleased);
+            }
         }
         
         protected void finished(Description description) {
+            Captures.finish();
+            if (unreleased != null) {
+                AndroidDriver opened = unreleased;
+                unreleased = null;
+                try {
+                    release(opened);
+                } catch (RuntimeException e) {
+                    System.out.println("    unable to end the session: " + e);
+                }
+            }
+            // skipped tests have no outcome to record
+            if (passed != null) {
+                try {
+                    TimingHistory.record(TimingHistory.key(description),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), passed);
+                } catch (IOException e) {
+                    System.out.println("    unable to record the test history: " + e);
+                }
+            }
+            TrafficLog.finish();
+            Trace.end("test", description.getMethodName(), passed == null ? "skipped" : passed ? "passed" : "failed", span);
+            Trace.finish();
+            CommandStats stats = CommandStats.finish();
+            if (stats != null) {
+                System.out.println(stats.summary());
+                try {
+                    stats.write();
+                } catch (IOException e) {
+                    System.out.println("    unable to write command stats: " + e);
+                }
+            }
             System.out.println();
         }
     };
@@ -107,42 +213,226 @@ public abstract class AppiumTest {
     /** Run before each test **/
     @Before
     public void setUp() throws Exception {
-        DesiredCapabilities capabilities = new DesiredCapabilities();
+        final DesiredCapabilities capabilities = new DesiredCapabilities();
         capabilities.setCapability(APPIUM_VERSION_KEY, appiumVersionValue);
         capabilities.setCapability(PLATFORM_NAME_KEY, PLATFORM_NAME_VALUE);
-        capabilities.setCapability(DEVICE_NAME_KEY, DEVICE_NAME_VALUE);
+        capabilities.setCapability(DEVICE_NAME_KEY, deviceNameValue);
         capabilities.setCapability(PLATFORM_VERSION_KEY, platformVersionValue);
 
         // Set job name on Sauce Labs
         capabilities.setCapability(NAME_KEY, NAME_VALUE + " " + date);
         String userDir = System.getProperty("user.dir");
 
-        URL serverAddress;
         String localApp = LOCAL_APP_NAME;
         String appPath = Paths.get(userDir, localApp).toAbsolutePath().toString();
         capabilities.setCapability(APP_KEY, appPath);
-        serverAddress = new URL(SERVER_ADDRESS);
-        driver = new AndroidDriver(serverAddress, capabilities);
-        driver.manage().timeouts().implicitlyWait(defaultWaitingTime, defaultWaitingTimeUnit);
 
-        // Create special driver for waiting
-        driverWait = new WebDriverWait(driver, maximumWaitingTime);
+        session = new LazyDriver<AndroidDriver>(new LazyDriver.Opener<AndroidDriver>() {
+            public AndroidDriver open() throws Exception {
+                URL serverAddress = Endpoints.current();
+                if (reuseSessions) {
+                    return pool.lease(serverAddress, capabilities);
+                }
+                return new InstrumentedAndroidDriver(serverAddress, capabilities);
+            }
+        });
     }
 
     /** Run after each test **/
     @After
     public void tearDown() throws Exception {
-        if (driver != null) {
-        	driver.quit();
+        AndroidDriver opened = session == null ? null : session.release();
+        if (opened == null) {
+            return;
+        }
+
+        if (Captures.enabled()) {
+            // rules run around tearDown, so printTests ends the session once it has
+            // captured the screen of a failed test
+            unreleased = opened;
+            return;
+        }
+        release(opened);
+    }
+
+    private void release(AndroidDriver opened) {
+        if (reuseSessions) {
+            pool.release(opened);
+        } else {
+            opened.quit();
+        }
+    }
+
+    /**
+     * Return the driver of this test, starting the session if this is the first use.
+     */
+    protected AndroidDriver driver() {
+        return session.get();
+    }
+
+    /**
+     * Return the wait engine with the maximum waiting time.
+     */
+    protected WaitEngine waitEngine() {
+        if (waitEngine == null) {
+            // The wait engine turns the implicit wait off and does all waiting, so implicit
+            // and explicit waits don't add up
+            waitEngine = new WaitEngine(driver(), maximumWaitingTime, TimeUnit.SECONDS);
+        }
+        return waitEngine;
+    }
+
+    /**
+     * Return a special driver for waiting.
+     */
+    protected WebDriverWait driverWait() {
+        if (driverWait == null) {
+            driverWait = new WebDriverWait(driver(), maximumWaitingTime);
+        }
+        return driverWait;
+    }
+
+    /**
+     * Return the page source snapshot of the current screen. The page source is fetched again
+     * once a command may have changed the screen.
+     * @return The snapshot of the current screen
+     */
+    public PageSnapshot snapshot() {
+        AndroidDriver driver = driver();
+        long generation = driver instanceof InstrumentedAndroidDriver
+                ? ((InstrumentedAndroidDriver) driver).screenGeneration() : -1;
+
+        if (snapshot == null || generation < 0 || snapshot.generation() != generation) {
+            snapshot = PageSnapshot.parse(driver.getPageSource(), generation);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Return a snapshot for bulk reads. Without snapshots enabled the page source is always
+     * fetched again, so the result is as current as individual getAttribute calls.
+     */
+    private PageSnapshot bulkSnapshot() {
+        if (!useSnapshots) {
+            snapshot = null;
+        }
+        return snapshot();
+    }
+
+    /**
+     * Return an attribute of every element matching the locator, using one page source fetch
+     * instead of a getAttribute call per element.
+     * @param locator The key used to find the elements
+     * @param attribute The attribute to read, e.g. "name"
+     * @return The values in the order of the elements
+     */
+    public List<String> findAttributes(By locator, String attribute) {
+        if (!PageSnapshot.supports(locator)) {
+            List<String> values = new ArrayList<String>();
+            for (WebElement element : driver().findElements(locator)) {
+                values.add(element.getAttribute(attribute));
+            }
+            return values;
+        }
+        return bulkSnapshot().attributes(locator, attribute);
+    }
+
+    /**
+     * Return whether each element matching the locator is displayed, using one page source
+     * fetch instead of an isDisplayed call per element.
+     * @param locator The key used to find the elements
+     * @return The displayed flags in the order of the elements
+     */
+    public List<Boolean> findDisplayed(By locator) {
+        if (!PageSnapshot.supports(locator)) {
+            List<Boolean> values = new ArrayList<Boolean>();
+            for (WebElement element : driver().findElements(locator)) {
+                values.add(element.isDisplayed());
+            }
+            return values;
+        }
+        return bulkSnapshot().displayed(locator);
+    }
+
+    /**
+     * Return the first element by locator. The element is found once per screen, see
+     * {@link ElementCache}.
+     * @param locator The key used to find the element
+     * @return The first element that matches
+     */
+    public WebElement findElement(By locator) {
+        if (elementCache == null) {
+            elementCache = new ElementCache(driver(), new ElementCache.Finder() {
+                public WebElement find(By locator) {
+                    return findOnDevice(locator);
+                }
+            });
+        }
+        return elementCache.get(locator);
+    }
+
+    /**
+     * Find the first element by locator on the device. With snapshots the locator is matched
+     * against the page source and the element is fetched with a native locator instead of an
+     * xpath search.
+     */
+    private WebElement findOnDevice(By locator) {
+        if (useSnapshots && PageSnapshot.supports(locator)) {
+            PageSnapshot current = snapshot();
+            List<Element> found = current.findAll(locator);
+            if (!found.isEmpty()) {
+                By nativeLocator = current.nativeLocator(found.get(0));
+                if (nativeLocator != null) {
+                    return finder().find(nativeLocator);
+                }
+            }
+        }
+        return finder().find(locator);
+    }
+
+    /**
+     * Return the wait engine with the timeout used for finds.
+     */
+    private WaitEngine finder() {
+        return waitEngine().withTimeout(defaultWaitingTime, defaultWaitingTimeUnit);
+    }
+
+    /**
+     * Verify an element exists. With snapshots this is answered from the page source
+     * without fetching the element.
+     * @param locator The key used to find the element
+     * @throws NoSuchElementException if nothing matches within the default waiting time
+     */
+    public void checkForKey(final By locator) {
+        if (!useSnapshots || !PageSnapshot.supports(locator)) {
+            findElement(locator);
+            return;
+        }
+
+        try {
+            finder().until("check " + locator, new ExpectedCondition<Boolean>() {
+                public Boolean apply(WebDriver webDriver) {
+                    if (snapshot().contains(locator)) {
+                        return true;
+                    }
+                    // the screen may still be loading
+                    snapshot = null;
+                    return false;
+                }
+            });
+        } catch (TimeoutException e) {
+            throw new NoSuchElementException("Unable to locate " + locator + " in page source", e);
         }
     }
 
     /**
-     * Set implicit wait in seconds.
+     * Set how long finds wait for an element, in seconds. This used to be the implicit wait;
+     * the implicit wait now stays off.
      * @param seconds The number of seconds to wait.
      */
     public void setWaitingTimeInSeconds(int seconds) {
-    	driver.manage().timeouts().implicitlyWait(seconds, TimeUnit.SECONDS);
+        defaultWaitingTime = seconds;
+        defaultWaitingTimeUnit = TimeUnit.SECONDS;
     }
 
     /**
@@ -160,7 +450,44 @@ public abstract class AppiumTest {
      * this might close the app.
      */
     public void back() {
-    	driver.navigate().back();
+    	driver().navigate().back();
+    }
+
+    /**
+     * Mark the screen as a checkpoint. A step which fails transiently is retried after going back
+     * to the screen, see {@link #step(String, Steps.Step)}.
+     * @param name The name of the checkpoint
+     * @param locator A locator which finds an element only on this screen. It is probed every 100 ms
+     *     while the app is brought back, so prefer a native one, e.g. {@link #setKeyByMatchesText(String)}.
+     */
+    public void checkpoint(String name, final By locator) {
+        Steps.checkpoint(name, new Steps.Checkpoint() {
+            public boolean reached() {
+                return !waitEngine().withTimeout(0, TimeUnit.SECONDS).findAll(locator).isEmpty();
+            }
+        });
+    }
+
+    /**
+     * Run a step of the test. If it fails because an element wasn't found or a wait timed out, the
+     * app is brought back to the last checkpoint in the same session and the step runs again, see {@link Steps}.
+     * @param name The name of the step
+     * @param step The step
+     * @return What the step returns
+     */
+    public <T> T step(String name, Steps.Step<T> step) throws Exception {
+        return Steps.step(name, step);
+    }
+
+    /**
+     * Capture the screenshot and page source at a step of the test, with -Dcapture=steps.
+     * See {@link Captures}.
+     * @param step The name of the step, part of the file names
+     */
+    public void capture(String step) {
+        if (Captures.capturesSteps()) {
+            Captures.step(driver(), step);
+        }
     }
 
     /**
@@ -169,7 +496,7 @@ public abstract class AppiumTest {
      * @return The list of elements that contains that class
      */
     public List<WebElement> findElementsByClassName(String className) {
-        return driver.findElements(By.className(className));
+        return finder().findAll(By.className(className));
     }
 
     /**
@@ -186,7 +513,7 @@ public abstract class AppiumTest {
             return findFirstElementOfList();
         }
 
-        return driver.findElement(setKeyByIndex(xPathIndex));
+        return findElement(setKeyByIndex(xPathIndex));
     }
 
     /**
@@ -198,15 +525,46 @@ public abstract class AppiumTest {
      * @return The first WebElement of the list
      */
     public WebElement findFirstElementOfList() {
-      List<String> cellNames = new ArrayList<String>();
+      return scrollToRow(listRows().get(0));
+    }
+
+    /**
+     * Return the index of the list on screen. It is built on first use and kept for the test,
+     * so visiting every row scrolls through the list once instead of once per row.
+     */
+    protected ListIndex listIndex() {
+        if (listIndex == null) {
+            listIndex = new ListIndex(driver(), By.className("android.widget.ListView"),
+                    By.xpath("//android.widget.ListView/android.widget.TextView"));
+        }
+        return listIndex;
+    }
 
-      for (WebElement cell : findElementsByClassName("android.widget.TextView")) {
-      	cellNames.add(cell.getAttribute("name"));
-      }
+    /**
+     * Return the names of all rows of the list on screen, without the title. The first call
+     * swipes through the whole list to index it, see {@link #listIndex()}.
+     * @return The names, top first
+     */
+    public List<String> listRows() {
+        return listIndex().names();
+    }
+
+    /**
+     * Return the names of the rows of the list which show without scrolling, without the title.
+     * @return The names, top first
+     */
+    public List<String> visibleListRows() {
+        return listIndex().shown();
+    }
 
-      // delete title cell
-      cellNames.remove(0);
-      return scrollToExact(cellNames.get(0));
+    /**
+     * Return a row of the list on screen, scrolled into view with the swipes from where the
+     * list is to the row, see {@link ListIndex}.
+     * @param name The name of the row
+     * @return The row
+     */
+    public WebElement scrollToRow(String name) {
+        return listIndex().scrollTo(name);
     }
 
     /**
@@ -222,7 +580,7 @@ public abstract class AppiumTest {
             throw new IllegalArgumentException("There is a bug by interacting with the first element of the list. Please do not use"
             		+ "this method to find it. Instead, use the method findFirstElementOfList()");
         }
-        return By.xpath("//android.widget.TextView[" + xPathIndex + "]");
+        return Locators.textAt(xPathIndex);
     }
 
     /**
@@ -232,7 +590,7 @@ public abstract class AppiumTest {
      * @return The first element which contains that text.
      */
     public WebElement findElementContainsText(String text) {
-        return driver.findElement(setKeyByContainsText(text));
+        return findElement(setKeyByContainsText(text));
     }
 
     /**
@@ -242,7 +600,7 @@ public abstract class AppiumTest {
      * @return the key which corresponding criteria
      */
     public By setKeyByContainsText(String text) {
-        return By.xpath("//android.widget.TextView[contains(@text, '" + text + "')]");
+        return Locators.textContains(text);
     }
 
    /**
@@ -253,7 +611,7 @@ public abstract class AppiumTest {
     *     The first element that matches with the criteria
     */
     public WebElement findElementMatchesText(String text) {
-        return driver.findElement(setKeyByMatchesText(text));
+        return findElement(setKeyByMatchesText(text));
     }
 
     /**
@@ -264,7 +622,7 @@ public abstract class AppiumTest {
      *     They key (locator) which looks for element(s) that matches with the text.
      */
     public By setKeyByMatchesText(String text) {
-        return By.xpath("//android.widget.TextView[@text='" + text + "']");
+        return Locators.textExact(text);
     }
 
     /**
@@ -275,14 +633,7 @@ public abstract class AppiumTest {
      *     The key (locator) which looks for element(s) that contains the text as resource.
      */
     public By setKeyByResources(String text) {
-        String xPathExpression = 
-                "//*[@content-desc=\"" + text + "\" or "
-                  + "@resource-id=\"" + text + "\" or "
-                  + "@text=\"" + text + "\"] |"
-              + "//*[contains(translate(@content-desc,\"" + text + "\",\"" + text + "\"), \"" + text + "\") or "
-                  + "contains(translate(@text,\"" + text + "\",\"" + text + "\"), \"" + text + "\") or "
-                  + "@resource-id=\"" + text + "\"]";
-        return By.xpath(xPathExpression);
+        return Locators.resources(text);
     }
 
     /**
@@ -293,7 +644,7 @@ public abstract class AppiumTest {
      *     The first element that matches with the criteria.
      */
     public WebElement findElementByResources(String text) {
-        return driver.findElement(setKeyByResources(text));
+        return findElement(setKeyByResources(text));
     }
 
     /**
@@ -303,8 +654,26 @@ public abstract class AppiumTest {
      * @return
      *     The element found after N seconds.
      */
-    public WebElement waitForKey(By locator) {
-        return driverWait.until(ExpectedConditions.visibilityOfElementLocated(locator));
+    public WebElement waitForKey(final By locator) {
+        NodeTable.Matcher matcher = NodeTable.matcher(locator);
+        if (!useSnapshots || matcher == null) {
+            return waitEngine().until(ExpectedConditions.visibilityOfElementLocated(locator));
+        }
+
+        // poll the page source, looking only at what changed since the previous poll, then fetch the element once
+        final NodeTable.Watch watch = new NodeTable.Watch(matcher);
+        waitEngine().until(new ExpectedCondition<Boolean>() {
+            public Boolean apply(WebDriver webDriver) {
+                watch.update(NodeTable.parse(driver().getPageSource()));
+                return watch.shown() > 0;
+            }
+
+            public String toString() {
+                return "visibility of element located by " + locator;
+            }
+        });
+        By nativeLocator = watch.table().nativeLocator(watch.firstShown());
+        return finder().find(nativeLocator != null ? nativeLocator : locator);
     }
 
     /**
@@ -314,8 +683,25 @@ public abstract class AppiumTest {
      * @return
      *     The list of elements found after N seconds.
      */
-    public List<WebElement> waitAll(By locator) {
-        return driverWait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator));
+    public List<WebElement> waitAll(final By locator) {
+        NodeTable.Matcher matcher = NodeTable.matcher(locator);
+        if (!useSnapshots || matcher == null) {
+            return waitEngine().until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator));
+        }
+
+        // poll the page source, looking only at what changed since the previous poll, then fetch the elements once
+        final NodeTable.Watch watch = new NodeTable.Watch(matcher);
+        waitEngine().until(new ExpectedCondition<Boolean>() {
+            public Boolean apply(WebDriver webDriver) {
+                watch.update(NodeTable.parse(driver().getPageSource()));
+                return watch.matches() > 0 && watch.shown() == watch.matches();
+            }
+
+            public String toString() {
+                return "visibility of all elements located by " + locator;
+            }
+        });
+        return driver().findElements(locator);
     }
 
     /**
@@ -325,8 +711,57 @@ public abstract class AppiumTest {
      * @return
      *     True if the element became invisible or not exist.
      */
-    public boolean waitInvisible(By locator) {
-        return driverWait.until(ExpectedConditions.invisibilityOfElementLocated(locator));
+    public boolean waitInvisible(final By locator) {
+        NodeTable.Matcher matcher = NodeTable.matcher(locator);
+        if (!useSnapshots || matcher == null) {
+            return waitEngine().until(ExpectedConditions.invisibilityOfElementLocated(locator));
+        }
+
+        final NodeTable.Watch watch = new NodeTable.Watch(matcher);
+        return waitEngine().until(new ExpectedCondition<Boolean>() {
+            public Boolean apply(WebDriver webDriver) {
+                watch.update(NodeTable.parse(driver().getPageSource()));
+                return watch.shown() == 0;
+            }
+
+            public String toString() {
+                return "element to no longer be visible: " + locator;
+            }
+        });
+    }
+
+    /**
+     * Wait N seconds for every locator to find a visible element, checking all of them against one
+     * page source per poll, see {@link Conditions}.
+     * @param locators
+     *     The keys (locators) used
+     * @return
+     *     Which locators were met, and how long each took.
+     */
+    public Conditions.Result waitForAll(By... locators) {
+        return waitEngine().until(Conditions.allOf(locators));
+    }
+
+    /**
+     * Wait N seconds for any of the locators to find a visible element, see {@link #waitForAll(By...)}.
+     * @param locators
+     *     The keys (locators) used
+     * @return
+     *     Which locators were met, and how long each took.
+     */
+    public Conditions.Result waitForAny(By... locators) {
+        return waitEngine().until(Conditions.anyOf(locators));
+    }
+
+    /**
+     * Wait N seconds for none of the locators to find a visible element, see {@link #waitForAll(By...)}.
+     * @param locators
+     *     The keys (locators) used
+     * @return
+     *     Which locators were met, and how long each took.
+     */
+    public Conditions.Result waitForNone(By... locators) {
+        return waitEngine().until(Conditions.noneOf(locators));
     }
 
     /**
@@ -336,8 +771,12 @@ public abstract class AppiumTest {
      * @return
      *     The element which has already scrolled to such value
      */
-    public WebElement scrollTo(String value) {
-        return driver.scrollTo(value);
+    public WebElement scrollTo(final String value) {
+        return finder().until("scroll to " + value, new ExpectedCondition<WebElement>() {
+            public WebElement apply(WebDriver webDriver) {
+                return driver().scrollTo(value);
+            }
+        });
     }
 
     /**
@@ -348,7 +787,11 @@ public abstract class AppiumTest {
      *     The element which has already scrolled to such value
      * 
      */
-    public WebElement scrollToExact(String value) {
-        return driver.scrollToExact(value);
-  }
+    public WebElement scrollToExact(final String value) {
+        return finder().until("scroll to exact " + value, new ExpectedCondition<WebElement>() {
+            public WebElement apply(WebDriver webDriver) {
+                return driver().scrollToExact(value);
+            }
+        });
+    }
 }
\ No newline at end of file
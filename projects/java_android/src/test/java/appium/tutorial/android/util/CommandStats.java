@@ -0,0 +1,235 @@
+package appium.tutorial.android.util;
+
+import com.google.gson.Gson;
+import org.openqa.selenium.remote.RemoteWebElement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per test counts, latencies and estimated payload sizes of the WebDriver commands, and the CPU
+ * time the test thread used.
+ *
+ * The printTests watcher starts the stats before the test and finishes them afterwards.
+ * Everything in between runs on the test thread, so {@link InstrumentedAndroidDriver} records into
+ * the stats of the current thread. Time spent inside {@link WaitEngine} waits is tracked
+ * separately, so commands issued while polling can be told apart from the test's own.
+ *
+ * Each finished test is appended as one JSON line to target/command-stats.jsonl, or to the
+ * file given with -Dcommand.stats, so runs can be compared.
+ */
+public class CommandStats {
+
+    private static final ThreadLocal<CommandStats> current = new ThreadLocal<CommandStats>();
+
+    private static final File file = new File(System.getProperty("command.stats", "target/command-stats.jsonl"));
+    // a lock rather than synchronized, so a virtual thread writing its stats doesn't pin its carrier
+    private static final ReentrantLock writing = new ReentrantLock();
+    private static boolean fileStarted;
+
+    private final String test;
+    private final long start = System.nanoTime();
+    private final long startCpu = cpuNanos();
+    private long end;
+    private long endCpu;
+    private final Map<String, Command> commands = new TreeMap<String, Command>();
+
+    private int waitDepth;
+    private long waitStart;
+    private long waitNanos;
+
+    private CommandStats(String test) {
+        this.test = test;
+    }
+
+    /** Start recording the commands of a test on the current thread **/
+    public static void start(String test) {
+        current.set(new CommandStats(test));
+    }
+
+    /** The stats of the test running on the current thread, or null **/
+    public static CommandStats current() {
+        return current.get();
+    }
+
+    /** Stop recording on the current thread and return what was recorded **/
+    public static CommandStats finish() {
+        CommandStats stats = current.get();
+        current.remove();
+        if (stats != null) {
+            stats.end = System.nanoTime();
+            stats.endCpu = cpuNanos();
+        }
+        return stats;
+    }
+
+    static void enterWait() {
+        CommandStats stats = current.get();
+        if (stats != null && stats.waitDepth++ == 0) {
+            stats.waitStart = System.nanoTime();
+        }
+    }
+
+    static void exitWait() {
+        CommandStats stats = current.get();
+        if (stats != null && --stats.waitDepth == 0) {
+            stats.waitNanos += System.nanoTime() - stats.waitStart;
+        }
+    }
+
+    /** Record one command with its round trip time **/
+    void record(String command, long nanos, Object request, Object response) {
+        Command stats = commands.get(command);
+        if (stats == null) {
+            stats = new Command();
+            commands.put(command, stats);
+        }
+        stats.micros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        stats.requestBytes += estimatedJsonBytes(request);
+        stats.responseBytes += estimatedJsonBytes(response);
+        if (waitDepth > 0) stats.inWaitNanos += nanos;
+    }
+
+    /** One line for the console **/
+    public String summary() {
+        long count = 0;
+        long nanos = 0;
+        long bytes = 0;
+        StringBuilder perCommand = new StringBuilder();
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            Command command = entry.getValue();
+            count += command.micros.count();
+            nanos += TimeUnit.MICROSECONDS.toNanos(command.micros.total());
+            bytes += command.requestBytes + command.responseBytes;
+            perCommand.append(perCommand.length() == 0 ? "" : ", ").append(entry.getKey()).append(' ')
+                    .append(command.micros.count());
+        }
+        return "    " + count + " commands in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, "
+                + "~" + (bytes / 1024) + " KB payload (estimated), " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms waiting, "
+                + TimeUnit.NANOSECONDS.toMillis(cpuNanosUsed()) + " ms CPU"
+                + (perCommand.length() == 0 ? "" : " (" + perCommand + ")");
+    }
+
+    /** Append the stats as one JSON line **/
+    public void write() throws IOException {
+        Map<String, Object> commandsJson = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            Command command = entry.getValue();
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            json.put("count", command.micros.count());
+            json.put("totalMicros", command.micros.total());
+            json.put("p50Micros", command.micros.percentile(0.5));
+            json.put("p90Micros", command.micros.percentile(0.9));
+            json.put("maxMicros", command.micros.max());
+            json.put("inWaitMicros", TimeUnit.NANOSECONDS.toMicros(command.inWaitNanos));
+            json.put("estimatedRequestBytes", command.requestBytes);
+            json.put("estimatedResponseBytes", command.responseBytes);
+            commandsJson.put(entry.getKey(), json);
+        }
+
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("test", test);
+        line.put("durationMillis", TimeUnit.NANOSECONDS.toMillis((end != 0 ? end : System.nanoTime()) - start));
+        line.put("waitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        line.put("cpuMicros", TimeUnit.NANOSECONDS.toMicros(cpuNanosUsed()));
+        line.put("commands", commandsJson);
+        String json = new Gson().toJson(line);
+
+        writing.lock();
+        try {
+            // start a new file for every run
+            boolean append = fileStarted;
+            fileStarted = true;
+            if (file.getParentFile() != null) file.getParentFile().mkdirs();
+
+            Writer writer = new FileWriter(file, append);
+            try {
+                writer.write(json);
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+        } finally {
+            writing.unlock();
+        }
+    }
+
+    /** CPU time the test thread used, in the helpers and the driver client **/
+    private long cpuNanosUsed() {
+        if (startCpu < 0) return 0;
+        return (endCpu != 0 ? endCpu : cpuNanos()) - startCpu;
+    }
+
+    /** CPU time of the current thread, or -1 where the JVM doesn't measure it **/
+    private static long cpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Estimated size of a payload as UTF-8 JSON on the wire. Responses are already converted, so
+     * elements are counted as the reference they were sent as instead of being serialized as beans,
+     * and the exact formatting of the server isn't known. Not measured at the executor, which would
+     * mean serializing every command a second time.
+     */
+    private static long estimatedJsonBytes(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return stringBytes((String) value);
+        if (value instanceof RemoteWebElement) return estimatedJsonBytes(((RemoteWebElement) value).getId()) + 12;
+        if (value instanceof Map) {
+            long length = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                length += stringBytes(String.valueOf(entry.getKey())) + Math.max(4, estimatedJsonBytes(entry.getValue())) + 2;
+            }
+            return length;
+        }
+        if (value instanceof Collection) {
+            long length = 2;
+            for (Object item : (Collection<?>) value) {
+                length += Math.max(4, estimatedJsonBytes(item)) + 1;
+            }
+            return length;
+        }
+        return String.valueOf(value).length();
+    }
+
+    /** A JSON string literal in UTF-8: quotes, escapes and multi-byte characters included **/
+    private static long stringBytes(String value) {
+        long bytes = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t') {
+                bytes += 2;
+            } else if (c < 0x20) {
+                bytes += 6;
+            } else if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                // a surrogate pair is 4 bytes
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static class Command {
+        final Histogram micros = new Histogram();
+        long requestBytes;
+        long responseBytes;
+        long inWaitNanos;
+    }
+}
@@ -0,0 +1,231 @@
+package appium.tutorial.android.util;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Several locators waited for at once: all of them shown, any of them shown or none of them shown.
+ *
+ * Waiting for two elements one after the other is two polling loops, each sending its own search.
+ * Here every poll fetches the page source once and answers every locator from it, locators with a
+ * {@link NodeTable.Matcher} from a {@link NodeTable} (only what changed since the previous poll is
+ * matched again), xpath locators from a {@link PageSnapshot}. Any other locator is still searched on
+ * the device, once per poll.
+ *
+ * A wait returns the {@link Result}: which locators were shown at the last poll, and how long each
+ * took to be met first. The conditions keep the state of one wait, so create them for every wait:
+ *
+ *     waitEngine().until(Conditions.allOf(title, firstRow))
+ */
+public class Conditions implements ExpectedCondition<Conditions.Result> {
+
+    public enum Mode {
+        /** Every locator finds a displayed element **/
+        ALL,
+        /** At least one locator finds a displayed element **/
+        ANY,
+        /** No locator finds a displayed element **/
+        NONE
+    }
+
+    /** Which locators were met when the wait ended, and when each was met first **/
+    public static class Result {
+
+        private final List<By> locators;
+        private final boolean[] met;
+        private final long[] firstMetMillis;
+        private final long millis;
+
+        Result(List<By> locators, boolean[] met, long[] firstMetMillis, long millis) {
+            this.locators = locators;
+            this.met = met.clone();
+            this.firstMetMillis = firstMetMillis.clone();
+            this.millis = millis;
+        }
+
+        /** True if the locator's condition held at the last poll **/
+        public boolean met(By locator) {
+            return met[index(locator)];
+        }
+
+        /** Milliseconds from the start of the wait until the locator's condition first held, or -1 **/
+        public long millis(By locator) {
+            return firstMetMillis[index(locator)];
+        }
+
+        /** Milliseconds the wait took **/
+        public long millis() {
+            return millis;
+        }
+
+        /** The locators whose condition held at the last poll, in the order they were given **/
+        public List<By> matched() {
+            List<By> matched = new ArrayList<By>();
+            for (int i = 0; i < met.length; i++) {
+                if (met[i]) matched.add(locators.get(i));
+            }
+            return matched;
+        }
+
+        private int index(By locator) {
+            int index = locators.indexOf(locator);
+            if (index < 0) throw new IllegalArgumentException("Not waited for: " + locator);
+            return index;
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < met.length; i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(locators.get(i)).append(met[i] ? " met" : " not met");
+                if (firstMetMillis[i] >= 0) builder.append(" (first after ").append(firstMetMillis[i]).append(" ms)");
+            }
+            return builder.toString();
+        }
+    }
+
+    // polls, and locators answered from their page source
+    private static final AtomicLong polls = new AtomicLong();
+    private static final AtomicLong answered = new AtomicLong();
+    private static final AtomicLong searched = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return polls.get() > 0 ? Conditions.summary() : null;
+            }
+        });
+    }
+
+    private final Mode mode;
+    private final List<By> locators;
+    private final NodeTable.Watch[] watches;
+    private final boolean[] met;
+    private final long[] firstMetMillis;
+    private final boolean needsTable;
+    private final boolean needsSnapshot;
+    private NodeTable table;
+    private boolean started;
+    private long start;
+
+    public Conditions(Mode mode, By... locators) {
+        if (locators.length == 0) throw new IllegalArgumentException("No locators to wait for");
+        this.mode = mode;
+        this.locators = Collections.unmodifiableList(Arrays.asList(locators.clone()));
+        this.watches = new NodeTable.Watch[locators.length];
+        this.met = new boolean[locators.length];
+        this.firstMetMillis = new long[locators.length];
+        Arrays.fill(firstMetMillis, -1);
+
+        boolean needsTable = false;
+        boolean needsSnapshot = false;
+        for (int i = 0; i < locators.length; i++) {
+            NodeTable.Matcher matcher = NodeTable.matcher(locators[i]);
+            if (matcher != null) {
+                watches[i] = new NodeTable.Watch(matcher);
+                needsTable = true;
+            } else if (PageSnapshot.supports(locators[i])) {
+                needsSnapshot = true;
+            }
+        }
+        this.needsTable = needsTable;
+        this.needsSnapshot = needsSnapshot;
+    }
+
+    /** Every locator finds a displayed element **/
+    public static Conditions allOf(By... locators) {
+        return new Conditions(Mode.ALL, locators);
+    }
+
+    /** At least one locator finds a displayed element **/
+    public static Conditions anyOf(By... locators) {
+        return new Conditions(Mode.ANY, locators);
+    }
+
+    /** No locator finds a displayed element **/
+    public static Conditions noneOf(By... locators) {
+        return new Conditions(Mode.NONE, locators);
+    }
+
+    /** Evaluate every locator against one page source; the result once the conditions hold, else null **/
+    public Result apply(WebDriver driver) {
+        if (!started) {
+            started = true;
+            start = System.nanoTime();
+        }
+        polls.incrementAndGet();
+
+        String source = needsTable || needsSnapshot ? driver.getPageSource() : null;
+        NodeTable.Diff diff = null;
+        if (needsTable) {
+            NodeTable next = NodeTable.parse(source);
+            diff = table == null ? null : next.diff(table);
+            table = next;
+        }
+        PageSnapshot snapshot = needsSnapshot ? PageSnapshot.parse(source, -1) : null;
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int count = 0;
+        for (int i = 0; i < met.length; i++) {
+            boolean shown = shown(i, driver, diff, snapshot);
+            met[i] = mode == Mode.NONE ? !shown : shown;
+            if (met[i]) {
+                count++;
+                if (firstMetMillis[i] < 0) firstMetMillis[i] = millis;
+            }
+        }
+
+        boolean done = mode == Mode.ANY ? count > 0 : count == met.length;
+        return done ? result() : null;
+    }
+
+    private boolean shown(int i, WebDriver driver, NodeTable.Diff diff, PageSnapshot snapshot) {
+        if (watches[i] != null) {
+            answered.incrementAndGet();
+            watches[i].update(table, diff);
+            return watches[i].shown() > 0;
+        }
+        if (snapshot != null && PageSnapshot.supports(locators.get(i))) {
+            answered.incrementAndGet();
+            return snapshot.displayed(locators.get(i)).contains(Boolean.TRUE);
+        }
+
+        searched.incrementAndGet();
+        for (WebElement element : driver.findElements(locators.get(i))) {
+            try {
+                if (element.isDisplayed()) return true;
+            } catch (StaleElementReferenceException e) {
+                // gone since the search
+            }
+        }
+        return false;
+    }
+
+    /** The state after the latest poll, also when the wait timed out **/
+    public Result result() {
+        long millis = !started ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new Result(locators, met, firstMetMillis, millis);
+    }
+
+    public String toString() {
+        return mode.name().toLowerCase() + " of " + locators;
+    }
+
+    /** Polls and how many locators were answered from their page source so far **/
+    public static String summary() {
+        long fromSource = answered.get();
+        long total = fromSource + searched.get();
+        return String.format("Conditions: %d polls, %d of %d locator checks answered from the poll's page source (%d%%)",
+                polls.get(), fromSource, total, total == 0 ? 0 : fromSource * 100 / total);
+    }
+}
@@ -0,0 +1,119 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.AppiumDriver;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.RemoteWebElement;
+import org.openqa.selenium.remote.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elements of the current screen by locator, so looking up the same element twice costs one find.
+ *
+ * Entries are valid for one screen generation (see {@link InstrumentedAndroidDriver#screenGeneration()}),
+ * the cache is emptied once a command may have changed the screen. An element which went stale
+ * anyway, because the app changed the screen by itself, is found again by its locator and the
+ * command is retried once, so callers never see the stale element.
+ *
+ * Hits, misses and recovered stale elements are printed when the JVM exits with -Dstats=true.
+ * A cache is not thread safe; use one per session.
+ */
+public class ElementCache {
+
+    /** Finds an element on the device when it isn't cached **/
+    public interface Finder {
+        WebElement find(By locator);
+    }
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong invalidations = new AtomicLong();
+    private static final AtomicLong recovered = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return hits.get() + misses.get() > 0 ? ElementCache.summary() : null;
+            }
+        });
+    }
+
+    private final AppiumDriver driver;
+    private final Finder finder;
+    private final Map<String, CachedElement> elements = new HashMap<String, CachedElement>();
+    private long generation = -1;
+
+    public ElementCache(AppiumDriver driver, Finder finder) {
+        this.driver = driver;
+        this.finder = finder;
+    }
+
+    /** Return the element for the locator, found on the device only if this screen hasn't found it yet **/
+    public WebElement get(By locator) {
+        long current = driver instanceof InstrumentedAndroidDriver ? ((InstrumentedAndroidDriver) driver).screenGeneration() : -1;
+        if (current != generation) {
+            if (!elements.isEmpty()) invalidations.incrementAndGet();
+            elements.clear();
+            generation = current;
+        }
+
+        // without a screen generation nothing can be cached, stale elements are still recovered
+        String key = locator.toString();
+        CachedElement element = current < 0 ? null : elements.get(key);
+        if (element != null) {
+            hits.incrementAndGet();
+            return element;
+        }
+
+        misses.incrementAndGet();
+        element = new CachedElement(this, locator, (RemoteWebElement) finder.find(locator));
+        if (current >= 0) {
+            elements.put(key, element);
+        }
+        return element;
+    }
+
+    /** Hits, misses and recovered stale elements so far **/
+    public static String summary() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return String.format("Element cache: %d lookups, %d hits (%.0f%%), %d misses, %d invalidations, "
+                + "%d stale elements recovered", total, hit, total == 0 ? 0.0 : 100.0 * hit / total,
+                misses.get(), invalidations.get(), recovered.get());
+    }
+
+    /** An element which finds itself again by its locator when it went stale **/
+    private static class CachedElement extends RemoteWebElement {
+        private final ElementCache cache;
+        private final By locator;
+
+        CachedElement(ElementCache cache, By locator, RemoteWebElement found) {
+            setParent((RemoteWebDriver) found.getWrappedDriver());
+            setId(found.getId());
+            this.cache = cache;
+            this.locator = locator;
+        }
+
+        @Override
+        protected Response execute(String command, Map<String, ?> parameters) {
+            try {
+                return super.execute(command, parameters);
+            } catch (StaleElementReferenceException e) {
+                // the command didn't run, so it is safe to send it again
+                setId(((RemoteWebElement) cache.finder.find(locator)).getId());
+                recovered.incrementAndGet();
+
+                Map<String, Object> retry = new HashMap<String, Object>(parameters);
+                if (retry.containsKey("id")) {
+                    retry.put("id", getId());
+                }
+                return super.execute(command, retry);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package appium.tutorial.android.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Appium servers the tests may use.
+ *
+ * The server is -Dserver=<url>, or configure several, one per emulator, with
+ * -Dendpoints=http://127.0.0.1:4723/wd/hub,http://127.0.0.1:4733/wd/hub
+ * Each worker thread of {@link MatrixSuite} is bound to one of them.
+ *
+ * With -Dstandin=<screens directory> the tests run against an in-process
+ * {@link StandInServer} instead, with -Dstandin.workers threads (1 by default).
+ */
+public abstract class Endpoints {
+
+    public static final String DEFAULT = "http://127.0.0.1:4723/wd/hub";
+
+    private static final List<URL> configured = System.getProperty("standin") != null
+            ? standIn(Integer.getInteger("standin.workers", 1))
+            : parse(System.getProperty("endpoints", System.getProperty("server", DEFAULT)));
+
+    private static final ThreadLocal<URL> bound = new ThreadLocal<URL>();
+
+    /** All configured servers **/
+    public static List<URL> all() {
+        return configured;
+    }
+
+    /** The server bound to the current thread, or the first configured one **/
+    public static URL current() {
+        URL url = bound.get();
+        return url != null ? url : configured.get(0);
+    }
+
+    /** Bind the current thread to a server **/
+    static void bind(URL url) {
+        bound.set(url);
+    }
+
+    /** The in-process stand-in server, once per worker so tests still run in parallel **/
+    private static List<URL> standIn(int workers) {
+        return Collections.nCopies(Math.max(1, workers), StandInServer.shared().url());
+    }
+
+    private static List<URL> parse(String value) {
+        List<URL> urls = new ArrayList<URL>();
+        for (String endpoint : value.split(",")) {
+            endpoint = endpoint.trim();
+            if (endpoint.length() == 0) continue;
+            try {
+                urls.add(new URL(endpoint));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid Appium endpoint: " + endpoint, e);
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("No Appium endpoint configured");
+        }
+        return Collections.unmodifiableList(urls);
+    }
+}
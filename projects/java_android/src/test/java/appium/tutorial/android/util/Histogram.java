@@ -0,0 +1,79 @@
+package appium.tutorial.android.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram with power of two buckets.
+ *
+ * Bucket i counts values up to 2^i, so percentiles are reported as an upper bound
+ * which is at most twice the real value. That is precise enough to tell a 50 ms wait
+ * from a 5 second one, and recording is a couple of atomic increments.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long total() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /** Upper bound of the value below which the given fraction of the values fall **/
+    public long percentile(double fraction) {
+        long n = count.get();
+        if (n == 0) return 0;
+
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public String toString() {
+        return "n=" + count() + " mean=" + mean() + " p50=" + percentile(0.5) + " p90=" + percentile(0.9)
+                + " p99=" + percentile(0.99) + " max=" + max();
+    }
+
+    private static int bucket(long value) {
+        return value == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
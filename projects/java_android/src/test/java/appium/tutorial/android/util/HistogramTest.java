@@ -0,0 +1,71 @@
+package appium.tutorial.android.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyIsZero() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void percentilesAreTheUpperBoundOfTheirBucket() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(5050, histogram.total());
+        assertEquals(50, histogram.mean());
+        assertEquals(100, histogram.max());
+        // 50 is counted in 32..63
+        assertEquals(63, histogram.percentile(0.5));
+        // 90 is counted in 64..127, which is cut off at the largest value
+        assertEquals(100, histogram.percentile(0.9));
+        assertEquals(1, histogram.percentile(0.01));
+    }
+
+    @Test
+    public void percentilesAreLessThanTwiceTheValue() {
+        Histogram histogram = new Histogram();
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (i + 1) * (i + 1);
+            histogram.record(values[i]);
+        }
+        double[] fractions = {0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1.0};
+        for (double fraction : fractions) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            long reported = histogram.percentile(fraction);
+            assertTrue(fraction + ": " + reported + " below " + exact, reported >= exact);
+            assertTrue(fraction + ": " + reported + " not below twice " + exact, reported < 2 * exact);
+        }
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(0);
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.total());
+        assertEquals(0, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void largestValuesShareTheLastBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(1L << 62);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(1.0));
+        assertEquals(Long.MAX_VALUE, histogram.max());
+    }
+}
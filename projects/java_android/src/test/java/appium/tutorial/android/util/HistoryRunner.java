@@ -0,0 +1,35 @@
+package appium.tutorial.android.util;
+
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runs the test methods of a class like the default runner, in the order and the shard
+ * configured with -Dorder and -Dshard, see {@link TimingHistory}.
+ *
+ * With -Dthreads=virtual the test methods run concurrently instead, each on a virtual thread of
+ * its own and on the first endpoint that is free, see {@link EndpointScheduler}.
+ */
+public class HistoryRunner extends BlockJUnit4ClassRunner {
+
+    public HistoryRunner(Class<?> klass) throws InitializationError {
+        super(klass);
+        TimingHistory.configure(this, TimingHistory.order(TimingHistory.Order.DECLARED));
+        if (VirtualThreads.requested()) {
+            setScheduler(new EndpointScheduler(Endpoints.all()) {
+                protected void report(long wallMillis) {
+                    System.out.println(String.format("  %s: %d tests, %d at a time, in %d ms",
+                            getTestClass().getJavaClass().getSimpleName(), getDescription().testCount(), workers(),
+                            wallMillis));
+                }
+            });
+        }
+    }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return super.childrenInvoker(EndpointScheduler.notifier(notifier));
+    }
+}
@@ -0,0 +1,132 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.android.AndroidDriver;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AndroidDriver that keeps track of what its commands do to the screen, and how long they take.
+ *
+ * Every command that may change what is on screen (click, back, typing, scrolling, scripts)
+ * moves the screen generation forward. Anything cached for a screen, like a page source
+ * snapshot, is valid only as long as the generation it was taken at is current.
+ *
+ * While a test runs, every command is recorded in the test's {@link CommandStats}, and in its
+ * {@link Trace} with -Dtrace=true.
+ */
+public class InstrumentedAndroidDriver extends AndroidDriver {
+
+    /** Commands which only read from the screen **/
+    private static final Set<String> READ_ONLY = new HashSet<String>(Arrays.asList(
+            DriverCommand.FIND_ELEMENT, DriverCommand.FIND_ELEMENTS,
+            DriverCommand.FIND_CHILD_ELEMENT, DriverCommand.FIND_CHILD_ELEMENTS,
+            DriverCommand.GET_PAGE_SOURCE, DriverCommand.SCREENSHOT,
+            DriverCommand.GET_ELEMENT_ATTRIBUTE, DriverCommand.GET_ELEMENT_TEXT,
+            DriverCommand.GET_ELEMENT_TAG_NAME, DriverCommand.GET_ELEMENT_LOCATION,
+            DriverCommand.GET_ELEMENT_SIZE, DriverCommand.GET_ELEMENT_VALUE_OF_CSS_PROPERTY,
+            DriverCommand.IS_ELEMENT_DISPLAYED, DriverCommand.IS_ELEMENT_ENABLED,
+            DriverCommand.IS_ELEMENT_SELECTED, DriverCommand.ELEMENT_EQUALS,
+            DriverCommand.GET_ACTIVE_ELEMENT, DriverCommand.GET_CAPABILITIES,
+            DriverCommand.STATUS, DriverCommand.GET_SCREEN_ORIENTATION,
+            DriverCommand.GET_CURRENT_CONTEXT_HANDLE, DriverCommand.GET_CONTEXT_HANDLES,
+            DriverCommand.GET_CURRENT_WINDOW_HANDLE, DriverCommand.GET_WINDOW_HANDLES,
+            DriverCommand.GET_WINDOW_SIZE, DriverCommand.GET_TITLE, DriverCommand.GET_CURRENT_URL,
+            DriverCommand.SET_TIMEOUT, DriverCommand.IMPLICITLY_WAIT, DriverCommand.SET_SCRIPT_TIMEOUT));
+
+    // Not initialized in the declaration: the super constructor already executes newSession.
+    private volatile long screenGeneration;
+    private TrafficLog.Recorder recorder;
+    private TrafficLog.Replayer replayer;
+
+    public InstrumentedAndroidDriver(URL remoteAddress, Capabilities desiredCapabilities) {
+        super(remoteAddress, desiredCapabilities);
+        // AppiumDriver installs its own executor, with the Appium commands, after the session started
+        useConfiguredExecutor();
+    }
+
+    @Override
+    protected void startSession(Capabilities desiredCapabilities, Capabilities requiredCapabilities) {
+        useConfiguredExecutor();
+        super.startSession(desiredCapabilities, requiredCapabilities);
+    }
+
+    /**
+     * Replace the default HTTP executor with the pooled one when -Dexecutor=pooled, and record or
+     * replay the session's traffic with -Dtraffic, see {@link TrafficLog}
+     */
+    private void useConfiguredExecutor() {
+        if (TrafficLog.replaying()) {
+            if (replayer == null) replayer = TrafficLog.replayer();
+            if (replayer != null) {
+                setCommandExecutor(replayer);
+                return;
+            }
+        }
+
+        CommandExecutor executor = getCommandExecutor();
+        if (PooledCommandExecutor.selected() && executor instanceof HttpCommandExecutor) {
+            executor = PooledCommandExecutor.replacing((HttpCommandExecutor) executor);
+        }
+        if (TrafficLog.recording()) {
+            if (recorder == null) recorder = TrafficLog.recorder();
+            if (recorder != null) executor = recorder.delegateTo(executor);
+        }
+        setCommandExecutor(executor);
+    }
+
+    /** Increases whenever a command may have changed the screen **/
+    public long screenGeneration() {
+        return screenGeneration;
+    }
+
+    @Override
+    public Response execute(String driverCommand, Map<String, ?> parameters) {
+        if (parameters != null && parameters.containsKey("using")) {
+            Locators.served(String.valueOf(parameters.get("using")));
+        }
+
+        CommandStats stats = CommandStats.current();
+        long start = System.nanoTime();
+        long span = Trace.begin();
+        Response response = null;
+        try {
+            response = super.execute(driverCommand, parameters);
+            return response;
+        } finally {
+            Trace.end("command", driverCommand, parameters, span);
+            if (stats != null) {
+                stats.record(commandName(driverCommand, parameters), System.nanoTime() - start, parameters,
+                        response == null ? null : response.getValue());
+            }
+            if (changesScreen(driverCommand, parameters)) {
+                screenGeneration++;
+            }
+        }
+    }
+
+    /** The command name stats are recorded under; scrolling finds count as scrollTo **/
+    static String commandName(String driverCommand, Map<String, ?> parameters) {
+        if (READ_ONLY.contains(driverCommand) && changesScreen(driverCommand, parameters)) {
+            return "scrollTo";
+        }
+        return driverCommand;
+    }
+
+    /** Finds are read only, except UiScrollable selectors used by scrollTo **/
+    static boolean changesScreen(String driverCommand, Map<String, ?> parameters) {
+        if (!READ_ONLY.contains(driverCommand)) return true;
+        if (parameters == null || !"-android uiautomator".equals(parameters.get("using"))) return false;
+
+        Object value = parameters.get("value");
+        return value != null && value.toString().toLowerCase().contains("scroll");
+    }
+}
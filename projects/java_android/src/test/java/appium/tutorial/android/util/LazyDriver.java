@@ -0,0 +1,107 @@
+package appium.tutorial.android.util;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A handle to a driver whose session is opened on first use.
+ *
+ * Tests get a handle in setUp instead of a driver, so a test which never talks to the device
+ * (a precondition that fails, a skipped test, a pure assertion) doesn't wait for a session to
+ * start, and tearDown has nothing to quit. How many sessions were opened and how many starts
+ * were avoided is printed when the JVM exits with -Dstats=true.
+ */
+public class LazyDriver<D extends WebDriver> {
+
+    /** Opens the session, e.g. creates the driver or leases one from a pool **/
+    public interface Opener<D> {
+        D open() throws Exception;
+    }
+
+    private static final AtomicLong opened = new AtomicLong();
+    private static final AtomicLong avoided = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return opened.get() + avoided.get() > 0 ? LazyDriver.summary() : null;
+            }
+        });
+    }
+
+    private final Opener<D> opener;
+    // a lock rather than synchronized, so a virtual thread opening a session doesn't pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private D driver;
+    private boolean released;
+
+    public LazyDriver(Opener<D> opener) {
+        this.opener = opener;
+    }
+
+    /** A handle to a driver which is open already, e.g. a fake one. It isn't counted. **/
+    public static <D extends WebDriver> LazyDriver<D> opened(D driver) {
+        LazyDriver<D> handle = new LazyDriver<D>(null);
+        handle.driver = driver;
+        return handle;
+    }
+
+    /** Return the driver, opening the session if this is the first use **/
+    public D get() {
+        lock.lock();
+        try {
+            if (released) {
+                throw new IllegalStateException("The session of this test was released already");
+            }
+            if (driver == null) {
+                try {
+                    driver = opener.open();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new WebDriverException("Unable to open a session", e);
+                }
+                opened.incrementAndGet();
+            }
+            return driver;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True once the session has been opened **/
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return driver != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let go of the handle at the end of a test.
+     * @return The driver to quit or give back to the pool, or null if no session was opened
+     */
+    public D release() {
+        lock.lock();
+        try {
+            if (released) return null;
+            released = true;
+            if (driver == null) {
+                avoided.incrementAndGet();
+            }
+            return driver;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sessions opened and session starts avoided so far **/
+    public static String summary() {
+        return "Driver sessions: " + opened.get() + " opened, " + avoided.get() + " starts avoided";
+    }
+}
@@ -0,0 +1,241 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.AppiumDriver;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rows of a scrollable list, indexed in one pass so any row can be scrolled to directly.
+ *
+ * scrollTo and scrollToExact make UIAutomator search the list from the top every time, so
+ * visiting every row of a long list scrolls through it once per row. The index walks the list
+ * once, a page at a time, and records the order of the rows. Getting to a row then takes only the
+ * swipes from the rows on screen toward it: whether the row is above or below them is looked up
+ * again after every swipe, until the row shows. Swipes don't cover whole indexed pages, e.g. the
+ * last page is reached by a shorter scroll, so the swipes are never counted out in advance.
+ *
+ * Where the list is follows from its visible rows, so the index stays valid when the app restores
+ * the list position after back. When a visible row isn't in the index the list has changed, and it
+ * is indexed again.
+ *
+ * Swipes, indexing passes and rows reached are printed when the JVM exits with -Dstats=true.
+ */
+public class ListIndex {
+
+    // slow enough not to fling, so every swipe scrolls the same distance
+    private static final int SWIPE_MILLIS = 600;
+    // a swipe covers this share of the list height, so pages overlap
+    private static final double SWIPE_SHARE = 0.6;
+    private static final int MAX_PAGES = 200;
+
+    private static final AtomicLong passes = new AtomicLong();
+    private static final AtomicLong swipes = new AtomicLong();
+    private static final AtomicLong reached = new AtomicLong();
+    private static final AtomicLong reachedWithoutSwipe = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return reached.get() > 0 ? ListIndex.summary() : null;
+            }
+        });
+    }
+
+    private final AppiumDriver driver;
+    private final By list;
+    private final By rows;
+
+    // visible row names per page, the top of the list first
+    private List<List<String>> pages;
+    // row name -> position in the list
+    private final Map<String, Integer> positionOf = new HashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private int[] swipeFrom;
+    private int[] swipeTo;
+
+    /**
+     * @param list The scrollable container
+     * @param rows The rows of the container, a locator a page source snapshot can evaluate
+     */
+    public ListIndex(AppiumDriver driver, By list, By rows) {
+        this.driver = driver;
+        this.list = list;
+        this.rows = rows;
+    }
+
+    /** The names of all rows, top first, indexing the list if it isn't yet **/
+    public List<String> names() {
+        if (pages == null) index();
+        return new ArrayList<String>(names);
+    }
+
+    /** The names of the rows on screen now, top first, without indexing or scrolling the list **/
+    public List<String> shown() {
+        return visibleRows(screen());
+    }
+
+    /**
+     * Scroll the row into view and return it.
+     * @throws NoSuchElementException if the list has no row with that name
+     */
+    public WebElement scrollTo(String name) {
+        if (pages != null && positionOf.containsKey(name)) {
+            WebElement row = reach(name, screen());
+            if (row != null) return row;
+        }
+
+        // not indexed yet, or the list changed since
+        PageSnapshot screen = index();
+        if (!positionOf.containsKey(name)) {
+            throw new NoSuchElementException("No row " + name + " in " + list);
+        }
+        WebElement row = reach(name, screen);
+        if (row == null) {
+            throw new NoSuchElementException("Row " + name + " isn't where the index has it");
+        }
+        return row;
+    }
+
+    /**
+     * Walk the list from the top once, recording the rows of every page
+     * @return The screen the list was left on, the bottom of the list
+     */
+    public PageSnapshot index() {
+        passes.incrementAndGet();
+        pages = new ArrayList<List<String>>();
+        positionOf.clear();
+        names.clear();
+
+        PageSnapshot screen = screen();
+        measure(screen);
+
+        // back to the top first
+        List<String> visible = visibleRows(screen);
+        for (int i = 0; i < MAX_PAGES; i++) {
+            swipe(false);
+            List<String> above = visibleRows(screen());
+            if (above.equals(visible)) break;
+            visible = above;
+        }
+
+        for (int page = 0; page < MAX_PAGES; page++) {
+            pages.add(visible);
+            for (String name : visible) {
+                if (!positionOf.containsKey(name)) {
+                    positionOf.put(name, names.size());
+                    names.add(name);
+                }
+            }
+
+            swipe(true);
+            screen = screen();
+            List<String> below = visibleRows(screen);
+            if (below.equals(visible)) break;
+            visible = below;
+        }
+        return screen;
+    }
+
+    /**
+     * Swipe toward the row until it shows, then fetch it. Null if the rows on screen aren't in the
+     * index, i.e. the list changed, or the row doesn't show where the index has it.
+     */
+    private WebElement reach(String name, PageSnapshot screen) {
+        int position = positionOf.get(name);
+        List<String> visible = visibleRows(screen);
+        // a swipe more than pages in the index means the row was passed
+        for (int swiped = 0; swiped <= pages.size(); swiped++) {
+            if (visible.contains(name)) {
+                reached.incrementAndGet();
+                if (swiped == 0) reachedWithoutSwipe.incrementAndGet();
+                return fetch(name, screen);
+            }
+
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            for (String row : visible) {
+                Integer at = positionOf.get(row);
+                if (at == null) return null;
+                first = Math.min(first, at);
+                last = Math.max(last, at);
+            }
+            if (last < 0 || (position > first && position < last)) return null;
+
+            swipe(position > last);
+            screen = screen();
+            List<String> next = visibleRows(screen);
+            // the end of the list, without the row
+            if (next.equals(visible)) return null;
+            visible = next;
+        }
+        return null;
+    }
+
+    /** The row on screen, fetched with a native locator **/
+    private WebElement fetch(String name, PageSnapshot screen) {
+        for (Element row : screen.findAll(rows)) {
+            if (name.equals(PageSnapshot.attribute(row, "name"))) {
+                By locator = screen.nativeLocator(row);
+                if (locator != null) {
+                    List<WebElement> found = driver.findElements(locator);
+                    if (!found.isEmpty()) return found.get(0);
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> visibleRows(PageSnapshot screen) {
+        List<String> visible = new ArrayList<String>();
+        List<Element> found = screen.findAll(rows);
+        for (Element row : found) {
+            visible.add(PageSnapshot.attribute(row, "name"));
+        }
+        return visible;
+    }
+
+    /** Swipe vertically across the middle of the list **/
+    private void measure(PageSnapshot screen) {
+        List<Element> found = screen.findAll(list);
+        if (found.isEmpty()) {
+            throw new NoSuchElementException("No list " + list + " on screen");
+        }
+        int[] bounds = PageSnapshot.bounds(found.get(0).getAttribute("bounds"));
+        if (bounds == null) {
+            throw new NoSuchElementException("The list " + list + " has no bounds");
+        }
+        int x = (bounds[0] + bounds[2]) / 2;
+        int height = bounds[3] - bounds[1];
+        int margin = (int) (height * (1 - SWIPE_SHARE) / 2);
+        swipeFrom = new int[] {x, bounds[3] - margin};
+        swipeTo = new int[] {x, bounds[1] + margin};
+    }
+
+    /** Scroll a page down the list, or up **/
+    private void swipe(boolean down) {
+        swipes.incrementAndGet();
+        if (down) {
+            driver.swipe(swipeFrom[0], swipeFrom[1], swipeTo[0], swipeTo[1], SWIPE_MILLIS);
+        } else {
+            driver.swipe(swipeTo[0], swipeTo[1], swipeFrom[0], swipeFrom[1], SWIPE_MILLIS);
+        }
+    }
+
+    private PageSnapshot screen() {
+        return PageSnapshot.parse(driver.getPageSource(), -1);
+    }
+
+    /** Indexing passes, swipes and rows reached so far **/
+    public static String summary() {
+        return "List index: " + passes.get() + " indexing passes, " + swipes.get() + " swipes, " + reached.get()
+                + " rows reached (" + reachedWithoutSwipe.get() + " without swiping)";
+    }
+}
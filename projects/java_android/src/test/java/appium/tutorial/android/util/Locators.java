@@ -0,0 +1,146 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds and caches the locators used by {@link AppiumTest}.
+ *
+ * Each (kind, text) pair is compiled once. Text is quoted safely, so quotes no longer break
+ * the xpath. Where a UiSelector finds exactly the same elements as the xpath, the server gets
+ * the UiSelector, which UIAutomator resolves without dumping the whole hierarchy. The resources
+ * locator is a union whose first match depends on document order, so it only becomes a list of
+ * UiSelectors with -Dlocators=native.
+ * Locators also carry a matcher, which polling waits evaluate on a {@link NodeTable}.
+ *
+ * Every find the server executes is counted per strategy, and the counts are printed when
+ * the JVM exits with -Dstats=true, to show how much traffic is still on xpath.
+ */
+public abstract class Locators {
+
+    private static final String TEXT_VIEW = "android.widget.TextView";
+
+    private static final boolean preferNative = "native".equals(System.getProperty("locators"));
+
+    private static final ConcurrentMap<String, By> cache = new ConcurrentHashMap<String, By>();
+    private static final ConcurrentMap<String, AtomicLong> served = new ConcurrentHashMap<String, AtomicLong>();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return !served.isEmpty() ? Locators.report() : null;
+            }
+        });
+    }
+
+    /** Text view at an xpath index **/
+    public static By textAt(int xpathIndex) {
+        String key = "textAt\u0000" + xpathIndex;
+        By locator = cache.get(key);
+        if (locator == null) {
+            locator = cache(key, By.xpath("//" + TEXT_VIEW + "[" + xpathIndex + "]"));
+        }
+        return locator;
+    }
+
+    /** Text view whose text contains the text **/
+    public static By textContains(final String text) {
+        String key = "textContains\u0000" + text;
+        By locator = cache.get(key);
+        if (locator == null) {
+            String xpath = "//" + TEXT_VIEW + "[contains(@text, " + PageSnapshot.literal(text) + ")]";
+            By selector = MobileBy.AndroidUIAutomator("new UiSelector().className(\"" + TEXT_VIEW
+                    + "\").textContains(" + PageSnapshot.selectorString(text) + ")");
+            NodeTable.Matcher matcher = new NodeTable.Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.tag(row).equals(TEXT_VIEW) && table.text(row).contains(text);
+                }
+            };
+            locator = cache(key, new CompiledLocator(selector, xpath, matcher));
+        }
+        return locator;
+    }
+
+    /** Text view whose text is the text **/
+    public static By textExact(final String text) {
+        String key = "textExact\u0000" + text;
+        By locator = cache.get(key);
+        if (locator == null) {
+            String xpath = "//" + TEXT_VIEW + "[@text=" + PageSnapshot.literal(text) + "]";
+            By selector = MobileBy.AndroidUIAutomator("new UiSelector().className(\"" + TEXT_VIEW
+                    + "\").text(" + PageSnapshot.selectorString(text) + ")");
+            NodeTable.Matcher matcher = new NodeTable.Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.tag(row).equals(TEXT_VIEW) && table.text(row).equals(text);
+                }
+            };
+            locator = cache(key, new CompiledLocator(selector, xpath, matcher));
+        }
+        return locator;
+    }
+
+    /** Any element whose content description or text contains the text, or whose resource id is the text **/
+    public static By resources(final String text) {
+        String key = "resources\u0000" + text;
+        By locator = cache.get(key);
+        if (locator == null) {
+            String literal = PageSnapshot.literal(text);
+            String xpath = "//*[contains(@content-desc, " + literal + ") or contains(@text, " + literal
+                    + ") or @resource-id=" + literal + "]";
+            NodeTable.Matcher matcher = new NodeTable.Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.description(row).contains(text) || table.text(row).contains(text)
+                            || table.resourceId(row).equals(text);
+                }
+            };
+            if (preferNative) {
+                String string = PageSnapshot.selectorString(text);
+                By selectors = MobileBy.AndroidUIAutomator("new UiSelector().descriptionContains(" + string
+                        + ");new UiSelector().textContains(" + string + ");new UiSelector().resourceId(" + string + ")");
+                locator = cache(key, new CompiledLocator(selectors, xpath, matcher));
+            } else {
+                locator = cache(key, new CompiledLocator(By.xpath(xpath), xpath, matcher));
+            }
+        }
+        return locator;
+    }
+
+    private static By cache(String key, By locator) {
+        By existing = cache.putIfAbsent(key, locator);
+        return existing != null ? existing : locator;
+    }
+
+    /** Count a find executed by the server, by strategy **/
+    static void served(String strategy) {
+        AtomicLong count = served.get(strategy);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = served.putIfAbsent(strategy, created);
+            if (count == null) count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    /** Finds executed by the server per strategy **/
+    public static String report() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : served.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+            total += entry.getValue().get();
+        }
+
+        StringBuilder report = new StringBuilder("Finds by strategy:\n");
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue())
+                    .append(" (").append(entry.getValue() * 100 / total).append("%)\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,569 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * The page source as a table of elements, read with a streaming parser.
+ *
+ * A DOM of a page source several megabytes long takes many times that on the heap, and polling
+ * waits parse one on every poll. The table has one row per element, in document order, in
+ * parallel arrays: the parent, the end of the subtree, the tag as an index into tag names interned
+ * for the JVM, the text, content description and resource id, and the bounds as four ints. Other
+ * attributes are not kept, so only xpaths of tags, e.g. //tag, //parent/tag and //tag[n], are
+ * matched on a table; other xpath locators are evaluated on a {@link PageSnapshot}.
+ *
+ * Every row also has a hash of its subtree, so {@link #diff(NodeTable)} compares two tables of a
+ * screen by descending only into subtrees whose hashes differ. A {@link Watch} keeps the matches
+ * of a locator from one poll to the next and only looks at the subtrees which changed.
+ *
+ * Tables parsed and the elements polling waits looked at are printed when the JVM exits with
+ * -Dstats=true.
+ */
+public class NodeTable {
+
+    // //tag, //parent/tag and either with [n], the xpaths which only look at tags and positions
+    private static final Pattern TAG_PATH = Pattern.compile("//([\\w.]+)(?:/([\\w.]+))?(?:\\[([1-9][0-9]*)\\])?");
+
+    private static final AtomicLong tables = new AtomicLong();
+    private static final AtomicLong nodes = new AtomicLong();
+    private static final AtomicLong sourceChars = new AtomicLong();
+    private static final AtomicLong parseNanos = new AtomicLong();
+    private static final AtomicLong polls = new AtomicLong();
+    private static final AtomicLong unchangedPolls = new AtomicLong();
+    private static final AtomicLong polledNodes = new AtomicLong();
+    private static final AtomicLong visitedNodes = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return tables.get() > 0 ? NodeTable.summary() : null;
+            }
+        });
+    }
+
+    private static final ThreadLocal<XMLInputFactory> factories = new ThreadLocal<XMLInputFactory>() {
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            return factory;
+        }
+    };
+
+    // tag names are few and the same on every screen, so rows keep an index
+    private static final Map<String, Integer> tagIndex = new HashMap<String, Integer>();
+    private static volatile String[] tagNames = new String[0];
+
+    private int size;
+    private int[] parent;
+    private int[] end;
+    private int[] tag;
+    private String[] text;
+    private String[] description;
+    private String[] resourceId;
+    // left, top, right and bottom of every row
+    private int[] bounds;
+    // the row's own tag and attributes, and the row with its subtree
+    private long[] ownHash;
+    private long[] hash;
+
+    private NodeTable(int capacity) {
+        parent = new int[capacity];
+        end = new int[capacity];
+        tag = new int[capacity];
+        text = new String[capacity];
+        description = new String[capacity];
+        resourceId = new String[capacity];
+        bounds = new int[capacity * 4];
+        ownHash = new long[capacity];
+        hash = new long[capacity];
+    }
+
+    /** Read page source into a table **/
+    public static NodeTable parse(String pageSource) {
+        long start = System.nanoTime();
+        // about one element per 300 characters of page source
+        NodeTable table = new NodeTable(Math.max(16, pageSource.length() / 300));
+        XMLStreamReader reader = null;
+        try {
+            reader = factories.get().createXMLStreamReader(new StringReader(pageSource));
+            table.read(reader);
+        } catch (XMLStreamException e) {
+            throw new WebDriverException("Unable to parse page source", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // nothing to release for a string
+                }
+            }
+        }
+        tables.incrementAndGet();
+        nodes.addAndGet(table.size);
+        sourceChars.addAndGet(pageSource.length());
+        parseNanos.addAndGet(System.nanoTime() - start);
+        return table;
+    }
+
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        int[] open = new int[32];
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                int row = add(depth == 0 ? -1 : open[depth - 1], reader);
+                if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = row;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                int row = open[--depth];
+                end[row] = size;
+                // closes the children, so a sibling and a child don't hash the same
+                hash[row] = mix(hash[row], 1);
+                if (parent[row] >= 0) {
+                    hash[parent[row]] = mix(hash[parent[row]], hash[row]);
+                }
+            }
+        }
+    }
+
+    private int add(int parentRow, XMLStreamReader reader) {
+        if (size == parent.length) grow();
+        int row = size++;
+        parent[row] = parentRow;
+        tag[row] = intern(reader.getLocalName());
+        text[row] = "";
+        description[row] = "";
+        resourceId[row] = "";
+        // one pass over the attributes, looking each up by name is a search of its own
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            if (name.equals("text")) {
+                text[row] = shared(reader.getAttributeValue(i));
+            } else if (name.equals("content-desc")) {
+                description[row] = shared(reader.getAttributeValue(i));
+            } else if (name.equals("resource-id")) {
+                resourceId[row] = shared(reader.getAttributeValue(i));
+            } else if (name.equals("bounds")) {
+                parseBounds(reader.getAttributeValue(i), row * 4);
+            }
+        }
+
+        long own = mix(0, tag[row]);
+        own = mix(own, text[row]);
+        own = mix(own, description[row]);
+        own = mix(own, resourceId[row]);
+        for (int i = 0; i < 4; i++) {
+            own = mix(own, bounds[row * 4 + i]);
+        }
+        ownHash[row] = own;
+        hash[row] = own;
+        return row;
+    }
+
+    private static String shared(String value) {
+        // most attributes are empty, and need not be a string each
+        return value.length() == 0 ? "" : value;
+    }
+
+    /** Read bounds like [left,top][right,bottom] into the row's edges, leaving them 0 if they don't parse **/
+    private void parseBounds(String value, int at) {
+        int edge = 0;
+        int number = 0;
+        boolean digits = false;
+        boolean negative = false;
+        for (int i = 0; i < value.length() && edge < 4; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+                digits = true;
+            } else if (c == '-' && !digits) {
+                negative = true;
+            } else if (digits) {
+                bounds[at + edge++] = negative ? -number : number;
+                number = 0;
+                digits = false;
+                negative = false;
+            }
+        }
+        if (edge < 4) Arrays.fill(bounds, at, at + 4, 0);
+    }
+
+    private void grow() {
+        int capacity = parent.length * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        end = Arrays.copyOf(end, capacity);
+        tag = Arrays.copyOf(tag, capacity);
+        text = Arrays.copyOf(text, capacity);
+        description = Arrays.copyOf(description, capacity);
+        resourceId = Arrays.copyOf(resourceId, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+        ownHash = Arrays.copyOf(ownHash, capacity);
+        hash = Arrays.copyOf(hash, capacity);
+    }
+
+    private static int intern(String name) {
+        synchronized (tagIndex) {
+            Integer index = tagIndex.get(name);
+            if (index == null) {
+                index = tagNames.length;
+                String[] names = Arrays.copyOf(tagNames, index + 1);
+                names[index] = name;
+                tagNames = names;
+                tagIndex.put(name, index);
+            }
+            return index;
+        }
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long mix(long hash, String value) {
+        hash = mix(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = mix(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    /** The number of rows **/
+    public int size() {
+        return size;
+    }
+
+    /** The parent of a row, or -1 for the root **/
+    public int parent(int row) {
+        return parent[row];
+    }
+
+    /** The row after the last one of the row's subtree **/
+    public int end(int row) {
+        return end[row];
+    }
+
+    public String tag(int row) {
+        return tagNames[tag[row]];
+    }
+
+    public String text(int row) {
+        return text[row];
+    }
+
+    public String description(int row) {
+        return description[row];
+    }
+
+    public String resourceId(int row) {
+        return resourceId[row];
+    }
+
+    /** Displayed as UIAutomator reports it, i.e. with a non empty bounds **/
+    public boolean displayed(int row) {
+        return bounds[row * 4 + 2] > bounds[row * 4] && bounds[row * 4 + 3] > bounds[row * 4 + 1];
+    }
+
+    /** Rows of the same tag and attributes, with the same subtrees, have the same hash **/
+    public long hash(int row) {
+        return hash[row];
+    }
+
+    /**
+     * Return a native locator that finds exactly this row's element, or null if there is none.
+     * See {@link PageSnapshot#nativeLocator(org.w3c.dom.Element)}.
+     */
+    public By nativeLocator(int row) {
+        if (description[row].length() > 0 && unique(description, description[row])) {
+            return MobileBy.AccessibilityId(description[row]);
+        }
+        if (resourceId[row].length() > 0 && unique(resourceId, resourceId[row])) {
+            return By.id(resourceId[row]);
+        }
+        if (text[row].length() > 0 && unique(text, text[row])) {
+            return MobileBy.AndroidUIAutomator("new UiSelector().text(" + PageSnapshot.selectorString(text[row]) + ")");
+        }
+        return null;
+    }
+
+    private boolean unique(String[] column, String value) {
+        int found = 0;
+        for (int row = 0; row < size && found < 2; row++) {
+            if (column[row].equals(value)) found++;
+        }
+        return found == 1;
+    }
+
+    /**
+     * The subtrees which differ from a previous table of the screen. Subtrees with the same hash
+     * are skipped, and the children of rows which only differ below them are compared in order;
+     * where the number of children differs the whole subtree counts as changed.
+     */
+    public Diff diff(NodeTable previous) {
+        Diff diff = new Diff();
+        if (previous.size == 0 || size == 0) {
+            if (previous.size > 0 || size > 0) {
+                diff.add(previous.size > 0 ? 0 : -1, size > 0 ? 0 : -1);
+            }
+            return diff;
+        }
+        compare(previous, 0, 0, diff);
+        return diff;
+    }
+
+    private void compare(NodeTable previous, int before, int after, Diff diff) {
+        if (previous.hash[before] == hash[after]) return;
+        if (previous.ownHash[before] != ownHash[after] || children(before, previous) != children(after, this)) {
+            diff.add(before, after);
+            return;
+        }
+        int childBefore = before + 1;
+        int childAfter = after + 1;
+        while (childBefore < previous.end[before]) {
+            compare(previous, childBefore, childAfter, diff);
+            childBefore = previous.end[childBefore];
+            childAfter = end[childAfter];
+        }
+    }
+
+    private static int children(int row, NodeTable table) {
+        int count = 0;
+        for (int child = row + 1; child < table.end[row]; child = table.end[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /** Subtrees which changed between two tables, as pairs of roots; -1 where a table has none **/
+    public static class Diff {
+
+        private int[] before = new int[4];
+        private int[] after = new int[4];
+        private int size;
+
+        private void add(int beforeRow, int afterRow) {
+            if (size == before.length) {
+                before = Arrays.copyOf(before, size * 2);
+                after = Arrays.copyOf(after, size * 2);
+            }
+            before[size] = beforeRow;
+            after[size] = afterRow;
+            size++;
+        }
+
+        public boolean unchanged() {
+            return size == 0;
+        }
+
+        /** The number of changed subtrees **/
+        public int size() {
+            return size;
+        }
+
+        /** The root of a changed subtree in the previous table **/
+        public int before(int i) {
+            return before[i];
+        }
+
+        /** The root of a changed subtree in the new table **/
+        public int after(int i) {
+            return after[i];
+        }
+    }
+
+    /** Tells whether a row matches a locator, as the locator's xpath would **/
+    public interface Matcher {
+        boolean matches(NodeTable table, int row);
+    }
+
+    /**
+     * Return the matcher of a locator, or null if there is none and the locator has to be
+     * evaluated as xpath. See {@link PageSnapshot#xpath(By)}.
+     */
+    public static Matcher matcher(By locator) {
+        if (locator instanceof CompiledLocator) return ((CompiledLocator) locator).matcher();
+
+        String described = locator.toString();
+        int separator = described.indexOf(": ");
+        if (separator < 0) return null;
+
+        String strategy = described.substring(0, separator);
+        final String value = described.substring(separator + 2);
+
+        if (strategy.equals("By.className")) {
+            return new Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.tag(row).equals(value);
+                }
+            };
+        }
+        if (strategy.equals("By.AccessibilityId")) {
+            return new Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.description(row).equals(value);
+                }
+            };
+        }
+        if (strategy.equals("By.id")) {
+            return new Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.resourceId(row).equals(value);
+                }
+            };
+        }
+        if (strategy.equals("By.name")) {
+            return new Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.description(row).equals(value) || table.text(row).equals(value);
+                }
+            };
+        }
+        if (strategy.equals("By.xpath")) {
+            java.util.regex.Matcher path = TAG_PATH.matcher(value);
+            if (!path.matches()) return null;
+            boolean child = path.group(2) != null;
+            int position = path.group(3) == null ? 0 : Integer.parseInt(path.group(3));
+            return new TagPath(child ? path.group(1) : null, child ? path.group(2) : path.group(1), position);
+        }
+        return null;
+    }
+
+    /** Matches //tag, //parent/tag and //tag[n], the n-th element of the tag among its parent's children **/
+    private static class TagPath implements Matcher {
+
+        private final String parentTag;
+        private final String tag;
+        // counted from 1, 0 for any
+        private final int position;
+
+        TagPath(String parentTag, String tag, int position) {
+            this.parentTag = parentTag;
+            this.tag = tag;
+            this.position = position;
+        }
+
+        public boolean matches(NodeTable table, int row) {
+            if (!table.tag(row).equals(tag)) return false;
+            int parent = table.parent[row];
+            if (parentTag != null && (parent < 0 || !table.tag(parent).equals(parentTag))) return false;
+            return position == 0 || position(table, parent, row) == position;
+        }
+
+        /** The position of the row among the children of its parent with its tag, the root being the first **/
+        private static int position(NodeTable table, int parent, int row) {
+            if (parent < 0) return 1;
+            int position = 0;
+            for (int child = parent + 1; child <= row; child = table.end[child]) {
+                if (table.tag[child] == table.tag[row]) position++;
+            }
+            return position;
+        }
+
+        /** Whether a row matching depends on its siblings, which a diff of another subtree may change **/
+        boolean positional() {
+            return position > 0;
+        }
+    }
+
+    /**
+     * The elements a locator matches on a screen, polled from one page source to the next.
+     * Matches are counted on the whole first table; after that only the changed subtrees are
+     * counted again, and a table without changes is not looked at.
+     */
+    public static class Watch {
+
+        private final Matcher matcher;
+        private NodeTable table;
+        private int matches;
+        private int shown;
+
+        public Watch(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        /** Take the table of the next poll **/
+        public void update(NodeTable next) {
+            update(next, table == null ? null : next.diff(table));
+        }
+
+        /** Take the table of the next poll, with its diff from the latest table when several watches share it **/
+        void update(NodeTable next, Diff diff) {
+            polls.incrementAndGet();
+            polledNodes.addAndGet(next.size);
+            // a sibling which changed its tag moves the others of their tag, so positions are counted again
+            if (table == null || (!diff.unchanged() && matcher instanceof TagPath && ((TagPath) matcher).positional())) {
+                matches = 0;
+                shown = 0;
+                if (next.size > 0) tally(next, 0, 1);
+            } else {
+                if (diff.unchanged()) unchangedPolls.incrementAndGet();
+                for (int i = 0; i < diff.size(); i++) {
+                    if (diff.before(i) >= 0) tally(table, diff.before(i), -1);
+                    if (diff.after(i) >= 0) tally(next, diff.after(i), 1);
+                }
+            }
+            table = next;
+        }
+
+        private void tally(NodeTable in, int root, int sign) {
+            visitedNodes.addAndGet(in.end[root] - root);
+            for (int row = root; row < in.end[root]; row++) {
+                if (matcher.matches(in, row)) {
+                    matches += sign;
+                    if (in.displayed(row)) shown += sign;
+                }
+            }
+        }
+
+        /** The latest table **/
+        public NodeTable table() {
+            return table;
+        }
+
+        /** Elements matching **/
+        public int matches() {
+            return matches;
+        }
+
+        /** Elements matching which are displayed **/
+        public int shown() {
+            return shown;
+        }
+
+        /** The first displayed match in the latest table, or -1 **/
+        public int firstShown() {
+            for (int row = 0; row < table.size; row++) {
+                if (matcher.matches(table, row) && table.displayed(row)) return row;
+            }
+            return -1;
+        }
+    }
+
+    /** Tables parsed and elements looked at by polling waits so far **/
+    public static String summary() {
+        long count = tables.get();
+        long polled = polledNodes.get();
+        return String.format("Node tables: %d parsed (%d elements, %d KB of page source, %.2f ms each), "
+                + "%d polls, %d unchanged, %d of %d elements looked at (%d%%)",
+                count, nodes.get(), sourceChars.get() / 1024,
+                count == 0 ? 0.0 : TimeUnit.NANOSECONDS.toMicros(parseNanos.get()) / 1e3 / count,
+                polls.get(), unchangedPolls.get(), visitedNodes.get(), polled,
+                polled == 0 ? 0 : visitedNodes.get() * 100 / polled);
+    }
+}
@@ -0,0 +1,162 @@
+package appium.tutorial.android.util;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+import io.appium.java_client.MobileBy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NodeTableTest {
+
+    private static final String ROW = "android.widget.TextView";
+
+    @Test
+    public void rowsAreInDocumentOrder() {
+        NodeTable table = NodeTable.parse(screen("Accessibility", "Animation"));
+        // hierarchy, list, two rows, title
+        assertEquals(5, table.size());
+        assertEquals("android.widget.ListView", table.tag(1));
+        assertEquals(1, table.parent(2));
+        assertEquals(4, table.end(1));
+        assertEquals("Animation", table.text(3));
+        assertEquals("android:id/text1", table.resourceId(3));
+        assertTrue(table.displayed(3));
+        assertFalse(table.displayed(4));
+    }
+
+    @Test
+    public void sameSourceIsUnchanged() {
+        NodeTable before = NodeTable.parse(screen("Accessibility", "Animation"));
+        NodeTable after = NodeTable.parse(screen("Accessibility", "Animation"));
+        assertEquals(before.hash(0), after.hash(0));
+        assertTrue(after.diff(before).unchanged());
+    }
+
+    @Test
+    public void changedRowIsTheOnlyChange() {
+        NodeTable before = NodeTable.parse(screen("Accessibility", "Animation", "App"));
+        NodeTable after = NodeTable.parse(screen("Accessibility", "Content", "App"));
+        NodeTable.Diff diff = after.diff(before);
+        assertEquals(1, diff.size());
+        assertEquals(3, diff.before(0));
+        assertEquals(3, diff.after(0));
+        assertEquals("Content", after.text(diff.after(0)));
+    }
+
+    @Test
+    public void addedRowChangesItsParent() {
+        NodeTable before = NodeTable.parse(screen("Accessibility", "Animation"));
+        NodeTable after = NodeTable.parse(screen("Accessibility", "Animation", "App"));
+        NodeTable.Diff diff = after.diff(before);
+        assertEquals(1, diff.size());
+        assertEquals(1, diff.before(0));
+        assertEquals(1, diff.after(0));
+    }
+
+    @Test
+    public void matchersFollowTheLocators() {
+        NodeTable table = NodeTable.parse(screen("Accessibility", "Animation"));
+        assertEquals(3, count(table, By.className(ROW)));
+        assertEquals(2, count(table, By.id("android:id/text1")));
+        assertEquals(1, count(table, By.name("Animation")));
+        assertEquals(1, count(table, MobileBy.AccessibilityId("Accessibility row")));
+        assertEquals(3, count(table, By.xpath("//" + ROW)));
+        assertEquals(2, count(table, By.xpath("//android.widget.ListView/" + ROW)));
+        assertEquals(1, count(table, By.xpath("//android.widget.ListView/" + ROW + "[2]")));
+        // the first of the list and the first outside it
+        assertEquals(2, count(table, By.xpath("//" + ROW + "[1]")));
+        assertNull(NodeTable.matcher(By.xpath("//" + ROW + "[@text=\"Animation\"]")));
+    }
+
+    @Test
+    public void watchKeepsCountingAsTheScreenChanges() {
+        String[][] screens = {
+                {"Accessibility", "Animation"},
+                {"Accessibility", "Animation"},
+                {"Accessibility", "App"},
+                {"Accessibility", "App", "Content", "Graphics"},
+                {},
+                {"Media", "NFC", "OS"},
+                {"Media", "NFC", "OS"},
+        };
+        By[] locators = {By.className(ROW), By.xpath("//" + ROW + "[2]"), By.xpath("//android.widget.ListView/" + ROW), By.id("android:id/text1"), By.name("App"), By.name("Missing")};
+        for (By locator : locators) {
+            NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(locator));
+            for (String[] rows : screens) {
+                NodeTable table = NodeTable.parse(screen(rows));
+                watch.update(table);
+
+                NodeTable.Watch recounted = new NodeTable.Watch(NodeTable.matcher(locator));
+                recounted.update(table);
+                assertEquals(locator + " matches", recounted.matches(), watch.matches());
+                assertEquals(locator + " shown", recounted.shown(), watch.shown());
+                assertEquals(locator + " first", recounted.firstShown(), watch.firstShown());
+            }
+        }
+    }
+
+    @Test
+    public void watchCountsTheHiddenTitleAsAMatchOnly() {
+        NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(By.className(ROW)));
+        watch.update(NodeTable.parse(screen()));
+        assertEquals(1, watch.matches());
+        assertEquals(0, watch.shown());
+        assertEquals(-1, watch.firstShown());
+
+        watch.update(NodeTable.parse(screen("Accessibility")));
+        assertEquals(2, watch.matches());
+        assertEquals(1, watch.shown());
+        assertEquals(2, watch.firstShown());
+    }
+
+    @Test
+    public void watchCountsPositionsAgainWhenASiblingChanges() {
+        NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(By.xpath("//" + ROW + "[1]")));
+        watch.update(NodeTable.parse("<hierarchy><android.widget.ImageView/><" + ROW + "/><" + ROW + "/></hierarchy>"));
+        assertEquals(1, watch.matches());
+        // only the first row changed, but the second is no longer the first of its tag
+        watch.update(NodeTable.parse("<hierarchy><" + ROW + "/><" + ROW + "/><" + ROW + "/></hierarchy>"));
+        assertEquals(1, watch.matches());
+        watch.update(NodeTable.parse("<hierarchy><android.widget.ImageView/><android.widget.ImageView/><android.widget.ImageView/></hierarchy>"));
+        assertEquals(0, watch.matches());
+    }
+
+    @Test
+    public void uniqueAttributesMakeNativeLocators() {
+        NodeTable table = NodeTable.parse(screen("Accessibility", "Animation"));
+        assertEquals(MobileBy.AccessibilityId("Animation row").toString(), table.nativeLocator(3).toString());
+        assertEquals(By.id("android:id/list").toString(), table.nativeLocator(1).toString());
+        assertNotNull(table.nativeLocator(4));
+        // the hierarchy has no attributes to find it by
+        assertNull(table.nativeLocator(0));
+    }
+
+    private static int count(NodeTable table, By locator) {
+        NodeTable.Matcher matcher = NodeTable.matcher(locator);
+        int count = 0;
+        for (int row = 0; row < table.size(); row++) {
+            if (matcher.matches(table, row)) count++;
+        }
+        return count;
+    }
+
+    /** A list of rows and a title which isn't displayed **/
+    private static String screen(String... rows) {
+        StringBuilder page = new StringBuilder("<hierarchy rotation=\"0\">");
+        page.append("<android.widget.ListView text=\"\" content-desc=\"\" resource-id=\"android:id/list\" bounds=\"[0,146][768,1184]\">");
+        for (int i = 0; i < rows.length; i++) {
+            int top = 146 + i * 96;
+            page.append("<" + ROW + " text=\"").append(rows[i]).append("\" content-desc=\"").append(rows[i])
+                    .append(" row\" resource-id=\"android:id/text1\" bounds=\"[0,").append(top).append("][768,")
+                    .append(top + 96).append("]\"/>");
+        }
+        page.append("</android.widget.ListView>");
+        page.append("<" + ROW + " text=\"API Demos\" content-desc=\"\" resource-id=\"android:id/title\" bounds=\"[0,0][0,0]\"/>");
+        return page.append("</hierarchy>").toString();
+    }
+}
@@ -0,0 +1,302 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed copy of the page source.
+ *
+ * XPath locators are evaluated against the copy in the JVM instead of on the device, where
+ * the translate()/contains() searches built by {@link AppiumTest#setKeyByResources(String)} are slow.
+ * A snapshot is only valid for the screen it was taken on; {@link AppiumTest} drops it whenever
+ * a command may have changed the screen.
+ */
+public class PageSnapshot {
+
+    // expressions kept per thread; xpaths built from row texts are mostly used once
+    private static final int MAX_EXPRESSIONS = 64;
+
+    /** XPath objects aren't thread safe, so every thread compiles its own, keeping the recently used ones **/
+    private static final ThreadLocal<Map<String, XPathExpression>> expressions = new ThreadLocal<Map<String, XPathExpression>>() {
+        protected Map<String, XPathExpression> initialValue() {
+            return new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                    return size() > MAX_EXPRESSIONS;
+                }
+            };
+        }
+    };
+
+    private static final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /** Attributes which tell screens apart, see fingerprint() **/
+    private static final String[] IDENTITY = {"resource-id", "content-desc", "text"};
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Document document;
+    private final long generation;
+
+    private PageSnapshot(Document document, long generation) {
+        this.document = document;
+        this.generation = generation;
+    }
+
+    /** Parse page source taken at the given screen generation **/
+    public static PageSnapshot parse(String pageSource, long generation) {
+        try {
+            return new PageSnapshot(builders.get().parse(new InputSource(new StringReader(pageSource))), generation);
+        } catch (Exception e) {
+            throw new WebDriverException("Unable to parse page source", e);
+        }
+    }
+
+    /** The screen generation the page source was taken at **/
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * A hash of the element tree and the ids, descriptions and texts of the elements. Positions, values and visibility
+     * are left out, so the same screen taken twice has the same fingerprint.
+     */
+    public String fingerprint() {
+        return fingerprint(true);
+    }
+
+    /**
+     * The fingerprint without the children of scrollable elements. The page source only has the rows of a list
+     * which are on screen, so the same list scrolled elsewhere has another fingerprint but the same layout.
+     */
+    public String layoutFingerprint() {
+        return fingerprint(false);
+    }
+
+    private String fingerprint(boolean scrolled) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, document.getDocumentElement(), scrolled);
+        return String.format("%032x", new BigInteger(1, digest.digest()));
+    }
+
+    private static void update(MessageDigest digest, Element element, boolean scrolled) {
+        digest.update(element.getTagName().getBytes(UTF8));
+        for (String attribute : IDENTITY) {
+            digest.update((byte) 0);
+            digest.update(element.getAttribute(attribute).getBytes(UTF8));
+        }
+        if (scrolled || !"true".equals(element.getAttribute("scrollable"))) {
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    update(digest, (Element) child, scrolled);
+                }
+            }
+        }
+        // closes the children, so a sibling and a child don't hash the same
+        digest.update((byte) 1);
+    }
+
+    /** True when the locator can be evaluated locally **/
+    public static boolean supports(By locator) {
+        return xpath(locator) != null;
+    }
+
+    /** Return the elements the locator matches, in document order **/
+    public List<Element> findAll(By locator) {
+        String xpath = xpath(locator);
+        if (xpath == null) {
+            throw new IllegalArgumentException("Locator can't be evaluated on a snapshot: " + locator);
+        }
+
+        NodeList nodes;
+        try {
+            nodes = (NodeList) compile(xpath).evaluate(document, XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            throw new WebDriverException("Invalid xpath: " + xpath, e);
+        }
+
+        List<Element> elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /** True when the locator matches at least one element **/
+    public boolean contains(By locator) {
+        return !findAll(locator).isEmpty();
+    }
+
+    /**
+     * Return the attribute of every element the locator matches, as getAttribute would.
+     * Like UIAutomator, "name" is the content description, or the text when there is none.
+     */
+    public List<String> attributes(By locator, String attribute) {
+        List<Element> elements = findAll(locator);
+        List<String> values = new ArrayList<String>(elements.size());
+        for (Element element : elements) {
+            values.add(attribute(element, attribute));
+        }
+        return values;
+    }
+
+    /** Return whether each element the locator matches is displayed, i.e. has a non empty bounds **/
+    public List<Boolean> displayed(By locator) {
+        List<Element> elements = findAll(locator);
+        List<Boolean> values = new ArrayList<Boolean>(elements.size());
+        for (Element element : elements) {
+            values.add(hasArea(element.getAttribute("bounds")));
+        }
+        return values;
+    }
+
+    /** The attribute of an element as UIAutomator reports it **/
+    static String attribute(Element element, String attribute) {
+        if (attribute.equals("name")) {
+            String description = element.getAttribute("content-desc");
+            return description.length() > 0 ? description : element.getAttribute("text");
+        }
+        if (attribute.equals("contentDescription")) return element.getAttribute("content-desc");
+        if (attribute.equals("resourceId")) return element.getAttribute("resource-id");
+        if (attribute.equals("className")) return element.getAttribute("class");
+        return element.hasAttribute(attribute) ? element.getAttribute(attribute) : null;
+    }
+
+    static boolean hasArea(String bounds) {
+        int[] edges = bounds(bounds);
+        return edges != null && edges[2] > edges[0] && edges[3] > edges[1];
+    }
+
+    /**
+     * Bounds look like [left,top][right,bottom].
+     * @return left, top, right and bottom, or null if the bounds don't parse
+     */
+    static int[] bounds(String bounds) {
+        String[] numbers = bounds.replace("][", ",").replace("[", "").replace("]", "").split(",");
+        if (numbers.length != 4) return null;
+        try {
+            int[] edges = new int[4];
+            for (int i = 0; i < 4; i++) {
+                edges[i] = Integer.parseInt(numbers[i].trim());
+            }
+            return edges;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return a native locator that finds exactly this element, or null if there is none.
+     * UIAutomator resolves content descriptions, resource ids and UiSelectors much faster
+     * than an xpath search.
+     */
+    public By nativeLocator(Element element) {
+        String description = element.getAttribute("content-desc");
+        if (description.length() > 0 && unique("content-desc", description)) {
+            return MobileBy.AccessibilityId(description);
+        }
+
+        String resourceId = element.getAttribute("resource-id");
+        if (resourceId.length() > 0 && unique("resource-id", resourceId)) {
+            return By.id(resourceId);
+        }
+
+        String text = element.getAttribute("text");
+        if (text.length() > 0 && unique("text", text)) {
+            return MobileBy.AndroidUIAutomator("new UiSelector().text(" + selectorString(text) + ")");
+        }
+        return null;
+    }
+
+    private boolean unique(String attribute, String value) {
+        return findAll(By.xpath("//*[@" + attribute + "=" + literal(value) + "]")).size() == 1;
+    }
+
+    /** Quote a string as a java string literal for a UiSelector **/
+    static String selectorString(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /** Translate a locator to the xpath matching the same elements in the page source **/
+    static String xpath(By locator) {
+        if (locator instanceof CompiledLocator) return ((CompiledLocator) locator).xpath();
+
+        String description = locator.toString();
+        int separator = description.indexOf(": ");
+        if (separator < 0) return null;
+
+        String strategy = description.substring(0, separator);
+        String value = description.substring(separator + 2);
+
+        if (strategy.equals("By.xpath")) return value;
+        if (strategy.equals("By.className")) return "//" + value;
+        if (strategy.equals("By.AccessibilityId")) return "//*[@content-desc=" + literal(value) + "]";
+        if (strategy.equals("By.id")) return "//*[@resource-id=" + literal(value) + "]";
+        if (strategy.equals("By.name")) {
+            return "//*[@content-desc=" + literal(value) + " or @text=" + literal(value) + "]";
+        }
+        return null;
+    }
+
+    /** Quote a string as an xpath literal, using concat() when it holds both quote kinds **/
+    static String literal(String value) {
+        if (value.indexOf('"') < 0) return "\"" + value + "\"";
+        if (value.indexOf('\'') < 0) return "'" + value + "'";
+
+        StringBuilder concat = new StringBuilder("concat(");
+        String[] parts = value.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) concat.append(", '\"', ");
+            concat.append('"').append(parts[i]).append('"');
+        }
+        return concat.append(')').toString();
+    }
+
+    private static XPathExpression compile(String xpath) throws XPathExpressionException {
+        Map<String, XPathExpression> compiled = expressions.get();
+        XPathExpression expression = compiled.get(xpath);
+        if (expression == null) {
+            XPath factory = XPathFactory.newInstance().newXPath();
+            expression = factory.compile(xpath);
+            compiled.put(xpath, expression);
+        }
+        return expression;
+    }
+}
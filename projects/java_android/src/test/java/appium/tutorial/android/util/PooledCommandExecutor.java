@@ -0,0 +1,322 @@
+package appium.tutorial.android.util;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.HttpSessionId;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionNotFoundException;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.JsonHttpCommandCodec;
+import org.openqa.selenium.remote.http.JsonHttpResponseCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sends driver commands over a pool of keep-alive connections shared by every session in the JVM.
+ *
+ * The default executor allows up to 2000 connections per server, so many parallel sessions
+ * open many sockets. This one keeps at most -Dexecutor.maxPerHost connections (default 8) open
+ * to a server; a command which finds them all busy waits for one to be released. Responses are
+ * requested gzipped, which shrinks page sources and screenshots on the wire when the server
+ * compresses. Connections idle for more than -Dexecutor.idleMillis (default 4000) are closed
+ * rather than reused, so none is found closed by the server.
+ *
+ * Enable with -Dexecutor=pooled. Request, connection lease and connect times and the bytes
+ * received are printed when the JVM exits with -Dstats=true.
+ */
+public class PooledCommandExecutor implements CommandExecutor {
+
+    private static final int MAX_PER_HOST = Integer.getInteger("executor.maxPerHost", 8);
+    // below the keep-alive timeout of the server, so it doesn't close a connection as it is reused
+    private static final int IDLE_MILLIS = Integer.getInteger("executor.idleMillis", 4000);
+    private static final int CONNECT_TIMEOUT_MILLIS = 60 * 1000;
+    // Appium commands like newSession can take minutes
+    private static final int SOCKET_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private static final Histogram requestMicros = new Histogram();
+    private static final Histogram leaseMicros = new Histogram();
+    private static final Histogram connectMicros = new Histogram();
+    private static final AtomicLong wireBytes = new AtomicLong();
+    private static final AtomicLong bytes = new AtomicLong();
+    private static final AtomicLong gzipped = new AtomicLong();
+
+    private final String server;
+    private final JsonHttpCommandCodec commandCodec;
+    private final JsonHttpResponseCodec responseCodec = new JsonHttpResponseCodec();
+
+    private PooledCommandExecutor(URL server, JsonHttpCommandCodec commandCodec) {
+        this.server = server.toExternalForm().replaceAll("/$", "");
+        this.commandCodec = commandCodec;
+    }
+
+    /** True when the tests run with -Dexecutor=pooled **/
+    public static boolean selected() {
+        return "pooled".equals(System.getProperty("executor"));
+    }
+
+    /**
+     * Return an executor which sends the same commands to the same server as the given one.
+     * The command table is taken over as it is, so the Appium commands keep working.
+     */
+    public static PooledCommandExecutor replacing(HttpCommandExecutor executor) {
+        try {
+            Field codec = HttpCommandExecutor.class.getDeclaredField("commandCodec");
+            codec.setAccessible(true);
+            return new PooledCommandExecutor(executor.getAddressOfRemoteServer(),
+                    (JsonHttpCommandCodec) codec.get(executor));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to take over the commands of " + executor, e);
+        }
+    }
+
+    public Response execute(Command command) throws IOException {
+        String name = command.getName();
+        if (command.getSessionId() == null && !DriverCommand.NEW_SESSION.equals(name)
+                && !DriverCommand.GET_ALL_SESSIONS.equals(name)) {
+            throw new SessionNotFoundException("Session ID is null. Using WebDriver after calling quit()?");
+        }
+
+        HttpRequest request;
+        try {
+            request = commandCodec.encode(command);
+        } catch (UnsupportedCommandException e) {
+            throw new UnsupportedOperationException("No information from server. Command name was: " + name, e);
+        }
+
+        HttpRequestBase http = request(request.getMethod(), server + request.getUri());
+        for (Object header : request.getHeaderNames()) {
+            String headerName = String.valueOf(header);
+            if ("Content-Length".equalsIgnoreCase(headerName)) continue;
+            for (Object value : request.getHeaders(headerName)) {
+                http.addHeader(headerName, String.valueOf(value));
+            }
+        }
+        http.setHeader("Accept-Encoding", "gzip");
+        if (http instanceof HttpPost) {
+            ((HttpPost) http).setEntity(new ByteArrayEntity(request.getContent()));
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        CloseableHttpResponse httpResponse = Client.http.execute(http, context);
+        try {
+            Response response = responseCodec.decode(response(httpResponse));
+            if (response.getSessionId() == null) {
+                List<URI> redirects = context.getRedirectLocations();
+                if (redirects != null && !redirects.isEmpty()) {
+                    response.setSessionId(HttpSessionId.getSessionId(redirects.get(redirects.size() - 1).toString()));
+                } else if (command.getSessionId() != null) {
+                    response.setSessionId(command.getSessionId().toString());
+                }
+            }
+            return response;
+        } finally {
+            httpResponse.close();
+            requestMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    private static HttpRequestBase request(HttpMethod method, String url) {
+        switch (method) {
+            case DELETE:
+                return new HttpDelete(url);
+            case GET:
+                return new HttpGet(url);
+            default:
+                return new HttpPost(url);
+        }
+    }
+
+    /** Copy the response, unzipping the body when it came gzipped **/
+    private static HttpResponse response(CloseableHttpResponse httpResponse) throws IOException {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(httpResponse.getStatusLine().getStatusCode());
+
+        boolean gzip = false;
+        for (Header header : httpResponse.getAllHeaders()) {
+            if ("Content-Encoding".equalsIgnoreCase(header.getName())) {
+                gzip = header.getValue().toLowerCase().contains("gzip");
+            } else {
+                response.addHeader(header.getName(), header.getValue());
+            }
+        }
+
+        HttpEntity entity = httpResponse.getEntity();
+        byte[] content = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+        wireBytes.addAndGet(content.length);
+        if (gzip) {
+            content = gunzip(content);
+            gzipped.incrementAndGet();
+        }
+        bytes.addAndGet(content.length);
+        response.setContent(content);
+        return response;
+    }
+
+    private static byte[] gunzip(byte[] content) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 4);
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Request, lease and connect times and the bytes received so far **/
+    public static String summary() {
+        long wire = wireBytes.get();
+        long all = bytes.get();
+        return "Pooled executor (" + MAX_PER_HOST + " connections per host):\n"
+                + "  requests (us): " + requestMicros + "\n"
+                + "  connection leases (us): " + leaseMicros + "\n"
+                + "  connects (us): " + connectMicros + "\n"
+                + "  received: " + wire / 1024 + " KB on the wire, " + all / 1024 + " KB unzipped, "
+                + gzipped.get() + " gzipped responses";
+    }
+
+    /** The client, created with the first pooled executor **/
+    private static class Client {
+        static final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        static final CloseableHttpClient http;
+
+        static {
+            pool.setDefaultMaxPerRoute(MAX_PER_HOST);
+            pool.setMaxTotal(Math.max(MAX_PER_HOST, 200));
+            pool.setDefaultSocketConfig(SocketConfig.custom().setTcpNoDelay(true).setSoKeepAlive(true)
+                    .setSoTimeout(SOCKET_TIMEOUT_MILLIS).build());
+
+            http = HttpClients.custom()
+                    .setConnectionManager(new TimedConnectionManager(pool))
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                            .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+                            .setConnectionRequestTimeout(SOCKET_TIMEOUT_MILLIS)
+                            // checking costs a blocking read per command, idle connections are closed instead
+                            .setStaleConnectionCheckEnabled(false)
+                            .build())
+                    // newSession may answer with a redirect to the session
+                    .setRedirectStrategy(new LaxRedirectStrategy())
+                    // gzip is handled above, to count the bytes on the wire
+                    .disableContentCompression()
+                    .build();
+
+            Runtime.getRuntime().addShutdownHook(new Thread("pooled-executor") {
+                public void run() {
+                    pool.shutdown();
+                }
+            });
+            Stats.register(new Stats.Summary() {
+                public String summary() {
+                    return requestMicros.count() > 0 ? PooledCommandExecutor.summary() : null;
+                }
+            });
+        }
+    }
+
+    /** Times how long commands wait for a connection from the pool, and how long connecting takes **/
+    private static class TimedConnectionManager implements HttpClientConnectionManager {
+        private final HttpClientConnectionManager pool;
+
+        TimedConnectionManager(HttpClientConnectionManager pool) {
+            this.pool = pool;
+        }
+
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            pool.closeIdleConnections(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            final ConnectionRequest request = pool.requestConnection(route, state);
+            return new ConnectionRequest() {
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    } finally {
+                        leaseMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+                }
+
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context)
+                throws IOException {
+            long start = System.nanoTime();
+            try {
+                pool.connect(connection, route, connectTimeout, context);
+            } finally {
+                connectMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+
+        public void releaseConnection(HttpClientConnection connection, Object state, long validDuration, TimeUnit unit) {
+            pool.releaseConnection(connection, state, validDuration, unit);
+        }
+
+        public void upgrade(HttpClientConnection connection, HttpRoute route, HttpContext context) throws IOException {
+            pool.upgrade(connection, route, context);
+        }
+
+        public void routeComplete(HttpClientConnection connection, HttpRoute route, HttpContext context)
+                throws IOException {
+            pool.routeComplete(connection, route, context);
+        }
+
+        public void closeIdleConnections(long idleTime, TimeUnit unit) {
+            pool.closeIdleConnections(idleTime, unit);
+        }
+
+        public void closeExpiredConnections() {
+            pool.closeExpiredConnections();
+        }
+
+        public void shutdown() {
+            pool.shutdown();
+        }
+    }
+}
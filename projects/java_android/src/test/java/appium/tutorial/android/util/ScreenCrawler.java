@@ -0,0 +1,563 @@
+package appium.tutorial.android.util;
+
+import com.google.gson.GsonBuilder;
+import io.appium.java_client.AppiumDriver;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Visits every screen reachable from the home screen, with several sessions at once.
+ *
+ * The work is a set of actions: go to a screen by a path of taps from home, then tap one more
+ * element. Every session has its own deque of actions. It takes the actions it found last,
+ * which are on the screen it is on, and when it runs out it steals the oldest action of another
+ * session, which is the fewest taps away from home. Screens are told apart by the fingerprint
+ * of their page source ({@link PageSnapshot#fingerprint()}), so a screen reached over several
+ * paths is explored once. The page source only has the rows of a list which are on screen, so
+ * a screen which differs from the expected one by the rows of its lists alone has its lists
+ * scrolled back to the top before it's compared again.
+ *
+ * The result is the graph of screens and the taps between them, with the time from a tap
+ * until the next screen showed up. A crawler crawls once.
+ */
+public class ScreenCrawler {
+
+    /** How the crawler finds the elements which may lead to another screen, and taps them **/
+    public interface Navigator {
+        /** The names of the elements on the screen to tap, in order **/
+        List<String> targets(PageSnapshot screen);
+
+        void tap(AppiumDriver driver, WaitEngine wait, String target);
+
+        void back(AppiumDriver driver);
+
+        /**
+         * Scroll the lists on the screen back to the top, where they were when the screen was first seen. Taps scroll
+         * to their targets, and going back returns to a list where it was left.
+         */
+        void rewind(AppiumDriver driver, PageSnapshot screen);
+
+        /** Start over on the home screen, once a session lost track of where it is **/
+        void home(AppiumDriver driver);
+    }
+
+    /** Taps every row of the list, like AutomatingASimpleActionTest.four() **/
+    public static final Navigator LIST_ROWS = new Navigator() {
+        public List<String> targets(PageSnapshot screen) {
+            List<String> targets = new ArrayList<String>();
+            By rows = By.xpath("//android.widget.ListView/android.widget.TextView");
+            for (String name : screen.attributes(rows, "name")) {
+                if (name != null && name.length() > 0 && !targets.contains(name)) {
+                    targets.add(name);
+                }
+            }
+            return targets;
+        }
+
+        public void tap(final AppiumDriver driver, WaitEngine wait, final String target) {
+            wait.until("scroll to exact " + target, new ExpectedCondition<WebElement>() {
+                public WebElement apply(WebDriver webDriver) {
+                    return driver.scrollToExact(target);
+                }
+            }).click();
+        }
+
+        public void back(AppiumDriver driver) {
+            driver.navigate().back();
+        }
+
+        public void rewind(AppiumDriver driver, PageSnapshot screen) {
+            List<Element> lists = screen.findAll(By.xpath("//*[@scrollable='true']"));
+            if (lists.isEmpty()) return;
+            int[] bounds = PageSnapshot.bounds(lists.get(0).getAttribute("bounds"));
+            if (bounds == null) return;
+
+            int x = (bounds[0] + bounds[2]) / 2;
+            int margin = (bounds[3] - bounds[1]) / 5;
+            String rows = screen.fingerprint();
+            for (int swiped = 0; swiped < MAX_REWIND_SWIPES; swiped++) {
+                driver.swipe(x, bounds[1] + margin, x, bounds[3] - margin, REWIND_SWIPE_MILLIS);
+                String after = PageSnapshot.parse(driver.getPageSource(), 0).fingerprint();
+                // the rows stop changing at the top
+                if (after.equals(rows)) return;
+                rows = after;
+            }
+        }
+
+        public void home(AppiumDriver driver) {
+            driver.resetApp();
+        }
+    };
+
+    // slow enough not to fling past the top and bounce
+    private static final int REWIND_SWIPE_MILLIS = 600;
+    private static final int MAX_REWIND_SWIPES = 50;
+
+    private static final String HOME = "home";
+    // how long an idle session waits before looking for work again
+    private static final long IDLE_MILLIS = 20;
+
+    private final Navigator navigator;
+    private final long settleMillis;
+
+    private final ConcurrentMap<String, Screen> screens = new ConcurrentHashMap<String, Screen>();
+    private final Queue<Edge> edges = new ConcurrentLinkedQueue<Edge>();
+    // actions queued or running; the crawl is done when there are none
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong actions = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+    private final AtomicLong replayedTaps = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong rewinds = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private List<Worker> workers;
+    private long wallMillis;
+
+    /**
+     * @param settle How long a tap may take to show another screen. A tap which doesn't
+     *               change the screen within that time is taken to stay on it.
+     */
+    public ScreenCrawler(Navigator navigator, long settle, TimeUnit unit) {
+        this.navigator = navigator;
+        this.settleMillis = unit.toMillis(settle);
+    }
+
+    /** Crawl from the home screen, one worker thread per session. All sessions must be on home. **/
+    public void crawl(List<? extends AppiumDriver> sessions) throws InterruptedException {
+        if (workers != null) {
+            throw new IllegalStateException("A crawler crawls once");
+        }
+        long start = System.nanoTime();
+
+        workers = new ArrayList<Worker>();
+        for (AppiumDriver session : sessions) {
+            workers.add(new Worker(workers.size(), session));
+        }
+        workers.get(0).explore(new ArrayList<String>(), HOME);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "crawler-" + worker.index);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        wallMillis = millisSince(start);
+    }
+
+    /** The screens found, the ones closest to home first **/
+    public List<Screen> screens() {
+        List<Screen> sorted = new ArrayList<Screen>(screens.values());
+        Collections.sort(sorted, new Comparator<Screen>() {
+            public int compare(Screen a, Screen b) {
+                if (a.path.size() != b.path.size()) return a.path.size() - b.path.size();
+                return a.path.toString().compareTo(b.path.toString());
+            }
+        });
+        return sorted;
+    }
+
+    /** The taps which led from one screen to another **/
+    public List<Edge> edges() {
+        return new ArrayList<Edge>(edges);
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("  Crawled %d screens, %d transitions in %d ms with %d sessions: "
+                        + "%d taps, %d stolen, %d replayed taps, %d rewinds, %d restarts, %d failed%n",
+                screens.size(), edges.size(), wallMillis, workers.size(), actions.get(), stolen.get(),
+                replayedTaps.get(), rewinds.get(), restarts.get(), failures.get()));
+        for (Screen screen : screens()) {
+            summary.append(String.format("    %-8s %-40s %3d targets, load ms %s%n", screen.id(),
+                    screen.name, screen.targets, screen.loadMillis));
+        }
+        return summary.toString();
+    }
+
+    /** Write the screen graph as JSON **/
+    public void write(File file) throws IOException {
+        List<Map<String, Object>> nodes = new ArrayList<Map<String, Object>>();
+        for (Screen screen : screens()) {
+            Map<String, Object> node = new LinkedHashMap<String, Object>();
+            node.put("id", screen.id());
+            node.put("name", screen.name);
+            node.put("path", screen.path);
+            node.put("targets", screen.targets);
+            node.put("stays", screen.stays.get());
+            Map<String, Object> loads = new LinkedHashMap<String, Object>();
+            loads.put("count", screen.loadMillis.count());
+            loads.put("mean", screen.loadMillis.mean());
+            loads.put("p50", screen.loadMillis.percentile(0.5));
+            loads.put("p90", screen.loadMillis.percentile(0.9));
+            loads.put("max", screen.loadMillis.max());
+            node.put("loadMillis", loads);
+            nodes.add(node);
+        }
+
+        List<Map<String, Object>> links = new ArrayList<Map<String, Object>>();
+        for (Edge edge : edges) {
+            Map<String, Object> link = new LinkedHashMap<String, Object>();
+            link.put("from", edge.from.id());
+            link.put("tap", edge.target);
+            link.put("to", edge.to.id());
+            link.put("millis", edge.millis);
+            links.add(link);
+        }
+
+        Map<String, Object> graph = new LinkedHashMap<String, Object>();
+        graph.put("screens", nodes);
+        graph.put("edges", links);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        Writer writer = new FileWriter(file);
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(graph, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** A screen, first reached by the path of taps from home **/
+    public static class Screen {
+        final String fingerprint;
+        // the fingerprint without the rows of its lists, see PageSnapshot.layoutFingerprint()
+        final String layout;
+        final String name;
+        final List<String> path;
+        final Histogram loadMillis = new Histogram();
+        final AtomicInteger stays = new AtomicInteger();
+        volatile int targets;
+
+        Screen(String fingerprint, String layout, String name, List<String> path) {
+            this.fingerprint = fingerprint;
+            this.layout = layout;
+            this.name = name;
+            this.path = Collections.unmodifiableList(new ArrayList<String>(path));
+        }
+
+        /** A short id, unique enough for one app **/
+        public String id() {
+            return fingerprint.substring(0, 8);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public List<String> path() {
+            return path;
+        }
+
+        /** Time from a tap until this screen showed up **/
+        public Histogram loadMillis() {
+            return loadMillis;
+        }
+    }
+
+    /** A tap which led from one screen to another **/
+    public static class Edge {
+        final Screen from;
+        final String target;
+        final Screen to;
+        final long millis;
+
+        Edge(Screen from, String target, Screen to, long millis) {
+            this.from = from;
+            this.target = target;
+            this.to = to;
+            this.millis = millis;
+        }
+
+        public String toString() {
+            return from.name + " -[" + target + "]-> " + to.name;
+        }
+    }
+
+    /** Tap the target on the screen **/
+    private static class Action {
+        final Screen from;
+        final String target;
+
+        Action(Screen from, String target) {
+            this.from = from;
+            this.target = target;
+        }
+
+        public String toString() {
+            return from.path + " tap " + target;
+        }
+    }
+
+    private class Worker implements Runnable {
+        final int index;
+        final AppiumDriver driver;
+        final WaitEngine wait;
+        final Deque<Action> queue = new ConcurrentLinkedDeque<Action>();
+
+        // the taps from home to the screen the session is on, or null when it lost track
+        List<String> at = new ArrayList<String>();
+        // the screen the session is known to be on, or null
+        Screen screen;
+
+        Worker(int index, AppiumDriver driver) {
+            this.index = index;
+            this.driver = driver;
+            this.wait = new WaitEngine(driver, settleMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            Action action;
+            while ((action = next()) != null) {
+                try {
+                    perform(action);
+                } catch (RuntimeException e) {
+                    // the crawl goes on without this tap
+                    failures.incrementAndGet();
+                    System.out.println("  crawl: " + action + " failed: "
+                            + String.valueOf(e.getMessage()).split("\n")[0]);
+                    at = null;
+                    screen = null;
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        }
+
+        /** Own work first, the newest; then the oldest work of another session **/
+        private Action next() {
+            while (true) {
+                Action action = queue.pollFirst();
+                if (action != null) return action;
+
+                for (int i = 1; i < workers.size(); i++) {
+                    action = workers.get((index + i) % workers.size()).queue.pollLast();
+                    if (action != null) {
+                        stolen.incrementAndGet();
+                        return action;
+                    }
+                }
+
+                // a session still tapping may find more screens
+                if (pending.get() == 0) return null;
+                try {
+                    Thread.sleep(IDLE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        private void perform(Action action) {
+            moveTo(action.from);
+            actions.incrementAndGet();
+
+            long start = System.nanoTime();
+            navigator.tap(driver, wait, action.target);
+            PageSnapshot after = changedFrom(action.from);
+            long millis = millisSince(start);
+            if (after == null) {
+                action.from.stays.incrementAndGet();
+                return;
+            }
+
+            at.add(action.target);
+            Screen reached = explore(at, action.target, after);
+            reached.loadMillis.record(millis);
+            edges.add(new Edge(action.from, action.target, reached, millis));
+        }
+
+        /** Record the screen the session is on, queueing its targets when it is new **/
+        Screen explore(List<String> path, String name) {
+            return explore(path, name, snapshot());
+        }
+
+        private Screen explore(List<String> path, String name, PageSnapshot snapshot) {
+            Screen found = new Screen(snapshot.fingerprint(), snapshot.layoutFingerprint(), name, path);
+            Screen known = screens.putIfAbsent(found.fingerprint, found);
+            screen = known != null ? known : found;
+            if (known != null) return known;
+
+            List<String> targets = navigator.targets(snapshot);
+            found.targets = targets.size();
+            // the first target is taken first
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                pending.incrementAndGet();
+                queue.addFirst(new Action(found, targets.get(i)));
+            }
+            return found;
+        }
+
+        /** Get to the screen, backing up to the common part of the paths and tapping on from there **/
+        private void moveTo(Screen target) {
+            if (target == screen) return;
+
+            if (at != null) {
+                replay(target.path);
+                if (arrivedAt(target)) return;
+            }
+
+            restarts.incrementAndGet();
+            navigator.home(driver);
+            at = new ArrayList<String>();
+            replay(target.path);
+            if (!arrivedAt(target)) {
+                at = null;
+                screen = null;
+                throw new WebDriverException("Unable to get to " + target.name + " by " + target.path);
+            }
+        }
+
+        private void replay(List<String> path) {
+            int common = 0;
+            while (common < at.size() && common < path.size() && at.get(common).equals(path.get(common))) {
+                common++;
+            }
+            for (int i = at.size(); i > common; i--) {
+                navigator.back(driver);
+            }
+            for (String tap : path.subList(common, path.size())) {
+                navigator.tap(driver, wait, tap);
+                replayedTaps.incrementAndGet();
+            }
+            at = new ArrayList<String>(path);
+        }
+
+        private boolean arrivedAt(final Screen target) {
+            try {
+                wait.until("crawl: arrive at " + target.name, new ExpectedCondition<Boolean>() {
+                    boolean rewound;
+
+                    public Boolean apply(WebDriver webDriver) {
+                        PageSnapshot current = snapshot();
+                        if (target.fingerprint.equals(current.fingerprint())) return true;
+                        // back() returns to a list where it was left, not where the screen was recorded
+                        if (rewound || !target.layout.equals(current.layoutFingerprint())) return false;
+                        rewound = true;
+                        return target.fingerprint.equals(rewind(current).fingerprint());
+                    }
+                });
+            } catch (TimeoutException e) {
+                return false;
+            }
+            screen = target;
+            return true;
+        }
+
+        /**
+         * The screen after a tap, or null if it is still the same one after the settle time. A tap which only
+         * scrolled the list shows the same screen once the list is rewound.
+         */
+        private PageSnapshot changedFrom(final Screen before) {
+            try {
+                return wait.until("crawl: leave " + before.name, new ExpectedCondition<PageSnapshot>() {
+                    boolean rewound;
+
+                    public PageSnapshot apply(WebDriver webDriver) {
+                        PageSnapshot current = snapshot();
+                        if (before.fingerprint.equals(current.fingerprint())) return null;
+                        if (!rewound && before.layout.equals(current.layoutFingerprint())) {
+                            rewound = true;
+                            current = rewind(current);
+                        }
+                        return before.fingerprint.equals(current.fingerprint()) ? null : current;
+                    }
+                });
+            } catch (TimeoutException e) {
+                return null;
+            }
+        }
+
+        private PageSnapshot snapshot() {
+            return PageSnapshot.parse(driver.getPageSource(), 0);
+        }
+
+        /** The screen with its lists scrolled back to the top **/
+        private PageSnapshot rewind(PageSnapshot screen) {
+            rewinds.incrementAndGet();
+            navigator.rewind(driver, screen);
+            return snapshot();
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Crawl the app with -Dcrawl.sessions sessions (1 by default) on the server of -Dserver, or
+     * on a stand-in with -Dstandin, and write the screen graph to target/crawl.json, or
+     * -Dcrawl.out=<file>. -Dcrawl.settleMillis is how long a tap may take to show another
+     * screen, 3000 by default.
+     */
+    public static void main(String[] args) throws Exception {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("appium-version", "1.1.0");
+        capabilities.setCapability("platformName", "Android");
+        capabilities.setCapability("deviceName", "Android");
+        capabilities.setCapability("platformVersion", "4.3");
+        capabilities.setCapability("name", "Appium tutorial crawl");
+        capabilities.setCapability("app",
+                Paths.get(System.getProperty("user.dir"), "api.apk").toAbsolutePath().toString());
+        URL server = System.getProperty("standin") != null
+                ? StandInServer.shared().url()
+                : new URL(System.getProperty("server", "http://127.0.0.1:4723/wd/hub"));
+
+        List<AppiumDriver> sessions = new ArrayList<AppiumDriver>();
+        try {
+            for (int i = Integer.getInteger("crawl.sessions", 1); i > 0; i--) {
+                sessions.add(new InstrumentedAndroidDriver(server, capabilities));
+            }
+
+            ScreenCrawler crawler = new ScreenCrawler(LIST_ROWS, Long.getLong("crawl.settleMillis", 3000),
+                    TimeUnit.MILLISECONDS);
+            crawler.crawl(sessions);
+            System.out.print(crawler.summary());
+
+            File out = new File(System.getProperty("crawl.out", "target/crawl.json"));
+            crawler.write(out);
+            System.out.println("  screen graph written to " + out);
+        } finally {
+            for (AppiumDriver session : sessions) {
+                session.quit();
+            }
+        }
+        // a stand-in server would keep the JVM running
+        System.exit(0);
+    }
+}
@@ -0,0 +1,220 @@
+package appium.tutorial.android.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A screen served without a device, built from a page source.
+ *
+ * Finds are answered the way UIAutomator would answer them. XPath, class name, resource id
+ * and content description locators are evaluated on the page source with {@link PageSnapshot};
+ * UiSelectors, including the UiScrollable ones scrollTo sends, are matched attribute by
+ * attribute. Every element found gets an id which stays the same for the life of the model,
+ * so elements can be read back by id like remote elements.
+ *
+ * A model is not thread safe; use one per session.
+ */
+public class ScreenModel {
+
+    /** A UiSelector method call with an optional quoted or plain argument **/
+    private static final Pattern CALL = Pattern.compile("\\.(\\w+)\\((\"(?:[^\"\\\\]|\\\\.)*\"|[^()]*)\\)");
+
+    private final String pageSource;
+    private final PageSnapshot snapshot;
+    private final String idPrefix;
+
+    private final Map<Element, String> ids = new IdentityHashMap<Element, String>();
+    private final Map<String, Element> elements = new HashMap<String, Element>();
+
+    private ScreenModel(String pageSource, String idPrefix) {
+        this.pageSource = pageSource;
+        this.snapshot = PageSnapshot.parse(pageSource, 0);
+        this.idPrefix = idPrefix;
+    }
+
+    /** Build a screen from page source **/
+    public static ScreenModel parse(String pageSource) {
+        return new ScreenModel(pageSource, "");
+    }
+
+    /**
+     * Build a screen whose element ids start with a prefix, so ids of elements on a screen
+     * which has been left are stale instead of naming elements on the new one.
+     */
+    public static ScreenModel parse(String pageSource, String idPrefix) {
+        return new ScreenModel(pageSource, idPrefix);
+    }
+
+    /** The page source, as getPageSource returns it **/
+    public String pageSource() {
+        return pageSource;
+    }
+
+    /**
+     * Return the ids of the elements matching a locator, in document order.
+     * @param using The strategy as sent over the wire, e.g. "xpath" or "-android uiautomator"
+     */
+    public List<String> find(String using, String value) {
+        List<Element> found = "-android uiautomator".equals(using)
+                ? findBySelectors(value)
+                : snapshot.findAll(locator(using, value));
+
+        List<String> foundIds = new ArrayList<String>(found.size());
+        for (Element element : found) {
+            foundIds.add(id(element));
+        }
+        return foundIds;
+    }
+
+    /** The attribute of an element, as getAttribute returns it **/
+    public String attribute(String id, String attribute) {
+        return PageSnapshot.attribute(element(id), attribute);
+    }
+
+    public String text(String id) {
+        return element(id).getAttribute("text");
+    }
+
+    public boolean displayed(String id) {
+        return PageSnapshot.hasArea(element(id).getAttribute("bounds"));
+    }
+
+    public String tagName(String id) {
+        return element(id).getAttribute("class");
+    }
+
+    /** Translate a wire strategy to a locator the snapshot can evaluate **/
+    private static By locator(String using, String value) {
+        if ("xpath".equals(using)) return By.xpath(value);
+        if ("class name".equals(using)) return By.className(value);
+        if ("accessibility id".equals(using)) return MobileBy.AccessibilityId(value);
+        if ("id".equals(using)) return By.id(value);
+        if ("name".equals(using)) return By.name(value);
+        throw new InvalidSelectorException("Strategy isn't supported without a device: " + using);
+    }
+
+    /** Elements matching any of the ';' separated UiSelectors, like UIAutomator returns them **/
+    private List<Element> findBySelectors(String value) {
+        List<Element> all = snapshot.findAll(By.xpath("//*"));
+        Set<Element> found = new LinkedHashSet<Element>();
+        for (String selector : split(value)) {
+            found.addAll(match(selector, all));
+        }
+        return new ArrayList<Element>(found);
+    }
+
+    private static List<Element> match(String selector, List<Element> all) {
+        // a UiScrollable finds what it scrolls into view; there is nothing to scroll here
+        int scroll = selector.indexOf("scrollIntoView(");
+        if (scroll >= 0) selector = selector.substring(scroll + "scrollIntoView(".length());
+
+        int instance = -1;
+        List<String[]> conditions = new ArrayList<String[]>();
+        Matcher call = CALL.matcher(selector);
+        while (call.find()) {
+            String argument = call.group(2);
+            if (argument.startsWith("\"")) {
+                argument = argument.substring(1, argument.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+            }
+            if (call.group(1).equals("instance")) {
+                instance = Integer.parseInt(argument.trim());
+            } else {
+                conditions.add(new String[]{call.group(1), argument});
+            }
+        }
+
+        List<Element> matched = new ArrayList<Element>();
+        for (Element element : all) {
+            if (matches(element, conditions)) matched.add(element);
+        }
+        if (instance >= 0) {
+            return instance < matched.size() ? matched.subList(instance, instance + 1) : new ArrayList<Element>();
+        }
+        return matched;
+    }
+
+    private static boolean matches(Element element, List<String[]> conditions) {
+        for (String[] condition : conditions) {
+            if (!matches(element, condition[0], condition[1])) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(Element element, String method, String argument) {
+        String text = element.getAttribute("text");
+        String description = element.getAttribute("content-desc");
+        String resourceId = element.getAttribute("resource-id");
+        String className = element.getAttribute("class");
+
+        if (method.equals("text")) return text.equals(argument);
+        if (method.equals("textContains")) return text.contains(argument);
+        if (method.equals("textStartsWith")) return text.startsWith(argument);
+        if (method.equals("textMatches")) return text.matches(argument);
+        if (method.equals("description")) return description.equals(argument);
+        if (method.equals("descriptionContains")) return description.contains(argument);
+        if (method.equals("descriptionStartsWith")) return description.startsWith(argument);
+        if (method.equals("descriptionMatches")) return description.matches(argument);
+        if (method.equals("resourceId")) return resourceId.equals(argument);
+        if (method.equals("resourceIdMatches")) return resourceId.matches(argument);
+        if (method.equals("className")) return className.equals(argument);
+        if (method.equals("classNameMatches")) return className.matches(argument);
+        if (method.equals("index")) return element.getAttribute("index").equals(argument.trim());
+        if (method.equals("scrollable") || method.equals("clickable") || method.equals("enabled")
+                || method.equals("checked") || method.equals("selected") || method.equals("focusable")
+                || method.equals("longClickable") || method.equals("checkable")) {
+            return element.getAttribute(method).equals(argument.trim());
+        }
+        throw new InvalidSelectorException("UiSelector method isn't supported without a device: " + method);
+    }
+
+    /** Split on the ';' between selectors, but not on one inside a quoted string **/
+    private static List<String> split(String selectors) {
+        List<String> parts = new ArrayList<String>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < selectors.length(); i++) {
+            char c = selectors.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ';' && !quoted) {
+                parts.add(selectors.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (start < selectors.length()) parts.add(selectors.substring(start));
+        return parts;
+    }
+
+    private String id(Element element) {
+        String id = ids.get(element);
+        if (id == null) {
+            id = idPrefix + (ids.size() + 1);
+            ids.put(element, id);
+            elements.put(id, element);
+        }
+        return id;
+    }
+
+    private Element element(String id) {
+        Element element = elements.get(id);
+        if (element == null) {
+            throw new StaleElementReferenceException("No element with id " + id + " on this screen");
+        }
+        return element;
+    }
+}
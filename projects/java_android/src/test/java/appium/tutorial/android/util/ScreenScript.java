@@ -0,0 +1,82 @@
+package appium.tutorial.android.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The screens of an app captured as page source, and how to get from one to the other.
+ *
+ * A script is a directory of page source files, one per screen. The app starts on home.xml.
+ * Clicking an element whose name, up to the first comma, is the name of another file opens
+ * that screen: clicking the row "Accessibility" opens Accessibility.xml. Like getAttribute,
+ * the name is the content description, or the text when there is none.
+ * A single page source file is a script with one screen which nothing navigates away from.
+ *
+ * Scripts are immutable and shared by all sessions.
+ */
+public class ScreenScript {
+
+    public static final String HOME = "home";
+
+    private static final String SUFFIX = ".xml";
+
+    private final Map<String, String> sources;
+
+    private ScreenScript(Map<String, String> sources) {
+        if (!sources.containsKey(HOME)) {
+            throw new IllegalArgumentException("A script needs a " + HOME + SUFFIX + " screen, found " + sources.keySet());
+        }
+        this.sources = Collections.unmodifiableMap(sources);
+    }
+
+    /** A script with one screen **/
+    public static ScreenScript of(String pageSource) {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put(HOME, pageSource);
+        return new ScreenScript(sources);
+    }
+
+    /** Load a directory of page source files, or a single page source file **/
+    public static ScreenScript load(File path) throws IOException {
+        if (!path.isDirectory()) {
+            return of(read(path));
+        }
+
+        Map<String, String> sources = new HashMap<String, String>();
+        File[] files = path.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SUFFIX)) {
+                    sources.put(name.substring(0, name.length() - SUFFIX.length()), read(file));
+                }
+            }
+        }
+        return new ScreenScript(sources);
+    }
+
+    /** The page source of a screen **/
+    public String source(String screen) {
+        String source = sources.get(screen);
+        if (source == null) {
+            throw new IllegalArgumentException("No screen " + screen);
+        }
+        return source;
+    }
+
+    /** The screen clicking an element with this name opens, or null if it stays on the screen **/
+    public String target(String elementName) {
+        if (elementName == null) return null;
+        String screen = elementName.split(",")[0].trim();
+        return !screen.equals(HOME) && sources.containsKey(screen) ? screen : null;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    }
+}
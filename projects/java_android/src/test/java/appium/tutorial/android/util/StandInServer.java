@@ -0,0 +1,328 @@
+package appium.tutorial.android.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stand-in for the Appium server which speaks enough of the JSON wire protocol for the
+ * tutorial tests: sessions, finds, attributes, text, visibility, clicks, back, scrolling,
+ * page source, screenshots and app reset. Every session walks its own copy of a {@link ScreenScript}
+ * through a {@link ScriptedExecutor}, with the configured latency and jitter per command.
+ * Large replies are gzipped for clients which accept it.
+ *
+ * It needs no simulator, so the client side can be load tested with hundreds of sessions:
+ *
+ *   java appium.tutorial.android.util.StandInServer src/test/resources/standin 4723
+ *
+ * or started inside the test JVM with -Dstandin=src/test/resources/standin, see {@link AppiumTest}.
+ * Latency and jitter are set with -Dstandin.latencyMillis and -Dstandin.jitterMillis.
+ */
+public class StandInServer {
+
+    private static final String PATH = "/wd/hub";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Replies at least this large are gzipped for clients which accept it **/
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    /** Method, path and the command it is; ":name" path segments become parameters **/
+    private static final String[][] ROUTES = {
+            {"POST", "/session", DriverCommand.NEW_SESSION},
+            {"GET", "/session/:sessionId", DriverCommand.GET_CAPABILITIES},
+            {"DELETE", "/session/:sessionId", DriverCommand.QUIT},
+            {"POST", "/session/:sessionId/element", DriverCommand.FIND_ELEMENT},
+            {"POST", "/session/:sessionId/elements", DriverCommand.FIND_ELEMENTS},
+            {"POST", "/session/:sessionId/element/:id/element", DriverCommand.FIND_CHILD_ELEMENT},
+            {"POST", "/session/:sessionId/element/:id/elements", DriverCommand.FIND_CHILD_ELEMENTS},
+            {"GET", "/session/:sessionId/element/:id/attribute/:name", DriverCommand.GET_ELEMENT_ATTRIBUTE},
+            {"GET", "/session/:sessionId/element/:id/text", DriverCommand.GET_ELEMENT_TEXT},
+            {"GET", "/session/:sessionId/element/:id/displayed", DriverCommand.IS_ELEMENT_DISPLAYED},
+            {"GET", "/session/:sessionId/element/:id/name", DriverCommand.GET_ELEMENT_TAG_NAME},
+            {"POST", "/session/:sessionId/element/:id/click", DriverCommand.CLICK_ELEMENT},
+            {"POST", "/session/:sessionId/back", DriverCommand.GO_BACK},
+            {"GET", "/session/:sessionId/source", DriverCommand.GET_PAGE_SOURCE},
+            {"GET", "/session/:sessionId/screenshot", DriverCommand.SCREENSHOT},
+            {"POST", "/session/:sessionId/execute", DriverCommand.EXECUTE_SCRIPT},
+            {"POST", "/session/:sessionId/timeouts", DriverCommand.SET_TIMEOUT},
+            {"POST", "/session/:sessionId/timeouts/implicit_wait", DriverCommand.IMPLICITLY_WAIT},
+            {"GET", "/session/:sessionId/context", DriverCommand.GET_CURRENT_CONTEXT_HANDLE},
+            {"POST", "/session/:sessionId/touch/perform", "performTouchAction"},
+            {"POST", "/session/:sessionId/appium/app/reset", "reset"},
+    };
+
+    static {
+        // Headers and body are written separately; without this every reply waits for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        // Beyond 200 idle keep-alive connections the server closes them, which hundreds of
+        // concurrent sessions see as connection resets
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "4096");
+        }
+    }
+
+    private static StandInServer shared;
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private final ScreenScript script;
+    private final long latencyMillis;
+    private final long jitterMillis;
+
+    private final HttpServer http;
+    private final ExecutorService threads;
+    private final ConcurrentMap<String, ScriptedExecutor> sessions = new ConcurrentHashMap<String, ScriptedExecutor>();
+    private final AtomicLong sessionsCreated = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * Start serving the script.
+     * @param port The port to listen on, 0 for any free port
+     */
+    public StandInServer(ScreenScript script, int port, long latencyMillis, long jitterMillis) throws IOException {
+        this.script = script;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+
+        // the latency is slept on the thread of the request, so with -Dthreads=virtual that is a virtual one
+        ThreadFactory virtual = VirtualThreads.requested() ? VirtualThreads.factory("standin-") : null;
+        threads = Executors.newCachedThreadPool(virtual != null ? virtual : new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "standin-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        http = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        http.setExecutor(threads);
+        http.createContext(PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        http.start();
+    }
+
+    /**
+     * The server started in this JVM with -Dstandin=<page source file or directory>, shared by
+     * all tests. Started on first use on a free port.
+     */
+    public static synchronized StandInServer shared() {
+        if (shared == null) {
+            String screens = System.getProperty("standin");
+            if (screens == null) {
+                throw new IllegalStateException("Start the tests with -Dstandin=<page source file or directory>");
+            }
+            try {
+                shared = new StandInServer(ScreenScript.load(new File(screens)), 0,
+                        Long.getLong("standin.latencyMillis", 0), Long.getLong("standin.jitterMillis", 0));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to start the stand-in server for " + screens, e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread("standin-stop") {
+                public void run() {
+                    shared.stop();
+                }
+            });
+            Stats.register(new Stats.Summary() {
+                public String summary() {
+                    return shared.summary();
+                }
+            });
+        }
+        return shared;
+    }
+
+    /** The address to give the driver **/
+    public URL url() {
+        try {
+            return new URL("http://127.0.0.1:" + http.getAddress().getPort() + PATH);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void stop() {
+        http.stop(0);
+        threads.shutdownNow();
+    }
+
+    /** Sessions and commands served so far **/
+    public String summary() {
+        return "Stand-in server: " + sessionsCreated.get() + " sessions, " + sessions.size() + " still open, "
+                + commands.get() + " commands";
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath().substring(PATH.length());
+            if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            String command = route(exchange.getRequestMethod(), path, parameters);
+            if (command == null) {
+                reply(exchange, 404, null, ErrorCodes.UNKNOWN_COMMAND,
+                        error("Unknown command " + exchange.getRequestMethod() + " " + path));
+                return;
+            }
+            parameters.putAll(body(exchange));
+            commands.incrementAndGet();
+
+            if (DriverCommand.NEW_SESSION.equals(command)) {
+                String sessionId = UUID.randomUUID().toString();
+                ScriptedExecutor session = new ScriptedExecutor(script, latencyMillis, jitterMillis, TimeUnit.MILLISECONDS);
+                // starting a session takes a command's latency too
+                session.execute(new Command(new SessionId(sessionId), command, parameters));
+                sessions.put(sessionId, session);
+                sessionsCreated.incrementAndGet();
+                reply(exchange, 200, sessionId, ErrorCodes.SUCCESS, parameters.get("desiredCapabilities"));
+                return;
+            }
+
+            String sessionId = (String) parameters.remove("sessionId");
+            ScriptedExecutor session = sessions.get(sessionId);
+            if (session == null) {
+                reply(exchange, 404, sessionId, ErrorCodes.NO_SUCH_SESSION, error("No session " + sessionId));
+                return;
+            }
+
+            Response response = session.execute(new Command(new SessionId(sessionId), command, parameters));
+            if (DriverCommand.QUIT.equals(command)) {
+                sessions.remove(sessionId);
+            }
+            reply(exchange, response.getStatus() == ErrorCodes.SUCCESS ? 200 : 500, sessionId, response.getStatus(),
+                    response.getValue());
+        } catch (RuntimeException e) {
+            reply(exchange, 500, null, ErrorCodes.UNHANDLED_ERROR, error(String.valueOf(e)));
+        }
+    }
+
+    /** Return the command for a request, adding the path parameters, or null if there is none **/
+    private static String route(String method, String path, Map<String, Object> parameters) {
+        String[] segments = path.split("/");
+        for (String[] route : ROUTES) {
+            if (!route[0].equals(method)) continue;
+
+            String[] pattern = route[1].split("/");
+            if (pattern.length != segments.length) continue;
+
+            Map<String, Object> found = new HashMap<String, Object>();
+            boolean matches = true;
+            for (int i = 0; i < pattern.length && matches; i++) {
+                if (pattern[i].startsWith(":")) {
+                    found.put(pattern[i].substring(1), segments[i]);
+                } else {
+                    matches = pattern[i].equals(segments[i]);
+                }
+            }
+            if (matches) {
+                parameters.putAll(found);
+                return route[2];
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> body(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) > 0; ) {
+            bytes.write(buffer, 0, read);
+        }
+        String body = new String(bytes.toByteArray(), UTF8).trim();
+        if (body.length() == 0) return new HashMap<String, Object>();
+        return gson.fromJson(body, Map.class);
+    }
+
+    private void reply(HttpExchange exchange, int code, String sessionId, int status, Object value) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        json.put("sessionId", sessionId);
+        json.put("status", status);
+        json.put("value", value);
+        byte[] bytes = gson.toJson(json).getBytes(UTF8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (bytes.length >= GZIP_MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            bytes = gzip(bytes);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream(bytes.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(zipped);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return zipped.toByteArray();
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> error = new HashMap<String, Object>();
+        error.put("message", message);
+        return error;
+    }
+
+    /** Usage: StandInServer <page source file or directory> [port] **/
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StandInServer <page source file or directory> [port]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 4723;
+        final StandInServer server = new StandInServer(ScreenScript.load(new File(args[0])), port,
+                Long.getLong("standin.latencyMillis", 0), Long.getLong("standin.jitterMillis", 0));
+        Runtime.getRuntime().addShutdownHook(new Thread("standin-stop") {
+            public void run() {
+                System.out.println(server.summary());
+                server.stop();
+            }
+        });
+        System.out.println("Stand-in server listening on " + server.url());
+    }
+}
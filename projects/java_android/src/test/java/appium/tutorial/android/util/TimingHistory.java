@@ -0,0 +1,541 @@
+package appium.tutorial.android.util;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runners.ParentRunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durations and outcomes of past test runs, by test and target.
+ *
+ * The printTests watcher appends one record per finished test to test-history/runs.log, or to
+ * runs.log in the directory given with -Dhistory. The next run folds the log into tests.bin,
+ * one entry per test and target with its run and failure counts, the outcome of its last run
+ * and a moving average of its duration. Loading reads tests.bin and the log of one run, so it
+ * takes as long after ten thousand runs as after ten. Tests which haven't run for 90 days are
+ * dropped when the log is folded.
+ *
+ * The history is read once per JVM, before the first test runs, to
+ * <ul>
+ * <li>order the tests with -Dorder=failfast, the tests which failed last time first, or with
+ * -Dorder=longest, the longest tests first (the default for {@link MatrixSuite})</li>
+ * <li>run one of n shards of balanced duration with -Dshard=i/n, e.g. one per surefire
+ * invocation: mvn -Dshard=1/3 test, mvn -Dshard=2/3 test, ...</li>
+ * </ul>
+ * Shards are computed from tests.bin only, and tests.bin is never rewritten while sharding,
+ * so shards running at the same time agree on which shard runs which test. When every run is
+ * sharded, fold the log in between runs with
+ * java -cp target/test-classes:<test classpath> appium.tutorial.android.util.TimingHistory
+ */
+public class TimingHistory {
+
+    /** The order to run tests in **/
+    public enum Order {
+        /** The order of the runner **/
+        DECLARED,
+        /** Tests which failed last time first, then the more often they failed the earlier **/
+        FAILFAST,
+        /** Longest first, tests without history are expected to take the average time **/
+        LONGEST
+    }
+
+    private static final int MAGIC = 0x54484931;
+    private static final String LOG = "runs.log";
+    private static final String TESTS = "tests.bin";
+    private static final long FORGET_AFTER_MILLIS = TimeUnit.DAYS.toMillis(90);
+    // weight of the latest run in the moving average of the duration
+    private static final double SMOOTHING = 0.3;
+
+    private static final File configured = new File(System.getProperty("history", "test-history"));
+
+    private static final AtomicLong recorded = new AtomicLong();
+    private static final AtomicLong compactions = new AtomicLong();
+    // guards the files and the shared history within this JVM; a lock rather than synchronized, so a
+    // virtual thread appending a record doesn't pin its carrier while it waits for the file
+    private static final ReentrantLock files = new ReentrantLock();
+    private static TimingHistory shared;
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                TimingHistory history;
+                files.lock();
+                try {
+                    history = shared;
+                } finally {
+                    files.unlock();
+                }
+                return history != null || recorded.get() > 0 ? TimingHistory.summary(history) : null;
+            }
+        });
+    }
+
+    // as of tests.bin, shards are computed from these
+    private final Map<String, Entry> compacted;
+    // with the log applied
+    private final Map<String, Entry> entries;
+    private final int logRecords;
+    private final long loadNanos;
+    private final int shard;
+    private final int shards;
+    private Map<String, Integer> assigned;
+    private Map<String, double[]> onAllTargets;
+    private double averageMillis = -1;
+
+    private TimingHistory(Map<String, Entry> compacted, Map<String, Entry> entries, int logRecords,
+                          long loadNanos, int shard, int shards) {
+        this.compacted = compacted;
+        this.entries = entries;
+        this.logRecords = logRecords;
+        this.loadNanos = loadNanos;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /** The history as of the start of this run, loaded on first use **/
+    public static TimingHistory shared() {
+        files.lock();
+        try {
+            if (shared == null) {
+                int[] shard = parseShard(System.getProperty("shard"));
+                try {
+                    shared = load(configured, shard[0], shard[1]);
+                } catch (IOException e) {
+                    System.out.println("  unable to read the test history, running without: " + e);
+                    shared = new TimingHistory(new HashMap<String, Entry>(), new HashMap<String, Entry>(), 0, 0,
+                            shard[0], shard[1]);
+                }
+            }
+            return shared;
+        } finally {
+            files.unlock();
+        }
+    }
+
+    /** The order configured with -Dorder, or the given one **/
+    public static Order order(Order otherwise) {
+        String order = System.getProperty("order");
+        return order == null ? otherwise : Order.valueOf(order.trim().toUpperCase());
+    }
+
+    /** The history key of a test: its class, its method and the target it runs on **/
+    public static String key(Description description) {
+        String test = description.getClassName() + "." + description.getMethodName();
+        // MatrixSuite names every test after its target already
+        return test.endsWith("]") ? test : test + "[" + Target.current() + "]";
+    }
+
+    /**
+     * Order and shard the tests of a runner as configured with -Dorder and -Dshard.
+     * A runner none of whose tests are in the shard is left without tests.
+     */
+    public static void configure(ParentRunner<?> runner, Order order) {
+        TimingHistory history = shared();
+        if (order != Order.DECLARED) {
+            runner.sort(history.sorter(order));
+        }
+        if (history.shards > 1) {
+            try {
+                runner.filter(history.shardFilter());
+            } catch (NoTestsRemainException e) {
+                // nothing of this class runs in this shard
+            }
+        }
+    }
+
+    /**
+     * Append the outcome of a test run to the log. The record is written with one write
+     * under a file lock, so shards and runs at the same time don't mix their records.
+     */
+    public static void record(String key, long millis, boolean passed) throws IOException {
+        record(configured, key, millis, passed);
+    }
+
+    /** Append the outcome of a test run to the log in the directory **/
+    static void record(File directory, String key, long millis, boolean passed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeUTF(key);
+        record.writeLong(System.currentTimeMillis());
+        record.writeInt((int) Math.min(Integer.MAX_VALUE, millis));
+        record.writeBoolean(passed);
+
+        files.lock();
+        try {
+            directory.mkdirs();
+            FileOutputStream out = new FileOutputStream(new File(directory, LOG), true);
+            try {
+                FileLock lock = out.getChannel().lock();
+                try {
+                    out.write(bytes.toByteArray());
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            files.unlock();
+        }
+        recorded.incrementAndGet();
+    }
+
+    /** The expected duration of a test in milliseconds, from its own runs or else those on other targets, or -1 **/
+    public long expectedMillis(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) return Math.round(entry.averageMillis);
+
+        double[] onTargets = onAllTargets().get(withoutTarget(key));
+        return onTargets == null ? -1 : Math.round(onTargets[0] / onTargets[1]);
+    }
+
+    /** The expected duration of a test, or the average one if the test never ran **/
+    private double estimateMillis(String key) {
+        long expected = expectedMillis(key);
+        if (expected >= 0) return expected;
+        if (averageMillis < 0) {
+            double total = 0;
+            for (Entry entry : entries.values()) {
+                total += entry.averageMillis;
+            }
+            averageMillis = entries.isEmpty() ? 0 : total / entries.size();
+        }
+        return averageMillis;
+    }
+
+    /** Summed average durations and target counts by test, built once **/
+    private synchronized Map<String, double[]> onAllTargets() {
+        if (onAllTargets == null) {
+            onAllTargets = new HashMap<String, double[]>();
+            for (Map.Entry<String, Entry> test : entries.entrySet()) {
+                String name = withoutTarget(test.getKey());
+                double[] sum = onAllTargets.get(name);
+                if (sum == null) {
+                    sum = new double[2];
+                    onAllTargets.put(name, sum);
+                }
+                sum[0] += test.getValue().averageMillis;
+                sum[1]++;
+            }
+        }
+        return onAllTargets;
+    }
+
+    private static String withoutTarget(String key) {
+        int bracket = key.lastIndexOf('[');
+        return bracket < 0 ? key : key.substring(0, bracket);
+    }
+
+    /** True if the last recorded run of the test failed **/
+    public boolean failedLast(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && !entry.lastPassed;
+    }
+
+    /** Order descriptions of tests; sorts are stable, so equal tests keep the order of the runner **/
+    public Sorter sorter(final Order order) {
+        return new Sorter(new Comparator<Description>() {
+            public int compare(Description a, Description b) {
+                return TimingHistory.this.compare(order, key(a), key(b));
+            }
+        });
+    }
+
+    private int compare(Order order, String a, String b) {
+        if (order == Order.LONGEST) {
+            return Double.compare(estimateMillis(b), estimateMillis(a));
+        }
+        if (order == Order.FAILFAST) {
+            boolean failedA = failedLast(a);
+            boolean failedB = failedLast(b);
+            if (failedA != failedB) return failedA ? -1 : 1;
+            return Double.compare(failureRate(b), failureRate(a));
+        }
+        return 0;
+    }
+
+    private double failureRate(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.runs == 0 ? 0 : (double) entry.failures / entry.runs;
+    }
+
+    /** Runs the tests of the configured shard, and the suites holding them **/
+    public Filter shardFilter() {
+        return new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                if (description.isTest()) {
+                    return shardOf(key(description)) == shard;
+                }
+                for (Description child : description.getChildren()) {
+                    if (shouldRun(child)) return true;
+                }
+                return false;
+            }
+
+            @Override
+            public String describe() {
+                return "shard " + (shard + 1) + "/" + shards;
+            }
+        };
+    }
+
+    /**
+     * The shard of a test, counted from 0. Tests with history are spread longest first, each
+     * onto the shard with the least expected time so far; new tests are spread by name.
+     */
+    synchronized int shardOf(String key) {
+        if (assigned == null) {
+            List<Map.Entry<String, Entry>> known = new ArrayList<Map.Entry<String, Entry>>(compacted.entrySet());
+            Collections.sort(known, new Comparator<Map.Entry<String, Entry>>() {
+                public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                    int longer = Double.compare(b.getValue().averageMillis, a.getValue().averageMillis);
+                    return longer != 0 ? longer : a.getKey().compareTo(b.getKey());
+                }
+            });
+
+            assigned = new HashMap<String, Integer>();
+            double[] load = new double[shards];
+            for (Map.Entry<String, Entry> test : known) {
+                int least = 0;
+                for (int i = 1; i < shards; i++) {
+                    if (load[i] < load[least]) least = i;
+                }
+                load[least] += test.getValue().averageMillis;
+                assigned.put(test.getKey(), least);
+            }
+        }
+        Integer assignedShard = assigned.get(key);
+        return assignedShard != null ? assignedShard : (key.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /** Read tests.bin and the log, folding the log into tests.bin unless this is a shard **/
+    static TimingHistory load(File directory, int shard, int shards) throws IOException {
+        long start = System.nanoTime();
+        files.lock();
+        try {
+            directory.mkdirs();
+            RandomAccessFile file = new RandomAccessFile(new File(directory, LOG), "rw");
+            try {
+                FileChannel channel = file.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    Map<String, Entry> compacted = readTests(directory);
+                    Map<String, Entry> entries = copy(compacted);
+                    int records = readLog(channel, entries);
+
+                    if (records > 0 && shards <= 1) {
+                        forgetOld(entries);
+                        writeTests(directory, entries);
+                        channel.truncate(0);
+                        compactions.incrementAndGet();
+                        compacted = copy(entries);
+                    }
+                    return new TimingHistory(compacted, entries, records, System.nanoTime() - start, shard, shards);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                file.close();
+            }
+        } finally {
+            files.unlock();
+        }
+    }
+
+    private static Map<String, Entry> readTests(File directory) throws IOException {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        File tests = new File(directory, TESTS);
+        if (!tests.isFile()) return entries;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tests), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC) {
+                // written by another version, start over
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                Entry entry = new Entry();
+                entry.runs = in.readInt();
+                entry.failures = in.readInt();
+                entry.lastRun = in.readLong();
+                entry.lastPassed = in.readBoolean();
+                entry.averageMillis = in.readDouble();
+                entries.put(key, entry);
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Apply the records of the log, returning how many there were. The log is read through the
+     * locked channel, some platforms don't let other handles read a locked file.
+     */
+    private static int readLog(FileChannel channel, Map<String, Entry> entries) throws IOException {
+        channel.position(0);
+        // not closed, that would close the channel before the lock is released
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        int records = 0;
+        while (true) {
+            String key;
+            long at;
+            int millis;
+            boolean passed;
+            try {
+                key = in.readUTF();
+                at = in.readLong();
+                millis = in.readInt();
+                passed = in.readBoolean();
+            } catch (EOFException e) {
+                // the end, or a record cut short by a killed run
+                break;
+            }
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            entry.add(at, millis, passed);
+            records++;
+        }
+        return records;
+    }
+
+    /** Replace tests.bin at once, so a reader sees the old or the new file, never half of one **/
+    private static void writeTests(File directory, Map<String, Entry> entries) throws IOException {
+        File written = new File(directory, TESTS + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(written), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> test : entries.entrySet()) {
+                Entry entry = test.getValue();
+                out.writeUTF(test.getKey());
+                out.writeInt(entry.runs);
+                out.writeInt(entry.failures);
+                out.writeLong(entry.lastRun);
+                out.writeBoolean(entry.lastPassed);
+                out.writeDouble(entry.averageMillis);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(written.toPath(), new File(directory, TESTS).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Drop tests which haven't run for a long time, e.g. renamed or deleted ones **/
+    private static void forgetOld(Map<String, Entry> entries) {
+        long oldest = System.currentTimeMillis() - FORGET_AFTER_MILLIS;
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+            if (i.next().lastRun < oldest) i.remove();
+        }
+    }
+
+    private static Map<String, Entry> copy(Map<String, Entry> entries) {
+        Map<String, Entry> copy = new HashMap<String, Entry>();
+        for (Map.Entry<String, Entry> test : entries.entrySet()) {
+            copy.put(test.getKey(), test.getValue().copy());
+        }
+        return copy;
+    }
+
+    /** Parse i/n, counted from 1, into a shard counted from 0 and the shard count **/
+    private static int[] parseShard(String value) {
+        if (value == null) return new int[] {0, 1};
+        String[] parts = value.split("/");
+        try {
+            if (parts.length == 2) {
+                int shard = Integer.parseInt(parts[0].trim());
+                int shards = Integer.parseInt(parts[1].trim());
+                if (shards >= 1 && shard >= 1 && shard <= shards) {
+                    return new int[] {shard - 1, shards};
+                }
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid shard, expected <shard>/<shards> counted from 1: " + value);
+    }
+
+    /** Fold the log into tests.bin, e.g. in between sharded runs **/
+    public static void main(String[] args) throws IOException {
+        System.out.println(summary(load(configured, 0, 1)));
+    }
+
+    /** Tests known, the load time and the records written so far **/
+    public static String summary(TimingHistory history) {
+        StringBuilder line = new StringBuilder("Test history: ");
+        if (history != null) {
+            line.append(history.entries.size()).append(" tests known, loaded in ")
+                    .append(String.format("%.1f", history.loadNanos / 1e6)).append(" ms (")
+                    .append(history.logRecords).append(" log records), ");
+            if (history.shards > 1) {
+                line.append("shard ").append(history.shard + 1).append('/').append(history.shards).append(", ");
+            }
+        }
+        return line.append(recorded.get()).append(" runs recorded, ").append(compactions.get())
+                .append(" compactions").toString();
+    }
+
+    /** What is known about one test on one target **/
+    private static class Entry {
+        int runs;
+        int failures;
+        long lastRun;
+        boolean lastPassed;
+        double averageMillis;
+
+        void add(long at, int millis, boolean passed) {
+            averageMillis = runs == 0 ? millis : SMOOTHING * millis + (1 - SMOOTHING) * averageMillis;
+            runs++;
+            if (!passed) failures++;
+            if (at >= lastRun) {
+                lastRun = at;
+                lastPassed = passed;
+            }
+        }
+
+        Entry copy() {
+            Entry copy = new Entry();
+            copy.runs = runs;
+            copy.failures = failures;
+            copy.lastRun = lastRun;
+            copy.lastPassed = lastPassed;
+            copy.averageMillis = averageMillis;
+            return copy;
+        }
+    }
+}
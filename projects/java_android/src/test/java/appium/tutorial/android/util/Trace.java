@@ -0,0 +1,329 @@
+package appium.tutorial.android.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timeline of every test, in the trace event format of chrome://tracing and Perfetto.
+ *
+ * Aggregate stats don't show the order of things inside a slow test: which findElement ran in which
+ * wait, or how long a scroll took next to the click after it. With -Dtrace=true every test, its
+ * waits and their polls, and its driver commands are recorded as nested spans, and written to
+ * target/traces/<test>.json (-Dtrace.dir), one file per test, which a trace viewer opens as is.
+ * The spans are only recorded where every helper ends up: the instrumented driver's execute and
+ * WaitEngine.until, so the helpers themselves aren't traced.
+ *
+ * A span costs two System.nanoTime() calls and one small object. Test threads put the finished spans
+ * into a ring buffer of -Dtrace.bufferEvents (65536) slots without taking a lock, and one background
+ * thread writes them out, so the test threads never wait for a file. When the writer falls behind and
+ * the ring is full spans are dropped rather than slowing down the test. The time spent recording,
+ * as a share of the test time, is printed when the run ends with -Dstats=true.
+ *
+ * Spans are recorded as
+ *
+ *     long span = Trace.begin();
+ *     try {
+ *         ...
+ *     } finally {
+ *         Trace.end("command", driverCommand, parameters, span);
+ *     }
+ *
+ * and cost nothing but a check of a constant when tracing is off.
+ */
+public class Trace {
+
+    private static final boolean enabled = Boolean.getBoolean("trace");
+    private static final File directory = new File(System.getProperty("trace.dir", "target/traces"));
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // timestamps are microseconds since the class was loaded
+    private static final long epoch = System.nanoTime();
+
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(1024, Integer.getInteger("trace.bufferEvents", 65536)));
+    private static final int MASK = CAPACITY - 1;
+    private static final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<Event>(CAPACITY);
+    // the next slot to claim, by any test thread
+    private static final AtomicLong head = new AtomicLong();
+    // the next slot to write out, only advanced by the writer
+    private static volatile long tail;
+
+    private static final AtomicLong events = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong traces = new AtomicLong();
+    private static final AtomicLong testNanos = new AtomicLong();
+    private static final AtomicLong overheadNanos = new AtomicLong();
+
+    private static final ThreadLocal<Test> current = new ThreadLocal<Test>();
+    private static Thread writer;
+    private static volatile boolean stopping;
+
+    /** A finished span, or the end of a test's trace when name is null **/
+    private static class Event {
+        final Test test;
+        final String category;
+        final String name;
+        final Object detail;
+        final long beginNanos;
+        final long endNanos;
+        final long thread;
+
+        Event(Test test, String category, String name, Object detail, long beginNanos, long endNanos) {
+            this.test = test;
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.beginNanos = beginNanos;
+            this.endNanos = endNanos;
+            this.thread = Thread.currentThread().getId();
+        }
+    }
+
+    /** The trace of one test, only touched by its thread **/
+    private static class Test {
+        final String key;
+        final long start = System.nanoTime();
+        long overhead;
+
+        Test(String key) {
+            this.key = key;
+        }
+    }
+
+    /** True with -Dtrace=true **/
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    /** Trace the test running on the current thread **/
+    public static void start(String test) {
+        if (!enabled) return;
+        startWriter();
+        current.set(new Test(test));
+    }
+
+    /** End the trace of the current thread's test, and have its file finished **/
+    public static void finish() {
+        Test test = current.get();
+        if (test == null) return;
+        current.remove();
+
+        testNanos.addAndGet(System.nanoTime() - test.start);
+        overheadNanos.addAndGet(test.overhead);
+        traces.incrementAndGet();
+        // the end of a trace can't be dropped, or its file would stay open
+        Event end = new Event(test, null, null, null, 0, 0);
+        while (!offer(end)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /** The start of a span, or 0 when the current thread isn't tracing a test **/
+    public static long begin() {
+        if (!enabled || current.get() == null) return 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * End a span started with {@link #begin()}
+     * @param category What kind of span, e.g. "wait" or "command"
+     * @param detail Shown with the span, e.g. the command parameters; converted to a string when written
+     */
+    public static void end(String category, String name, Object detail, long begin) {
+        if (begin == 0) return;
+        long end = System.nanoTime();
+        Test test = current.get();
+        if (test == null) return;
+
+        if (offer(new Event(test, category, name, detail, begin, end))) {
+            events.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        test.overhead += System.nanoTime() - end;
+    }
+
+    /** Claim the next slot of the ring and publish the event in it, or return false if the ring is full **/
+    private static boolean offer(Event event) {
+        while (true) {
+            long claim = head.get();
+            if (claim - tail >= CAPACITY) return false;
+            if (head.compareAndSet(claim, claim + 1)) {
+                ring.lazySet((int) (claim & MASK), event);
+                return true;
+            }
+        }
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) return;
+        writer = new Thread("trace-writer") {
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread("trace-writer-stop") {
+            public void run() {
+                stopping = true;
+                LockSupport.unpark(writer);
+                try {
+                    writer.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return Trace.summary();
+            }
+        });
+    }
+
+    /** Take the events off the ring in the order they were claimed, and append them to their test's file **/
+    private static void write() {
+        Map<Test, TraceFile> files = new HashMap<Test, TraceFile>();
+        while (true) {
+            boolean stop = stopping;
+            int written = 0;
+            while (true) {
+                int slot = (int) (tail & MASK);
+                Event event = ring.get(slot);
+                // not claimed yet, or claimed and not published yet
+                if (event == null) break;
+                ring.lazySet(slot, null);
+                tail = tail + 1;
+                written++;
+
+                TraceFile file = files.get(event.test);
+                if (file == null) {
+                    file = new TraceFile(event.test.key);
+                    files.put(event.test, file);
+                }
+                if (event.name == null) {
+                    files.remove(event.test);
+                    file.close();
+                } else {
+                    file.append(event);
+                }
+            }
+            if (stop) break;
+            if (written == 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        // tests still running when the JVM exits
+        for (TraceFile file : files.values()) {
+            file.close();
+        }
+    }
+
+    /** A test's trace, as a JSON array of events **/
+    private static class TraceFile {
+
+        private final File file;
+        private final Set<Long> threads = new HashSet<Long>();
+        private Writer out;
+        private boolean first = true;
+
+        TraceFile(String test) {
+            file = new File(directory, test.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_|_$", "") + ".json");
+            try {
+                directory.mkdirs();
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 64 * 1024);
+                out.write("[");
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        void append(Event event) {
+            if (out == null) return;
+            try {
+                if (threads.add(event.thread)) {
+                    next();
+                    out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + event.thread
+                            + ",\"args\":{\"name\":" + quote(event.test.key) + "}}");
+                }
+                next();
+                out.write("{\"name\":");
+                out.write(quote(event.name));
+                out.write(",\"cat\":");
+                out.write(quote(event.category));
+                out.write(",\"ph\":\"X\",\"ts\":");
+                out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(event.beginNanos - epoch)));
+                out.write(",\"dur\":");
+                out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(event.endNanos - event.beginNanos)));
+                out.write(",\"pid\":1,\"tid\":");
+                out.write(Long.toString(event.thread));
+                if (event.detail != null) {
+                    out.write(",\"args\":{\"detail\":");
+                    out.write(quote(event.detail instanceof Object[]
+                            ? Arrays.toString((Object[]) event.detail) : String.valueOf(event.detail)));
+                    out.write("}");
+                }
+                out.write("}");
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        private void next() throws IOException {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+        }
+
+        void close() {
+            if (out == null) return;
+            try {
+                out.write("\n]\n");
+                out.close();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        private void failed(IOException e) {
+            System.out.println("    unable to write the trace " + file + ": " + e);
+            out = null;
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /** Traces written so far, and what recording the spans cost the tests **/
+    public static String summary() {
+        long nanos = testNanos.get();
+        return String.format("Traces: %d tests traced to %s, %d spans (%d dropped), %d ms recording spans, "
+                + "%.2f%% of the test time",
+                traces.get(), directory, events.get(), dropped.get(),
+                TimeUnit.NANOSECONDS.toMillis(overheadNanos.get()),
+                nanos == 0 ? 0.0 : overheadNanos.get() * 100.0 / nanos);
+    }
+}
@@ -0,0 +1,163 @@
+package appium.tutorial.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TrafficLogTest {
+
+    private static final SessionId SESSION = new SessionId("session-1");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void varintsRoundTrip() throws IOException {
+        long[] values = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+        int[] sizes = {1, 1, 1, 2, 2, 2, 3, 5, 9, 10};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < values.length; i++) {
+            int before = out.size();
+            TrafficLog.writeVarint(out, values[i]);
+            assertEquals("size of " + values[i], sizes[i], out.size() - before);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, TrafficLog.readVarint(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void responsesRoundTrip() throws IOException {
+        File log = new File(folder.getRoot(), "session.bin");
+        // the same page source twice, and the command names and session again and again, come from the string table
+        String source = page("Accessibility", "Animation");
+        Map<String, Object> element = new HashMap<String, Object>();
+        element.put("ELEMENT", "1");
+
+        TrafficLog.Recorder recorder = new TrafficLog.Recorder(log).delegateTo(new Answers()
+                .answer(DriverCommand.NEW_SESSION, null)
+                .answer(DriverCommand.GET_PAGE_SOURCE, source)
+                .answer(DriverCommand.FIND_ELEMENT, element)
+                .answer(DriverCommand.IS_ELEMENT_DISPLAYED, Boolean.TRUE)
+                .answer(DriverCommand.CLICK_ELEMENT, null)
+                .answer(DriverCommand.QUIT, null));
+        recorder.execute(command(DriverCommand.NEW_SESSION, "desiredCapabilities", "recorded"));
+        recorder.execute(command(DriverCommand.GET_PAGE_SOURCE));
+        recorder.execute(command(DriverCommand.FIND_ELEMENT, "using", "id", "value", "android:id/text1"));
+        recorder.execute(command(DriverCommand.IS_ELEMENT_DISPLAYED, "id", "1"));
+        recorder.execute(command(DriverCommand.CLICK_ELEMENT, "id", "1"));
+        recorder.execute(command(DriverCommand.GET_PAGE_SOURCE));
+        // closes the log
+        recorder.execute(command(DriverCommand.QUIT));
+
+        TrafficLog.Replayer replayer = new TrafficLog.Replayer(log);
+        // a new session is matched by its name, the capabilities name the run
+        Response session = replayer.execute(command(DriverCommand.NEW_SESSION, "desiredCapabilities", "replayed"));
+        assertEquals(SESSION.toString(), session.getSessionId());
+        assertNull(session.getValue());
+        assertEquals(source, replayer.execute(command(DriverCommand.GET_PAGE_SOURCE)).getValue());
+        assertEquals(element, replayer.execute(command(DriverCommand.FIND_ELEMENT, "using", "id", "value", "android:id/text1")).getValue());
+        assertEquals(Boolean.TRUE, replayer.execute(command(DriverCommand.IS_ELEMENT_DISPLAYED, "id", "1")).getValue());
+        assertNull(replayer.execute(command(DriverCommand.CLICK_ELEMENT, "id", "1")).getValue());
+        assertEquals(source, replayer.execute(command(DriverCommand.GET_PAGE_SOURCE)).getValue());
+        // asked again after its place, the latest response answers
+        assertEquals(Boolean.TRUE, replayer.execute(command(DriverCommand.IS_ELEMENT_DISPLAYED, "id", "1")).getValue());
+        assertEquals(0, replayer.execute(command(DriverCommand.QUIT)).getStatus());
+    }
+
+    @Test
+    public void statusAndSessionRoundTrip() throws IOException {
+        File log = new File(folder.getRoot(), "session.bin");
+        Answers answers = new Answers().answer(DriverCommand.FIND_ELEMENT, "An element could not be located");
+        answers.status = 7;
+        answers.session = null;
+        TrafficLog.Recorder recorder = new TrafficLog.Recorder(log).delegateTo(answers);
+        recorder.execute(command(DriverCommand.FIND_ELEMENT, "using", "name", "value", "Missing"));
+        recorder.close();
+
+        Response response = new TrafficLog.Replayer(log).execute(command(DriverCommand.FIND_ELEMENT, "using", "name", "value", "Missing"));
+        assertEquals(7, response.getStatus());
+        assertNull(response.getSessionId());
+        assertEquals("An element could not be located", response.getValue());
+    }
+
+    @Test
+    public void unrecordedCommandFails() throws IOException {
+        File log = new File(folder.getRoot(), "session.bin");
+        TrafficLog.Recorder recorder = new TrafficLog.Recorder(log)
+                .delegateTo(new Answers().answer(DriverCommand.FIND_ELEMENT, null));
+        recorder.execute(command(DriverCommand.FIND_ELEMENT, "using", "id", "value", "recorded"));
+        recorder.close();
+
+        try {
+            new TrafficLog.Replayer(log).execute(command(DriverCommand.FIND_ELEMENT, "using", "id", "value", "other"));
+            fail("replayed a command which wasn't recorded");
+        } catch (WebDriverException expected) {
+            // names the command
+        }
+    }
+
+    private static Command command(String name, String... parameters) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            map.put(parameters[i], parameters[i + 1]);
+        }
+        return new Command(SESSION, name, map);
+    }
+
+    private static String page(String... rows) {
+        StringBuilder page = new StringBuilder("<hierarchy rotation=\"0\">");
+        for (String row : rows) {
+            page.append("<android.widget.TextView text=\"").append(row).append("\" bounds=\"[0,0][768,96]\"/>");
+        }
+        return page.append("</hierarchy>").toString();
+    }
+
+    /** Answers every command with the value given for its name **/
+    private static class Answers implements CommandExecutor {
+
+        private final Map<String, Object> values = new HashMap<String, Object>();
+        int status;
+        String session = SESSION.toString();
+
+        Answers answer(String name, Object value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Response execute(Command command) {
+            if (!values.containsKey(command.getName())) {
+                throw new WebDriverException("Unexpected command " + command.getName());
+            }
+            Response response = new Response();
+            response.setSessionId(session);
+            response.setStatus(status);
+            response.setValue(values.get(command.getName()));
+            return response;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package appium.tutorial.android.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads, where the JVM has them.
+ *
+ * A test spends almost all of its time waiting for the Appium server, so with -Dthreads=virtual
+ * every test runs on a virtual thread of its own instead of on a platform thread of a pool, and
+ * the stand-in server answers on virtual threads too. Hundreds of sessions then cost hundreds of
+ * small heap objects rather than hundreds of thread stacks.
+ *
+ * The tests compile for an old Java, so Thread.ofVirtual() of Java 21 is looked up reflectively.
+ * On an older JVM the factory is null and callers fall back to platform threads.
+ */
+abstract class VirtualThreads {
+
+    private static final boolean requested = "virtual".equals(System.getProperty("threads"));
+
+    /** True with -Dthreads=virtual **/
+    static boolean requested() {
+        return requested;
+    }
+
+    /** A factory of virtual threads named prefix0, prefix1, ..., or null if the JVM has none **/
+    static ThreadFactory factory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // a preview feature before Java 21
+            return null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package appium.tutorial.android.util;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns all waiting for a session.
+ *
+ * The driver's implicit wait is set to zero, so a find inside an explicit wait returns at once
+ * instead of blocking for the implicit timeout on every poll. Finds that should wait for the
+ * element to appear go through {@link #find(By)} instead, which polls the same way.
+ *
+ * Polling starts fast, since most conditions are met within a few hundred milliseconds, and
+ * backs off so a slow screen isn't hammered with requests. Every wait is recorded in
+ * {@link WaitStats}, and with its polls in the test's {@link Trace}.
+ */
+public class WaitEngine {
+
+    static final long FIRST_POLL_MILLIS = 50;
+    static final long MAX_POLL_MILLIS = 500;
+    static final double BACKOFF = 1.5;
+
+    private final WebDriver driver;
+    private final long timeoutMillis;
+
+    /** Create the engine for a driver and turn off the driver's implicit wait **/
+    public WaitEngine(WebDriver driver, long timeout, TimeUnit unit) {
+        this(driver, unit.toMillis(timeout));
+        driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+    }
+
+    private WaitEngine(WebDriver driver, long timeoutMillis) {
+        this.driver = driver;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /** The same engine with a different timeout **/
+    public WaitEngine withTimeout(long timeout, TimeUnit unit) {
+        return new WaitEngine(driver, unit.toMillis(timeout));
+    }
+
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /** Wait until the condition returns neither null nor false **/
+    public <T> T until(ExpectedCondition<T> condition) {
+        return until(condition.toString(), condition);
+    }
+
+    /**
+     * Wait until the condition returns neither null nor false. Not found and stale element
+     * errors count as not met yet.
+     * @param name The name the wait time is recorded under
+     */
+    public <T> T until(String name, ExpectedCondition<T> condition) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        CommandStats.enterWait();
+        long span = Trace.begin();
+        try {
+            return poll(name, condition, start, deadline);
+        } finally {
+            Trace.end("wait", name, null, span);
+            CommandStats.exitWait();
+        }
+    }
+
+    private <T> T poll(String name, ExpectedCondition<T> condition, long start, long deadline) {
+        long pollMillis = FIRST_POLL_MILLIS;
+        int polls = 0;
+        RuntimeException lastError = null;
+
+        while (true) {
+            polls++;
+            long span = Trace.begin();
+            try {
+                T value = condition.apply(driver);
+                if (value != null && !Boolean.FALSE.equals(value)) {
+                    WaitStats.record(name, millisSince(start), polls, false);
+                    return value;
+                }
+            } catch (NotFoundException e) {
+                lastError = e;
+            } catch (StaleElementReferenceException e) {
+                lastError = e;
+            } finally {
+                Trace.end("poll", "poll", polls, span);
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                WaitStats.record(name, millisSince(start), polls, true);
+                throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for " + name, lastError);
+            }
+
+            sleep(Math.min(pollMillis, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+            pollMillis = Math.min(MAX_POLL_MILLIS, (long) (pollMillis * BACKOFF));
+        }
+    }
+
+    /**
+     * Wait for several locators at once, with one page source per poll. A timeout tells which
+     * locators were met at the last poll.
+     */
+    public Conditions.Result until(Conditions conditions) {
+        try {
+            return until(conditions.toString(), conditions);
+        } catch (TimeoutException e) {
+            e.addInfo("conditions", conditions.result().toString());
+            throw e;
+        }
+    }
+
+    /** Wait for an element to be present, as an implicit wait would **/
+    public WebElement find(final By locator) {
+        try {
+            return until("find " + locator, new ExpectedCondition<WebElement>() {
+                public WebElement apply(WebDriver webDriver) {
+                    return webDriver.findElement(locator);
+                }
+            });
+        } catch (TimeoutException e) {
+            throw new NoSuchElementException("Unable to locate " + locator, e);
+        }
+    }
+
+    /** Wait for at least one element to be present and return all of them, or an empty list on timeout **/
+    public List<WebElement> findAll(final By locator) {
+        try {
+            return until("find all " + locator, new ExpectedCondition<List<WebElement>>() {
+                public List<WebElement> apply(WebDriver webDriver) {
+                    List<WebElement> elements = webDriver.findElements(locator);
+                    return elements.isEmpty() ? null : elements;
+                }
+            });
+        } catch (TimeoutException e) {
+            // same as an implicit wait: no elements
+            return new ArrayList<WebElement>();
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package appium.tutorial.ios.benchmark;
+
+import appium.tutorial.ios.util.InstrumentedDriver;
+import appium.tutorial.ios.util.ScreenScript;
+import appium.tutorial.ios.util.ScriptedExecutor;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InstrumentedDriver whose commands are answered in process by a {@link ScriptedExecutor}.
+ *
+ * Everything above the command executor (element conversion, error handling, the screen
+ * generation and command stats) runs as it does against a server.
+ */
+public class FakeDriver extends InstrumentedDriver {
+
+    private static final URL NOWHERE = url("http://127.0.0.1:1/wd/hub");
+
+    public FakeDriver(ScreenScript script, long latency, TimeUnit unit) {
+        super(NOWHERE, new DesiredCapabilities());
+        setCommandExecutor(new ScriptedExecutor(script, latency, unit));
+    }
+
+    // Called by the super constructor, there is no server to start a session on.
+    @Override
+    protected void startSession(Capabilities desiredCapabilities, Capabilities requiredCapabilities) {
+        setSessionId("fake");
+    }
+
+    private static URL url(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Page source of a table with the given number of cells, like the UICatalog home screen **/
+    public static String table(int cells) {
+        StringBuilder source = new StringBuilder("<AppiumAUT><UIAApplication name=\"UICatalog\" visible=\"true\">")
+                .append("<UIAWindow visible=\"true\"><UIANavigationBar name=\"UICatalog\" visible=\"true\"/>")
+                .append("<UIATableView visible=\"true\">");
+        for (int i = 0; i < cells; i++) {
+            String name = "Cell " + i + ", Description " + i;
+            source.append("<UIATableCell name=\"").append(name).append("\" visible=\"").append(i < 12)
+                    .append("\"><UIAStaticText name=\"Cell ").append(i).append("\" label=\"Cell ").append(i)
+                    .append("\" visible=\"").append(i < 12).append("\"/></UIATableCell>");
+        }
+        return source.append("</UIATableView></UIAWindow></UIAApplication></AppiumAUT>").toString();
+    }
+}
@@ -0,0 +1,113 @@
+package appium.tutorial.ios.benchmark;
+
+import appium.tutorial.ios.util.Helpers;
+import appium.tutorial.ios.util.ScreenScript;
+import io.appium.java_client.MobileBy;
+import io.appium.java_client.MobileElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers running against a {@link FakeDriver}: wrapping found elements, evaluating wait
+ * conditions and reading a list of cells as AutomatingASimpleActionTest.four() does.
+ *
+ * With latencyMicros=0 the numbers are the client side cost alone. A latency shows how much
+ * of a helper call is spent waiting on commands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelpersBenchmark {
+
+    private static final String FIRST_CELL = "Cell 0";
+    private static final By FIRST_CELL_ID = MobileBy.AccessibilityId("Cell 0, Description 0");
+
+    @Param({"0", "200"})
+    public long latencyMicros;
+
+    @Param({"20", "200"})
+    public int cells;
+
+    @Setup
+    public void setUp() {
+        Helpers.init(new FakeDriver(ScreenScript.of(FakeDriver.table(cells)), latencyMicros, TimeUnit.MICROSECONDS));
+    }
+
+    @TearDown
+    public void tearDown() {
+        Helpers.driver().quit();
+        Helpers.release();
+    }
+
+    /** Find all cells and wrap each in a MobileElement **/
+    @Benchmark
+    public List<MobileElement> wrapElements() {
+        return Helpers.elements(Helpers.for_tags("UIATableCell"));
+    }
+
+    /** Wait for a visible element, which is found on the first poll **/
+    @Benchmark
+    public MobileElement waitVisible() {
+        return Helpers.wait(Helpers.for_text_exact(FIRST_CELL));
+    }
+
+    /** The wait engine around a condition that holds at once, without any command **/
+    @Benchmark
+    public Boolean waitOverhead() {
+        return Helpers.waitEngine().until(new ExpectedCondition<Boolean>() {
+            public Boolean apply(WebDriver webDriver) {
+                return Boolean.TRUE;
+            }
+        });
+    }
+
+    /** Cell names as four() reads them now, in one exchange **/
+    @Benchmark
+    public List<String> cellNamesBulk() {
+        return Helpers.attributes(Helpers.for_tags("UIATableCell"), "name");
+    }
+
+    /** Cell names as four() used to read them, one getAttribute per cell **/
+    @Benchmark
+    public List<String> cellNamesPerElement() {
+        List<String> names = new ArrayList<String>();
+        for (WebElement cell : Helpers.elements(Helpers.for_tags("UIATableCell"))) {
+            names.add(cell.getAttribute("name"));
+        }
+        return names;
+    }
+
+    /** An element looked up again on the same screen, answered by the element cache **/
+    @Benchmark
+    public MobileElement elementSameScreen() {
+        return Helpers.element(FIRST_CELL_ID);
+    }
+
+    /** An element looked up after back, which may have changed the screen, so it is found again **/
+    @Benchmark
+    public MobileElement elementAfterBack() {
+        Helpers.back();
+        return Helpers.element(FIRST_CELL_ID);
+    }
+}
@@ -0,0 +1,65 @@
+package appium.tutorial.ios.benchmark;
+
+import appium.tutorial.ios.util.Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the locators tests ask for, which happens on every helper call.
+ * No driver is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocatorBenchmark {
+
+    // as many distinct texts as a long test uses
+    private static final int TEXTS = 64;
+
+    private final String[] texts = new String[TEXTS];
+    private int next;
+
+    public LocatorBenchmark() {
+        for (int i = 0; i < TEXTS; i++) {
+            texts[i] = "Cell " + i;
+        }
+    }
+
+    private String nextText() {
+        next = (next + 1) % TEXTS;
+        return texts[next];
+    }
+
+    @Benchmark
+    public By forText() {
+        return Helpers.for_text(nextText());
+    }
+
+    @Benchmark
+    public By forTextExact() {
+        return Helpers.for_text_exact(nextText());
+    }
+
+    @Benchmark
+    public By forTextIndex() {
+        return Helpers.for_text(next = (next + 1) % TEXTS);
+    }
+
+    @Benchmark
+    public By forTags() {
+        return Helpers.for_tags("UIATableCell");
+    }
+}
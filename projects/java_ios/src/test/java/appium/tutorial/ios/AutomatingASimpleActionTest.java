@@ -3,7 +3,6 @@ package appium.tutorial.ios;
 import appium.tutorial.ios.util.AppiumTest;
 import org.openqa.selenium.WebElement;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import static appium.tutorial.ios.util.Helpers.*;
@@ -13,7 +12,7 @@ public class AutomatingASimpleActionTest extends AppiumTest {
     @org.junit.Test
     public void one() throws Exception {
         text("Buttons, Various uses of UIButton").click();
-        text_exact("Buttons");
+        check(for_text_exact("Buttons"));
     }
 
     @org.junit.Test
@@ -33,15 +32,12 @@ public class AutomatingASimpleActionTest extends AppiumTest {
 
     @org.junit.Test
     public void four() throws Exception {
-        List<String> cell_names = new ArrayList<String>();
-
-        for (WebElement cell : tags("UIATableCell")) {
-            cell_names.add(cell.getAttribute("name"));
-        }
+        List<String> cell_names = attributes(for_tags("UIATableCell"), "name");
 
         for (String name : cell_names) {
             wait(for_text_exact(name)).click();
             wait(for_text_exact(name.split(",")[0]));
+            capture(name);
             back();
         }
     }
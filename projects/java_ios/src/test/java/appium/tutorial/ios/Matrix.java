@@ -0,0 +1,14 @@
+package appium.tutorial.ios;
+
+import appium.tutorial.ios.util.MatrixSuite;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * All tests on every target of the matrix, longest first across all endpoints.
+ * Run with mvn -Dtest=Matrix -Dmatrix="7.1/iPhone Simulator,7.1/iPad Simulator" test
+ */
+@RunWith(MatrixSuite.class)
+@Suite.SuiteClasses({AutomatingASimpleActionTest.class, PageObjectPatternTest.class})
+public class Matrix {
+}
@@ -1,17 +1,30 @@
 package appium.tutorial.ios;
 
 import appium.tutorial.ios.util.AppiumTest;
+import appium.tutorial.ios.util.Steps.Step;
 
 import static appium.tutorial.ios.util.Helpers.back;
+import static appium.tutorial.ios.util.Helpers.step;
 
 public class PageObjectPatternTest extends AppiumTest {
 
     @org.junit.Test
     public void pageObject() throws Exception {
-        home.buttonsClick();
-        back();
+        // the pages are opened from the home page, which a failed step is retried from
+        step("buttons", new Step<Void>() {
+            public Void run() {
+                home.buttonsClick();
+                back();
+                return null;
+            }
+        });
 
-        home.controlsClick();
-        back();
+        step("controls", new Step<Void>() {
+            public Void run() {
+                home.controlsClick();
+                back();
+                return null;
+            }
+        });
     }
 }
\ No newline at end of file
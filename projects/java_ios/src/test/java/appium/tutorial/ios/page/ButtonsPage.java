@@ -2,13 +2,13 @@ package appium.tutorial.ios.page;
 
 import io.appium.java_client.MobileBy;
 
-import static appium.tutorial.ios.util.Helpers.element;
+import static appium.tutorial.ios.util.Helpers.check;
 
 /** Page object for the buttons page **/
 public abstract class ButtonsPage {
 
     /** Verify the buttons page has loaded **/
     public static void loaded() {
-        element(MobileBy.AccessibilityId("Buttons"));
+        check(MobileBy.AccessibilityId("Buttons"));
     }
 }
\ No newline at end of file
@@ -2,13 +2,13 @@ package appium.tutorial.ios.page;
 
 import io.appium.java_client.MobileBy;
 
-import static appium.tutorial.ios.util.Helpers.element;
+import static appium.tutorial.ios.util.Helpers.check;
 
 /** Page object for the controls page **/
 public abstract class ControlsPage {
 
     /** Verify the controls page has loaded **/
     public static void loaded() {
-        element(MobileBy.AccessibilityId("Controls"));
+        check(MobileBy.AccessibilityId("Controls"));
     }
 }
\ No newline at end of file
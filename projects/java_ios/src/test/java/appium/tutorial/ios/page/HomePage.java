@@ -1,12 +1,25 @@
 package appium.tutorial.ios.page;
 
+import appium.tutorial.ios.util.Steps;
 import io.appium.java_client.MobileBy;
 
+import static appium.tutorial.ios.util.Helpers.check;
 import static appium.tutorial.ios.util.Helpers.element;
+import static appium.tutorial.ios.util.Helpers.present;
 
 /** Page object for the home page **/
 public abstract class HomePage {
 
+    /**
+     * Every page has a UICatalog back button, so the home page is told apart by a cell only it has,
+     * found by accessibility id since the probe runs every 100 ms while a step is retried
+     */
+    private static final Steps.Checkpoint HOME = new Steps.Checkpoint() {
+        public boolean reached() {
+            return present(MobileBy.AccessibilityId("Buttons, Various uses of UIButton"), 0);
+        }
+    };
+
     /** Verify the home page has loaded.
      *  Click the buttons button.
      *  Verify the buttons page has loaded. **/
@@ -25,8 +38,9 @@ public abstract class HomePage {
         ControlsPage.loaded();
     }
 
-    /** Verify the home page has loaded **/
+    /** Verify the home page has loaded, and mark it as the checkpoint failed steps are retried from **/
     public static void loaded() {
-        element(MobileBy.AccessibilityId("UICatalog"));
+        check(MobileBy.AccessibilityId("UICatalog"));
+        Steps.checkpoint("on HomePage", HOME);
     }
 }
\ No newline at end of file
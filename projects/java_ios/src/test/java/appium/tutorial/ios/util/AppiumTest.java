@@ -4,7 +4,6 @@ import appium.tutorial.ios.page.HomePage;
 import com.saucelabs.common.SauceOnDemandAuthentication;
 import com.saucelabs.common.SauceOnDemandSessionIdProvider;
 import com.saucelabs.junit.SauceOnDemandTestWatcher;
-import com.saucelabs.saucerest.SauceREST;
 import io.appium.java_client.AppiumDriver;
 import org.junit.After;
 import org.junit.Before;
@@ -12,20 +11,27 @@ import org.junit.Rule;
 import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
+import org.junit.runner.RunWith;
 import org.openqa.selenium.By;
+import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
+@RunWith(ParallelRunner.class)
 public class AppiumTest implements SauceOnDemandSessionIdProvider {
 
-    private AppiumDriver driver;
+    private LazyDriver<AppiumDriver> driver;
+
+    // the session of a test which tearDown has left to printTests, see Captures
+    private AppiumDriver unreleased;
 
     /**
      * Page object references. Allows using 'home' instead of 'HomePage' *
@@ -41,6 +47,23 @@ public class AppiumTest implements SauceOnDemandSessionIdProvider {
 
     private boolean runOnSauce = System.getProperty("sauce") != null;
 
+    /**
+     * Reuse sessions between tests with -Dpool=true. Sauce jobs always get a fresh session
+     * so pass/fail is reported per test, and so do tests whose traffic is recorded or replayed,
+     * since a log belongs to one test. *
+     */
+    private boolean reuseSessions = Boolean.getBoolean("pool") && !runOnSauce
+            && !TrafficLog.recording() && !TrafficLog.replaying();
+
+    private static final SessionPool<AppiumDriver> pool = new SessionPool<AppiumDriver>(
+            new SessionPool.Factory<AppiumDriver>() {
+                public AppiumDriver create(URL server, Capabilities capabilities) throws Exception {
+                    return new InstrumentedDriver(server, capabilities);
+                }
+            },
+            Long.getLong("pool.maxAgeSeconds", 900), TimeUnit.SECONDS,
+            Integer.getInteger("pool.maxLeases", 50));
+
     /**
      * Authenticate to Sauce with environment variables SAUCE_USER_NAME and SAUCE_API_KEY *
      */
@@ -61,20 +84,86 @@ public class AppiumTest implements SauceOnDemandSessionIdProvider {
      */
     private static final Date date = new Date();
 
+    // Retries failed steps from the last checkpoint in the same session, see Helpers.step
+    @Rule
+    public Steps steps = new Steps(new Steps.Navigation() {
+        public void back() {
+            Helpers.back();
+        }
+
+        public void resetApp() {
+            Helpers.driver().resetApp();
+        }
+    });
+
+    // Print the lines of a test at once so output of tests running in parallel doesn't interleave.
     @Rule
     public TestRule printTests = new TestWatcher() {
+        private long start;
+        private long span;
+        private Boolean passed;
+
         protected void starting(Description description) {
-            System.out.print("  test: " + description.getMethodName());
+            start = System.nanoTime();
+            CommandStats.start(description.getClassName() + "." + description.getMethodName());
+            Captures.start(TimingHistory.key(description));
+            TrafficLog.start(TimingHistory.key(description));
+            Trace.start(TimingHistory.key(description));
+            span = Trace.begin();
+        }
+
+        protected void succeeded(Description description) {
+            passed = true;
+        }
+
+        protected void failed(Throwable e, Description description) {
+            passed = false;
+            // the session is still open, see tearDown
+            if (unreleased != null) {
+                Captures.failure(unreleased);
+            }
         }
 
         protected void finished(Description description) {
             final String session = getSessionId();
+            Captures.finish();
 
+            String line = "  test: " + description.getMethodName();
             if (session != null) {
-                System.out.println(" " + "https://saucelabs.com/tests/" + session);
-            } else {
-                System.out.println();
+                line += " " + "https://saucelabs.com/tests/" + session;
+            }
+            if (unreleased != null) {
+                AppiumDriver opened = unreleased;
+                unreleased = null;
+                try {
+                    release(opened);
+                } catch (RuntimeException e) {
+                    line += "\n    unable to end the session: " + e;
+                }
+            }
+            // after the release, so the quit or reset of the session is counted with the test
+            CommandStats stats = CommandStats.finish();
+            TrafficLog.finish();
+            Trace.end("test", description.getMethodName(), passed == null ? "skipped" : passed ? "passed" : "failed", span);
+            Trace.finish();
+            // skipped tests have no outcome to record
+            if (passed != null) {
+                try {
+                    TimingHistory.record(TimingHistory.key(description),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), passed);
+                } catch (IOException e) {
+                    line += "\n    unable to record the test history: " + e;
+                }
             }
+            if (stats != null) {
+                line += "\n" + stats.summary();
+                try {
+                    stats.write();
+                } catch (IOException e) {
+                    line += "\n    unable to write command stats: " + e;
+                }
+            }
+            System.out.println(line);
         }
     };
 
@@ -83,38 +172,53 @@ public class AppiumTest implements SauceOnDemandSessionIdProvider {
      */
     @Before
     public void setUp() throws Exception {
-        DesiredCapabilities capabilities = new DesiredCapabilities();
+        // The target of the matrix the test runs on, see MatrixSuite
+        Target target = Target.current();
+        final DesiredCapabilities capabilities = new DesiredCapabilities();
         capabilities.setCapability("appium-version", "1.1.0");
-        capabilities.setCapability("platformVersion", "7.1");
+        capabilities.setCapability("platformVersion", target.platformVersion());
         capabilities.setCapability("platformName", "ios");
-        capabilities.setCapability("deviceName", "iPhone Simulator");
+        capabilities.setCapability("deviceName", target.deviceName());
 
         // Set job name on Sauce Labs
         capabilities.setCapability("name", "Java iOS tutorial " + date);
+
+        // The session starts when a helper first talks to the device, so a test which
+        // never does costs no session start and leaves nothing to quit.
+        driver = new LazyDriver<AppiumDriver>(new LazyDriver.Opener<AppiumDriver>() {
+            public AppiumDriver open() throws Exception {
+                AppiumDriver opened = openSession(capabilities);
+                sessionId = opened.getSessionId().toString();
+                return opened;
+            }
+        });
+
+        // Helpers turns the implicit wait off, its wait engine does all waiting
+        Helpers.init(driver);
+    }
+
+    private AppiumDriver openSession(DesiredCapabilities capabilities) throws Exception {
         String userDir = System.getProperty("user.dir");
         String localApp = "UICatalog6.1.app.zip";
         if (runOnSauce) {
             String user = auth.getUsername();
             String key = auth.getAccessKey();
 
-            // Upload app to Sauce Labs
-            SauceREST rest = new SauceREST(user, key);
-
-            rest.uploadFile(new File(userDir, localApp), localApp);
+            // Upload app to Sauce Labs, unless an earlier test or run already did
+            new SauceStorage(user, key).upload(new File(userDir, localApp), localApp);
 
             capabilities.setCapability("app", "sauce-storage:" + localApp);
             URL sauceURL = new URL("http://" + user + ":" + key + "@ondemand.saucelabs.com:80/wd/hub");
-            driver = new AppiumDriver(sauceURL, capabilities);
-        } else {
-            String appPath = Paths.get(userDir, localApp).toAbsolutePath().toString();
-            capabilities.setCapability("app", appPath);
-            driver = new AppiumDriver(new URL("http://127.0.0.1:4723/wd/hub"), capabilities);
+            return new InstrumentedDriver(sauceURL, capabilities);
         }
 
-        sessionId = driver.getSessionId().toString();
-
-        driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
-        Helpers.init(driver);
+        String appPath = Paths.get(userDir, localApp).toAbsolutePath().toString();
+        capabilities.setCapability("app", appPath);
+        URL serverAddress = Endpoints.current();
+        if (reuseSessions) {
+            return pool.lease(serverAddress, capabilities);
+        }
+        return new InstrumentedDriver(serverAddress, capabilities);
     }
 
     /**
@@ -122,7 +226,25 @@ public class AppiumTest implements SauceOnDemandSessionIdProvider {
      */
     @After
     public void tearDown() throws Exception {
-        if (driver != null) driver.quit();
+        Helpers.release();
+        AppiumDriver opened = driver == null ? null : driver.release();
+        if (opened == null) return;
+
+        if (Captures.enabled()) {
+            // rules run around tearDown, so printTests ends the session once it has
+            // captured the screen of a failed test
+            unreleased = opened;
+            return;
+        }
+        release(opened);
+    }
+
+    private void release(AppiumDriver opened) {
+        if (reuseSessions) {
+            pool.release(opened);
+        } else {
+            opened.quit();
+        }
     }
 
     /**
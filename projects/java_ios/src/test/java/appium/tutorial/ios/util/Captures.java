@@ -0,0 +1,265 @@
+package appium.tutorial.ios.util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Screenshots and page sources of a test, taken when it fails or at steps the test chooses.
+ *
+ * The test thread only sends the two capture commands. The screenshot is kept the way it came
+ * over the wire, as base64, and handed to a writer thread together with the page source. The
+ * writer decodes the screenshot, skips a screenshot or page source identical to the previous one
+ * of the same test by its MD5, and writes the rest to target/captures/<test>/, or the directory
+ * given with -Dcapture.dir: the screenshot as PNG and the page source gzipped. Captures waiting for
+ * the writer may hold at most -Dcapture.maxQueuedKB (16 MB by default); a capture which would
+ * exceed that is dropped instead of making the test wait.
+ *
+ * -Dcapture=failure (the default) captures failed tests, -Dcapture=steps also captures the
+ * steps tests mark with {@link #step(WebDriver, String)}, -Dcapture=off captures nothing.
+ * Captures written, skipped and dropped are printed when the JVM exits with -Dstats=true,
+ * after the writer is done.
+ */
+public class Captures {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String mode = System.getProperty("capture", "failure");
+    private static final File directory = new File(System.getProperty("capture.dir", "target/captures"));
+    private static final long maxQueuedBytes = Long.getLong("capture.maxQueuedKB", 16 * 1024) * 1024;
+
+    private static final AtomicLong queuedBytes = new AtomicLong();
+    private static final AtomicLong captures = new AtomicLong();
+    private static final AtomicLong captureNanos = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong writtenBytes = new AtomicLong();
+    private static final AtomicLong identical = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+
+    private static final ThreadLocal<Captures> current = new ThreadLocal<Captures>();
+
+    // one thread, so the captures of a test are compared and written in the order they were taken
+    private static final ExecutorService writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "capture-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("capture-writer-stop") {
+            public void run() {
+                finishWriting();
+            }
+        });
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                // the hooks run at the same time, and the summary counts what was written
+                finishWriting();
+                return captures.get() > 0 ? Captures.summary() : null;
+            }
+        });
+    }
+
+    /** Write the captures still queued, when the JVM exits **/
+    private static void finishWriting() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final String test;
+    private int frames;
+    // only touched by the writer thread
+    private byte[] lastScreenshot;
+    private byte[] lastSource;
+
+    private Captures(String test) {
+        this.test = test;
+    }
+
+    /** Start capturing for a test on the current thread **/
+    public static void start(String test) {
+        current.set(new Captures(test));
+    }
+
+    /** Stop capturing for the test on the current thread **/
+    public static void finish() {
+        current.remove();
+    }
+
+    /** True unless captures are off **/
+    public static boolean enabled() {
+        return !"off".equals(mode);
+    }
+
+    /** True if steps are captured **/
+    public static boolean capturesSteps() {
+        return "steps".equals(mode);
+    }
+
+    /** Capture the screen a test failed on **/
+    public static void failure(WebDriver driver) {
+        Captures captures = current.get();
+        if (captures != null && enabled()) {
+            captures.capture(driver, "failure");
+        }
+    }
+
+    /** Capture a step of a test, with -Dcapture=steps **/
+    public static void step(WebDriver driver, String name) {
+        Captures captures = current.get();
+        if (captures != null && capturesSteps()) {
+            captures.capture(driver, name);
+        }
+    }
+
+    private void capture(WebDriver driver, String name) {
+        final int frame = ++frames;
+        long start = System.nanoTime();
+        String screenshot = null;
+        String source = null;
+        try {
+            if (driver instanceof TakesScreenshot) {
+                screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64);
+            }
+            source = driver.getPageSource();
+        } catch (WebDriverException e) {
+            // capture what there is, the session may be gone
+            failed.incrementAndGet();
+        }
+        captures.incrementAndGet();
+        captureNanos.addAndGet(System.nanoTime() - start);
+
+        // strings take two bytes a character
+        final long bytes = 2L * ((screenshot == null ? 0 : screenshot.length())
+                + (source == null ? 0 : source.length()));
+        if (queuedBytes.addAndGet(bytes) > maxQueuedBytes) {
+            queuedBytes.addAndGet(-bytes);
+            dropped.incrementAndGet();
+            return;
+        }
+
+        final String base64 = screenshot;
+        final String pageSource = source;
+        final String fileName = String.format("%03d-%s", frame, safe(name));
+        try {
+            writer.execute(new Runnable() {
+                public void run() {
+                    try {
+                        write(fileName, base64, pageSource);
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        queuedBytes.addAndGet(-bytes);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the writer is shut down, the JVM is exiting
+            queuedBytes.addAndGet(-bytes);
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** Write what changed since the previous capture of the test; runs on the writer thread **/
+    private void write(String fileName, String base64, String pageSource) throws IOException {
+        Path testDirectory = new File(directory, safe(test)).toPath();
+
+        if (base64 != null) {
+            byte[] png = Base64.decodeBase64(base64);
+            byte[] hash = md5(png);
+            if (Arrays.equals(hash, lastScreenshot)) {
+                identical.incrementAndGet();
+            } else {
+                lastScreenshot = hash;
+                Files.createDirectories(testDirectory);
+                FileChannel channel = FileChannel.open(testDirectory.resolve(fileName + ".png"),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(png);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } finally {
+                    channel.close();
+                }
+                written.incrementAndGet();
+                writtenBytes.addAndGet(png.length);
+            }
+        }
+
+        if (pageSource != null) {
+            byte[] xml = pageSource.getBytes(UTF8);
+            byte[] hash = md5(xml);
+            if (Arrays.equals(hash, lastSource)) {
+                identical.incrementAndGet();
+            } else {
+                lastSource = hash;
+                Files.createDirectories(testDirectory);
+                FileChannel channel = FileChannel.open(testDirectory.resolve(fileName + ".xml.gz"),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel), 8192);
+                    out.write(xml);
+                    out.finish();
+                    writtenBytes.addAndGet(channel.position());
+                } finally {
+                    channel.close();
+                }
+                written.incrementAndGet();
+            }
+        }
+    }
+
+    private static byte[] md5(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A name which is safe as a file name on every platform **/
+    private static String safe(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_|_$", "");
+    }
+
+    /** Captures taken, files written, skipped and dropped so far **/
+    public static String summary() {
+        long count = captures.get();
+        return String.format("Captures: %d taken in %d ms on test threads (%.1f ms each), %d files written (%d KB), "
+                + "%d identical to the previous capture skipped, %d dropped over the queue limit, %d failed",
+                count, TimeUnit.NANOSECONDS.toMillis(captureNanos.get()),
+                count == 0 ? 0.0 : captureNanos.get() / 1e6 / count, written.get(), writtenBytes.get() / 1024,
+                identical.get(), dropped.get(), failed.get());
+    }
+}
@@ -0,0 +1,71 @@
+package appium.tutorial.ios.util;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+
+/**
+ * A locator built by {@link Locators}.
+ *
+ * The server gets the fastest strategy with the same meaning, while {@link PageSnapshot}
+ * evaluates the equivalent xpath locally and {@link NodeTable} the equivalent matcher, if any.
+ */
+public class CompiledLocator extends By {
+
+    private final By server;
+    private final String xpath;
+    private final NodeTable.Matcher matcher;
+
+    CompiledLocator(By server, String xpath) {
+        this(server, xpath, null);
+    }
+
+    CompiledLocator(By server, String xpath, NodeTable.Matcher matcher) {
+        this.server = server;
+        this.xpath = xpath;
+        this.matcher = matcher;
+    }
+
+    /** The locator sent to the server **/
+    public By server() {
+        return server;
+    }
+
+    /** The xpath matching the same elements in the page source **/
+    public String xpath() {
+        return xpath;
+    }
+
+    /** The matcher finding the same elements in a {@link NodeTable}, or null **/
+    public NodeTable.Matcher matcher() {
+        return matcher;
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        return server.findElement(context);
+    }
+
+    @Override
+    public List<WebElement> findElements(SearchContext context) {
+        return server.findElements(context);
+    }
+
+    @Override
+    public String toString() {
+        return server.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CompiledLocator && ((CompiledLocator) o).server.equals(server)
+                && ((CompiledLocator) o).xpath.equals(xpath);
+    }
+
+    @Override
+    public int hashCode() {
+        return server.hashCode() * 31 + xpath.hashCode();
+    }
+}
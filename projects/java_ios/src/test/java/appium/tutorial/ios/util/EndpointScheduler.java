@@ -0,0 +1,293 @@
+package appium.tutorial.ios.util;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the children of a runner on one worker thread per endpoint, each thread bound to its
+ * server with {@link Endpoints}. Children start in the order they are scheduled, each on the
+ * first worker that is free.
+ *
+ * With -Dthreads=virtual every child gets a virtual thread of its own instead, bound to the first
+ * endpoint that is free, see {@link VirtualThreads}. Without virtual threads in the JVM every child
+ * gets a platform thread of its own. Either way, with -Dstats=true, the thread kind, peak platform
+ * threads, peak heap and tests per second are printed when the children are done, to compare the two.
+ *
+ * In both modes at most one child runs on an endpoint at a time, since an Appium server drives one
+ * device, so no more children run at once than there are endpoints. Virtual threads make the
+ * waiting children cheaper; they don't make more of them run. A server which takes several sessions
+ * at once, like a grid or the stand-in, is shared by -Dendpoints.sessions children at a time (1 by
+ * default).
+ */
+abstract class EndpointScheduler implements RunnerScheduler {
+    private static final int SESSIONS_PER_ENDPOINT = Math.max(1, Integer.getInteger("endpoints.sessions", 1));
+
+    private final int workers;
+    private final ExecutorService executor;
+    // endpoint sessions not running a child, with a thread per child
+    private final BlockingQueue<URL> free;
+    private final ThreadFactory perChild;
+    private final String threads;
+    private int children;
+    private long start;
+
+    EndpointScheduler(List<URL> endpoints) {
+        // every endpoint once, then every endpoint again, so the first children spread over all of them
+        final List<URL> sessions = new ArrayList<URL>();
+        for (int i = 0; i < SESSIONS_PER_ENDPOINT; i++) {
+            sessions.addAll(endpoints);
+        }
+        workers = sessions.size();
+        if (!VirtualThreads.requested()) {
+            executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                private final AtomicInteger next = new AtomicInteger();
+
+                public Thread newThread(final Runnable runnable) {
+                    final URL endpoint = sessions.get(next.getAndIncrement() % sessions.size());
+                    Thread thread = new Thread(new Runnable() {
+                        public void run() {
+                            Endpoints.bind(endpoint);
+                            runnable.run();
+                        }
+                    }, "appium-" + endpoint.getHost() + ":" + endpoint.getPort());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            free = null;
+            perChild = null;
+            threads = "platform threads, one per endpoint session";
+            return;
+        }
+
+        executor = null;
+        free = new ArrayBlockingQueue<URL>(workers, false, sessions);
+        ThreadFactory virtual = VirtualThreads.factory("test-");
+        if (virtual != null) {
+            perChild = virtual;
+            threads = "virtual threads, one per test";
+        } else {
+            perChild = new ThreadFactory() {
+                private final AtomicInteger next = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "test-" + next.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            threads = "platform threads, one per test (virtual threads need Java 21)";
+        }
+    }
+
+    int workers() {
+        return workers;
+    }
+
+    public void schedule(final Runnable childStatement) {
+        if (start == 0) {
+            start = System.nanoTime();
+            resetPeaks();
+        }
+        children++;
+        if (executor != null) {
+            executor.execute(childStatement);
+            return;
+        }
+
+        // taken here rather than on the child's thread, so children start in the order they are scheduled;
+        // this waits while every endpoint session is busy
+        final URL endpoint;
+        try {
+            endpoint = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        perChild.newThread(new Runnable() {
+            public void run() {
+                Endpoints.bind(endpoint);
+                try {
+                    childStatement.run();
+                } finally {
+                    free.add(endpoint);
+                }
+            }
+        }).start();
+    }
+
+    public void finished() {
+        try {
+            if (executor != null) {
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } else {
+                // every endpoint session back means every child is done
+                for (int i = 0; i < workers; i++) {
+                    free.take();
+                }
+            }
+        } catch (InterruptedException e) {
+            if (executor != null) executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        long wallMillis = start == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        report(wallMillis);
+        if (Stats.enabled()) {
+            System.out.println(String.format("  threads: %d tests on %s, peak %d platform threads, peak heap %d MB, "
+                    + "%.1f tests/s", children, threads, ManagementFactory.getThreadMXBean().getPeakThreadCount(),
+                    peakHeapBytes() / (1024 * 1024), wallMillis == 0 ? 0.0 : children * 1000.0 / wallMillis));
+        }
+    }
+
+    private static void resetPeaks() {
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    /** The peaks of the heap pools, summed; they need not have been reached at the same time **/
+    private static long peakHeapBytes() {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                bytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return bytes;
+    }
+
+    /** Called once all children are done, with the time from the first start to the last end **/
+    protected abstract void report(long wallMillis);
+
+    /**
+     * The notifier for the children of a runner with this scheduler. JUnit notifies the listeners
+     * inside synchronized, and a listener prints. Virtual threads waiting for that monitor pin their
+     * carriers, and once all carriers are pinned the thread holding the lock of System.out never runs
+     * again, so with -Dthreads=virtual the children take turns on a lock first.
+     */
+    static RunNotifier notifier(RunNotifier notifier) {
+        return VirtualThreads.requested() ? new SerialNotifier(notifier) : notifier;
+    }
+
+    /** Passes the events on one at a time **/
+    private static class SerialNotifier extends RunNotifier {
+        private final RunNotifier delegate;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        SerialNotifier(RunNotifier delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addListener(RunListener listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void addFirstListener(RunListener listener) {
+            delegate.addFirstListener(listener);
+        }
+
+        @Override
+        public void removeListener(RunListener listener) {
+            delegate.removeListener(listener);
+        }
+
+        @Override
+        public void fireTestRunStarted(Description description) {
+            lock.lock();
+            try {
+                delegate.fireTestRunStarted(description);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestRunFinished(Result result) {
+            lock.lock();
+            try {
+                delegate.fireTestRunFinished(result);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestStarted(Description description) throws StoppedByUserException {
+            lock.lock();
+            try {
+                delegate.fireTestStarted(description);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestFailure(Failure failure) {
+            lock.lock();
+            try {
+                delegate.fireTestFailure(failure);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestAssumptionFailed(Failure failure) {
+            lock.lock();
+            try {
+                delegate.fireTestAssumptionFailed(failure);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestIgnored(Description description) {
+            lock.lock();
+            try {
+                delegate.fireTestIgnored(description);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void fireTestFinished(Description description) {
+            lock.lock();
+            try {
+                delegate.fireTestFinished(description);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void pleaseStop() {
+            delegate.pleaseStop();
+        }
+    }
+}
@@ -3,35 +3,178 @@ package appium.tutorial.ios.util;
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.MobileElement;
 import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
+
+import org.w3c.dom.Element;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Static helpers used by tests and page objects.
+ *
+ * The driver is scoped to the calling thread, so tests running in parallel on different
+ * threads each talk to their own session through the same static methods. The session is
+ * opened by the first helper which needs it, see {@link LazyDriver}.
+ *
+ * All waiting, including finds, goes through a {@link WaitEngine}; the implicit wait is off.
+ *
+ * With -Dsnapshot=true locators are first evaluated against a page source snapshot which is
+ * fetched once per screen (see {@link PageSnapshot}).
+ *
+ * Elements are found once per screen and locator, see {@link ElementCache}.
+ */
 public abstract class Helpers {
 
-  private static AppiumDriver driver;
-  private static WebDriverWait driverWait;
+  private static final ThreadLocal<LazyDriver<AppiumDriver>> drivers = new ThreadLocal<LazyDriver<AppiumDriver>>();
+  private static final ThreadLocal<WaitEngine> waitEngines = new ThreadLocal<WaitEngine>();
+  private static final ThreadLocal<PageSnapshot> snapshots = new ThreadLocal<PageSnapshot>();
+  private static final ThreadLocal<ElementCache> elementCaches = new ThreadLocal<ElementCache>();
+
+  private static final boolean useSnapshots = Boolean.getBoolean("snapshot");
+
+  // finds wait as long as the implicit wait used to
+  private static final long FIND_TIMEOUT_SECONDS = 30;
+
+  // must wait at least 60 seconds for running on Sauce.
+  // waiting for 30 seconds works locally however it fails on Sauce.
+  private static final long TIMEOUT_SECONDS = 60;
+
+  /**
+   * Initialize the webdriver for the current thread. Must be called before using any helper methods.
+   * The session is opened when a helper first needs it. *
+   */
+  public static void init(LazyDriver<AppiumDriver> webDriver) {
+    drivers.set(webDriver);
+    waitEngines.remove();
+    elementCaches.remove();
+  }
 
   /**
-   * Initialize the webdriver. Must be called before using any helper methods. *
+   * Initialize the current thread with a driver whose session is open already. *
    */
   public static void init(AppiumDriver webDriver) {
-    driver = webDriver;
-    int timeoutInSeconds = 60;
-    // must wait at least 60 seconds for running on Sauce.
-    // waiting for 30 seconds works locally however it fails on Sauce.
-    driverWait = new WebDriverWait(webDriver, timeoutInSeconds);
+    init(LazyDriver.opened(webDriver));
+  }
+
+  /**
+   * Forget the webdriver of the current thread. Called after each test. *
+   */
+  public static void release() {
+    drivers.remove();
+    waitEngines.remove();
+    snapshots.remove();
+    elementCaches.remove();
+  }
+
+  /**
+   * Return the webdriver of the current thread *
+   */
+  public static AppiumDriver driver() {
+    LazyDriver<AppiumDriver> current = drivers.get();
+    if (current == null) {
+      throw new IllegalStateException("Helpers.init must be called on this thread before using helpers");
+    }
+    return current.get();
+  }
+
+  /**
+   * Return the wait engine of the current thread *
+   */
+  public static WaitEngine waitEngine() {
+    WaitEngine waitEngine = waitEngines.get();
+    if (waitEngine == null) {
+      // turns the implicit wait off, which is the first command of a session
+      waitEngine = new WaitEngine(driver(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      waitEngines.set(waitEngine);
+    }
+    return waitEngine;
+  }
+
+  private static WaitEngine finder() {
+    return waitEngine().withTimeout(FIND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static ElementCache elementCache() {
+    ElementCache elementCache = elementCaches.get();
+    if (elementCache == null) {
+      elementCache = new ElementCache(driver(), new ElementCache.Finder() {
+        public WebElement find(By locator) {
+          return Helpers.find(locator);
+        }
+      });
+      elementCaches.set(elementCache);
+    }
+    return elementCache;
+  }
+
+  /**
+   * Return the page source snapshot of the current screen. The page source is fetched again
+   * once a command may have changed the screen. *
+   */
+  public static PageSnapshot snapshot() {
+    AppiumDriver current = driver();
+    long generation = current instanceof InstrumentedDriver ? ((InstrumentedDriver) current).screenGeneration() : -1;
+
+    PageSnapshot snapshot = snapshots.get();
+    if (snapshot == null || generation < 0 || snapshot.generation() != generation) {
+      snapshot = PageSnapshot.parse(current.getPageSource(), generation);
+      snapshots.set(snapshot);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Return a snapshot for bulk reads. Without -Dsnapshot=true the page source is always
+   * fetched again, so the result is as current as individual getAttribute calls. *
+   */
+  private static PageSnapshot bulkSnapshot() {
+    if (!useSnapshots) snapshots.remove();
+    return snapshot();
+  }
+
+  /**
+   * Return an attribute of every element matching the locator, using one page source fetch
+   * instead of a getAttribute call per element. *
+   */
+  public static List<String> attributes(By locator, String attribute) {
+    if (!PageSnapshot.supports(locator)) {
+      List<String> values = new ArrayList<String>();
+      for (WebElement element : driver().findElements(locator)) {
+        values.add(element.getAttribute(attribute));
+      }
+      return values;
+    }
+    return bulkSnapshot().attributes(locator, attribute);
+  }
+
+  /**
+   * Return whether each element matching the locator is displayed, using one page source
+   * fetch instead of an isDisplayed call per element. *
+   */
+  public static List<Boolean> displayed(By locator) {
+    if (!PageSnapshot.supports(locator)) {
+      List<Boolean> values = new ArrayList<Boolean>();
+      for (WebElement element : driver().findElements(locator)) {
+        values.add(element.isDisplayed());
+      }
+      return values;
+    }
+    return bulkSnapshot().displayed(locator);
   }
 
   /**
    * Wrap WebElement in MobileElement *
    */
   private static MobileElement w(WebElement element) {
-    return new MobileElement((RemoteWebElement) element, driver);
+    return new MobileElement((RemoteWebElement) element, driver());
   }
 
   /**
@@ -47,24 +190,90 @@ public abstract class Helpers {
   }
 
   /**
-   * Return an element by locator *
+   * Return an element by locator. The element is found once per screen. *
    */
   public static MobileElement element(By locator) {
-    return w(driver.findElement(locator));
+    return elementCache().get(locator);
+  }
+
+  /**
+   * Find an element by locator on the device *
+   */
+  private static WebElement find(By locator) {
+    if (useSnapshots && PageSnapshot.supports(locator)) {
+      // match locally, then fetch the element with a native locator instead of an xpath search
+      PageSnapshot snapshot = snapshot();
+      List<Element> found = snapshot.findAll(locator);
+      if (!found.isEmpty()) {
+        By nativeLocator = snapshot.nativeLocator(found.get(0));
+        if (nativeLocator != null) {
+          return finder().find(nativeLocator);
+        }
+      }
+    }
+    return finder().find(locator);
+  }
+
+  /**
+   * Verify an element exists. With snapshots this is answered from the page source
+   * without fetching the element. *
+   */
+  public static void check(final By locator) {
+    if (!useSnapshots || !PageSnapshot.supports(locator)) {
+      element(locator);
+      return;
+    }
+
+    try {
+      finder().until("check " + locator, new ExpectedCondition<Boolean>() {
+        public Boolean apply(WebDriver webDriver) {
+          if (snapshot().contains(locator)) return true;
+          // the screen may still be loading
+          snapshots.remove();
+          return false;
+        }
+      });
+    } catch (TimeoutException e) {
+      throw new NoSuchElementException("Unable to locate " + locator + " in page source", e);
+    }
   }
 
   /**
    * Return a list of elements by locator *
    */
   public static List<MobileElement> elements(By locator) {
-    return w(driver.findElements(locator));
+    return w(finder().findAll(locator));
+  }
+
+  /**
+   * True if the locator finds an element within the given number of seconds, 0 to look once *
+   */
+  public static boolean present(By locator, long seconds) {
+    return !waitEngine().withTimeout(seconds, TimeUnit.SECONDS).findAll(locator).isEmpty();
+  }
+
+  /**
+   * Run a step of the test. If it fails because an element wasn't found or a wait timed out, the
+   * app is brought back to the last checkpoint in the same session and the step runs again, see Steps. *
+   */
+  public static <T> T step(String name, Steps.Step<T> step) throws Exception {
+    return Steps.step(name, step);
   }
 
   /**
    * Press the back button *
    */
   public static void back() {
-    driver.navigate().back();
+    driver().navigate().back();
+  }
+
+  /**
+   * Capture the screenshot and page source at a step of the test, with -Dcapture=steps. See Captures. *
+   */
+  public static void capture(String step) {
+    if (Captures.capturesSteps()) {
+      Captures.step(driver(), step);
+    }
   }
 
   /**
@@ -78,7 +287,7 @@ public abstract class Helpers {
    * Return a tag name locator *
    */
   public static By for_tags(String tagName) {
-    return By.className(tagName);
+    return Locators.tag(tagName);
   }
 
   /**
@@ -92,7 +301,7 @@ public abstract class Helpers {
    * Return a static text locator by xpath index *
    */
   public static By for_text(int xpathIndex) {
-    return By.xpath("//UIAStaticText[" + xpathIndex + "]");
+    return Locators.textAt(xpathIndex);
   }
 
   /**
@@ -106,13 +315,7 @@ public abstract class Helpers {
    * Return a static text locator that contains text *
    */
   public static By for_text(String text) {
-    String up = text.toUpperCase();
-    String down = text.toLowerCase();
-    return By.xpath("//UIAStaticText[@visible=\"true\" and (contains(translate(@name,\"" + up
-        + "\",\"" + down + "\"), \"" + down + "\") or contains(translate(@hint,\"" + up
-        + "\",\"" + down + "\"), \"" + down + "\") or contains(translate(@label,\"" + up
-        + "\",\"" + down + "\"), \"" + down + "\") or contains(translate(@value,\"" + up
-        + "\",\"" + down + "\"), \"" + down + "\"))]");
+    return Locators.textContains(text);
   }
 
   /**
@@ -126,22 +329,77 @@ public abstract class Helpers {
    * Return a static text locator by exact text *
    */
   public static By for_text_exact(String text) {
-    return By.xpath("//UIAStaticText[@visible=\"true\" and (@name=\"" + text
-        + "\" or @hint=\"" + text + "\" or @label=\"" + text
-        + "\" or @value=\"" + text + "\")]");
+    return Locators.textExact(text);
   }
 
   /**
    * Wait 30 seconds for locator to find an element *
    */
-  public static MobileElement wait(By locator) {
-    return w(driverWait.until(ExpectedConditions.visibilityOfElementLocated(locator)));
+  public static MobileElement wait(final By locator) {
+    NodeTable.Matcher matcher = NodeTable.matcher(locator);
+    if (!useSnapshots || matcher == null) {
+      return w(waitEngine().until(ExpectedConditions.visibilityOfElementLocated(locator)));
+    }
+
+    // poll the page source, looking only at what changed since the previous poll, then fetch the element once
+    final NodeTable.Watch watch = new NodeTable.Watch(matcher);
+    waitEngine().until(new ExpectedCondition<Boolean>() {
+      public Boolean apply(WebDriver webDriver) {
+        watch.update(NodeTable.parse(driver().getPageSource()));
+        return watch.shown() > 0;
+      }
+
+      public String toString() {
+        return "visibility of element located by " + locator;
+      }
+    });
+    By nativeLocator = watch.table().nativeLocator(watch.firstShown());
+    return w(finder().find(nativeLocator != null ? nativeLocator : locator));
   }
 
   /**
    * Wait 60 seconds for locator to find all elements *
    */
-  public static List<MobileElement> waitAll(By locator) {
-    return w(driverWait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator)));
+  public static List<MobileElement> waitAll(final By locator) {
+    NodeTable.Matcher matcher = NodeTable.matcher(locator);
+    if (!useSnapshots || matcher == null) {
+      return w(waitEngine().until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator)));
+    }
+
+    // poll the page source, looking only at what changed since the previous poll, then fetch the elements once
+    final NodeTable.Watch watch = new NodeTable.Watch(matcher);
+    waitEngine().until(new ExpectedCondition<Boolean>() {
+      public Boolean apply(WebDriver webDriver) {
+        watch.update(NodeTable.parse(driver().getPageSource()));
+        return watch.matches() > 0 && watch.shown() == watch.matches();
+      }
+
+      public String toString() {
+        return "visibility of all elements located by " + locator;
+      }
+    });
+    return elements(locator);
+  }
+
+  /**
+   * Wait 60 seconds for every locator to find a visible element, checking all of them against one
+   * page source per poll. Return which were met and how long each took, see {@link Conditions} *
+   */
+  public static Conditions.Result waitForAll(By... locators) {
+    return waitEngine().until(Conditions.allOf(locators));
+  }
+
+  /**
+   * Wait 60 seconds for any of the locators to find a visible element, see {@link #waitForAll(By...)} *
+   */
+  public static Conditions.Result waitForAny(By... locators) {
+    return waitEngine().until(Conditions.anyOf(locators));
+  }
+
+  /**
+   * Wait 60 seconds for none of the locators to find a visible element, see {@link #waitForAll(By...)} *
+   */
+  public static Conditions.Result waitForNone(By... locators) {
+    return waitEngine().until(Conditions.noneOf(locators));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package appium.tutorial.ios.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds and caches the locators used by {@link Helpers}.
+ *
+ * Each (kind, text) pair is compiled once. Text is quoted safely, so quotes in cell names
+ * no longer break the xpath. A native strategy is used where it finds the same elements as
+ * the xpath would; UIAutomation has no recursive text search, so text lookups stay on xpath
+ * unless -Dlocators=native allows exact text to be looked up by accessibility id (name),
+ * which also matches the cell or navigation bar carrying that name.
+ *
+ * Locators also carry a matcher, which polling waits evaluate on a {@link NodeTable}.
+ *
+ * Every find the server executes is counted per strategy, and the counts are printed when
+ * the JVM exits with -Dstats=true, to show how much traffic is still on xpath.
+ */
+public abstract class Locators {
+
+    private static final String STATIC_TEXT = "UIAStaticText";
+
+    private static final boolean preferNative = "native".equals(System.getProperty("locators"));
+
+    private static final ConcurrentMap<String, By> cache = new ConcurrentHashMap<String, By>();
+    private static final ConcurrentMap<String, AtomicLong> served = new ConcurrentHashMap<String, AtomicLong>();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return !served.isEmpty() ? Locators.report() : null;
+            }
+        });
+    }
+
+    /** Static text at an xpath index **/
+    public static By textAt(int xpathIndex) {
+        String key = "textAt\u0000" + xpathIndex;
+        By locator = cache.get(key);
+        if (locator == null) {
+            locator = cache(key, By.xpath("//UIAStaticText[" + xpathIndex + "]"));
+        }
+        return locator;
+    }
+
+    /** Visible static text whose name, hint, label or value contains the text, ignoring case **/
+    public static By textContains(final String text) {
+        String key = "textContains\u0000" + text;
+        By locator = cache.get(key);
+        if (locator == null) {
+            String up = PageSnapshot.literal(text.toUpperCase());
+            String down = PageSnapshot.literal(text.toLowerCase());
+            StringBuilder xpath = new StringBuilder("//UIAStaticText[@visible=\"true\" and (");
+            String[] attributes = {"name", "hint", "label", "value"};
+            for (int i = 0; i < attributes.length; i++) {
+                if (i > 0) xpath.append(" or ");
+                xpath.append("contains(translate(@").append(attributes[i]).append(',').append(up).append(',')
+                        .append(down).append("), ").append(down).append(')');
+            }
+            final String lower = text.toLowerCase();
+            NodeTable.Matcher matcher = new NodeTable.Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.tag(row).equals(STATIC_TEXT) && table.displayed(row)
+                            && (table.name(row).toLowerCase().contains(lower)
+                            || table.hint(row).toLowerCase().contains(lower)
+                            || table.label(row).toLowerCase().contains(lower)
+                            || table.value(row).toLowerCase().contains(lower));
+                }
+            };
+            String compiled = xpath.append(")]").toString();
+            locator = cache(key, new CompiledLocator(By.xpath(compiled), compiled, matcher));
+        }
+        return locator;
+    }
+
+    /** Visible static text whose name, hint, label or value is the text **/
+    public static By textExact(final String text) {
+        String key = "textExact\u0000" + text;
+        By locator = cache.get(key);
+        if (locator == null) {
+            String literal = PageSnapshot.literal(text);
+            String xpath = "//UIAStaticText[@visible=\"true\" and (@name=" + literal + " or @hint=" + literal
+                    + " or @label=" + literal + " or @value=" + literal + ")]";
+            NodeTable.Matcher matcher = new NodeTable.Matcher() {
+                public boolean matches(NodeTable table, int row) {
+                    return table.tag(row).equals(STATIC_TEXT) && table.displayed(row)
+                            && (table.name(row).equals(text) || table.hint(row).equals(text)
+                            || table.label(row).equals(text) || table.value(row).equals(text));
+                }
+            };
+            locator = cache(key, new CompiledLocator(preferNative ? MobileBy.AccessibilityId(text) : By.xpath(xpath),
+                    xpath, matcher));
+        }
+        return locator;
+    }
+
+    /** Elements of a UIAutomation class, e.g. UIATableCell **/
+    public static By tag(String tagName) {
+        String key = "tag\u0000" + tagName;
+        By locator = cache.get(key);
+        if (locator == null) {
+            locator = cache(key, By.className(tagName));
+        }
+        return locator;
+    }
+
+    private static By cache(String key, By locator) {
+        By existing = cache.putIfAbsent(key, locator);
+        return existing != null ? existing : locator;
+    }
+
+    /** Count a find executed by the server, by strategy **/
+    static void served(String strategy) {
+        AtomicLong count = served.get(strategy);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = served.putIfAbsent(strategy, created);
+            if (count == null) count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    /** Finds executed by the server per strategy **/
+    public static String report() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : served.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+            total += entry.getValue().get();
+        }
+
+        StringBuilder report = new StringBuilder("Finds by strategy:\n");
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue())
+                    .append(" (").append(entry.getValue() * 100 / total).append("%)\n");
+        }
+        return report.toString();
+    }
+}
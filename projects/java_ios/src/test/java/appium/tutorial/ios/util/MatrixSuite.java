@@ -0,0 +1,198 @@
+package appium.tutorial.ios.util;
+
+import org.junit.Ignore;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the test classes of a suite on every target of the matrix (see {@link Target}),
+ * spread over all configured endpoints (see {@link Endpoints}).
+ *
+ * Every test method of every class is expanded into one run per target, named
+ * method[target]. The runs are queued longest first, with the durations recorded by earlier
+ * runs (see {@link TimingHistory}), and each endpoint takes the next run as soon as it is free.
+ * The long runs start while there is still short work to even out the endpoints, instead of
+ * one of them starting a long run when the others are about done. A run without a recorded
+ * duration is expected to take as long as the same test on the other targets, or else as long
+ * as the average test. -Dorder=failfast and -Dshard apply to the runs as well.
+ *
+ * When all runs are done the suite prints the makespan next to the ideal one, the summed
+ * test time spread evenly over the endpoints or the longest run if that is longer.
+ *
+ * The runner of the test classes is not used, so class level rules and @BeforeClass methods
+ * don't run.
+ */
+public class MatrixSuite extends ParentRunner<MatrixSuite.Run> {
+
+    private final List<Run> runs = new ArrayList<Run>();
+    private int tests;
+
+    private final Object lock = new Object();
+    private int ran;
+    private int predicted;
+    private long runNanos;
+    private long longestNanos;
+
+    public MatrixSuite(Class<?> klass) throws InitializationError {
+        super(klass);
+        Suite.SuiteClasses classes = klass.getAnnotation(Suite.SuiteClasses.class);
+        if (classes == null) {
+            throw new InitializationError("class '" + klass.getName() + "' must have a SuiteClasses annotation");
+        }
+
+        List<Target> targets = Target.matrix();
+        for (Class<?> testClass : classes.value()) {
+            TestRunner runner = new TestRunner(testClass);
+            for (FrameworkMethod method : runner.testMethods()) {
+                tests++;
+                for (Target target : targets) {
+                    runs.add(new Run(runner, new TargetedMethod(method.getMethod(), target), target));
+                }
+            }
+        }
+
+        // longest first, so the endpoints finish close together; with -Dorder=failfast the
+        // tests which failed last time go first, the sorts are stable so each group stays longest first
+        TimingHistory.Order order = TimingHistory.order(TimingHistory.Order.LONGEST);
+        if (order == TimingHistory.Order.FAILFAST) {
+            sort(TimingHistory.shared().sorter(TimingHistory.Order.LONGEST));
+        }
+        TimingHistory.configure(this, order);
+
+        setScheduler(new EndpointScheduler(Endpoints.all()) {
+            protected void report(long wallMillis) {
+                MatrixSuite.this.report(wallMillis, workers());
+            }
+        });
+    }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return super.childrenInvoker(EndpointScheduler.notifier(notifier));
+    }
+
+    @Override
+    protected List<Run> getChildren() {
+        return runs;
+    }
+
+    @Override
+    protected Description describeChild(Run run) {
+        return run.description;
+    }
+
+    @Override
+    protected void runChild(Run run, RunNotifier notifier) {
+        Description description = describeChild(run);
+        if (run.method.getAnnotation(Ignore.class) != null) {
+            notifier.fireTestIgnored(description);
+            return;
+        }
+
+        Target.bind(run.target);
+        long start = System.nanoTime();
+        try {
+            runLeaf(run.runner.statement(run.method), description, notifier);
+        } finally {
+            Target.bind(null);
+            long nanos = System.nanoTime() - start;
+            boolean known = TimingHistory.shared().expectedMillis(TimingHistory.key(description)) >= 0;
+            synchronized (lock) {
+                ran++;
+                if (known) predicted++;
+                runNanos += nanos;
+                longestNanos = Math.max(longestNanos, nanos);
+            }
+        }
+    }
+
+    private void report(long wallMillis, int workers) {
+        int runCount;
+        int predictedCount;
+        long runMillis;
+        long longestMillis;
+        synchronized (lock) {
+            runCount = ran;
+            predictedCount = predicted;
+            runMillis = TimeUnit.NANOSECONDS.toMillis(runNanos);
+            longestMillis = TimeUnit.NANOSECONDS.toMillis(longestNanos);
+        }
+        long idealMillis = Math.max(runMillis / workers, longestMillis);
+        System.out.println(String.format("  %s: %d runs (%d tests on %d targets) %d at a time in %d ms, "
+                + "ideal %d ms (%.2fx), %d of %d runs ordered by recorded durations",
+                getTestClass().getJavaClass().getSimpleName(), runCount, tests, Target.matrix().size(),
+                workers, wallMillis, idealMillis, idealMillis == 0 ? 1.0 : (double) wallMillis / idealMillis,
+                predictedCount, runCount));
+    }
+
+    /** One test method on one target **/
+    static class Run {
+        final TestRunner runner;
+        final FrameworkMethod method;
+        final Target target;
+        final Description description;
+
+        Run(TestRunner runner, FrameworkMethod method, Target target) {
+            this.runner = runner;
+            this.method = method;
+            this.target = target;
+            this.description = runner.describe(method);
+        }
+    }
+
+    /** A test method named after its target, so reports and command stats tell the targets apart **/
+    private static class TargetedMethod extends FrameworkMethod {
+        private final Target target;
+
+        TargetedMethod(Method method, Target target) {
+            super(method);
+            this.target = target;
+        }
+
+        @Override
+        public String getName() {
+            return super.getName() + "[" + target + "]";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TargetedMethod && super.equals(other) && target == ((TargetedMethod) other).target;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + target.hashCode();
+        }
+    }
+
+    /** The standard runner of a test class, used for its statements instead of running it **/
+    private static class TestRunner extends BlockJUnit4ClassRunner {
+
+        TestRunner(Class<?> klass) throws InitializationError {
+            super(klass);
+        }
+
+        List<FrameworkMethod> testMethods() {
+            return getChildren();
+        }
+
+        Description describe(FrameworkMethod method) {
+            return describeChild(method);
+        }
+
+        Statement statement(FrameworkMethod method) {
+            return methodBlock(method);
+        }
+    }
+}
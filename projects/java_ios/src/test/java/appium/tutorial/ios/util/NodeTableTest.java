@@ -0,0 +1,160 @@
+package appium.tutorial.ios.util;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+import io.appium.java_client.MobileBy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NodeTableTest {
+
+    private static final String ROW = "UIATableCell";
+
+    @Test
+    public void rowsAreInDocumentOrder() {
+        NodeTable table = NodeTable.parse(screen("Buttons", "Controls"));
+        // application, table, two cells, hidden cell, navigation bar
+        assertEquals(6, table.size());
+        assertEquals("UIATableView", table.tag(1));
+        assertEquals(1, table.parent(2));
+        assertEquals(4, table.end(1));
+        assertEquals("Controls", table.name(3));
+        assertEquals("Controls cell", table.label(3));
+        assertTrue(table.displayed(3));
+        assertFalse(table.displayed(4));
+    }
+
+    @Test
+    public void sameSourceIsUnchanged() {
+        NodeTable before = NodeTable.parse(screen("Buttons", "Controls"));
+        NodeTable after = NodeTable.parse(screen("Buttons", "Controls"));
+        assertEquals(before.hash(0), after.hash(0));
+        assertTrue(after.diff(before).unchanged());
+    }
+
+    @Test
+    public void changedRowIsTheOnlyChange() {
+        NodeTable before = NodeTable.parse(screen("Buttons", "Controls", "SearchBar"));
+        NodeTable after = NodeTable.parse(screen("Buttons", "TextFields", "SearchBar"));
+        NodeTable.Diff diff = after.diff(before);
+        assertEquals(1, diff.size());
+        assertEquals(3, diff.before(0));
+        assertEquals(3, diff.after(0));
+        assertEquals("TextFields", after.name(diff.after(0)));
+    }
+
+    @Test
+    public void addedRowChangesItsParent() {
+        NodeTable before = NodeTable.parse(screen("Buttons", "Controls"));
+        NodeTable after = NodeTable.parse(screen("Buttons", "Controls", "SearchBar"));
+        NodeTable.Diff diff = after.diff(before);
+        assertEquals(1, diff.size());
+        assertEquals(1, diff.before(0));
+        assertEquals(1, diff.after(0));
+    }
+
+    @Test
+    public void matchersFollowTheLocators() {
+        NodeTable table = NodeTable.parse(screen("Buttons", "Controls"));
+        assertEquals(3, count(table, By.className(ROW)));
+        assertEquals(1, count(table, By.name("Controls")));
+        assertEquals(1, count(table, MobileBy.AccessibilityId("Buttons")));
+        assertEquals(3, count(table, By.xpath("//" + ROW)));
+        assertEquals(2, count(table, By.xpath("//UIATableView/" + ROW)));
+        assertEquals(1, count(table, By.xpath("//UIATableView/" + ROW + "[2]")));
+        // the first of the list and the first outside it
+        assertEquals(2, count(table, By.xpath("//" + ROW + "[1]")));
+        assertNull(NodeTable.matcher(By.xpath("//" + ROW + "[@name=\"Controls\"]")));
+    }
+
+    @Test
+    public void watchKeepsCountingAsTheScreenChanges() {
+        String[][] screens = {
+                {"Buttons", "Controls"},
+                {"Buttons", "Controls"},
+                {"Buttons", "SearchBar"},
+                {"Buttons", "SearchBar", "TextFields", "Pickers"},
+                {},
+                {"Images", "Web", "Toolbar"},
+                {"Images", "Web", "Toolbar"},
+        };
+        By[] locators = {By.className(ROW), By.xpath("//" + ROW + "[2]"), By.xpath("//UIATableView/" + ROW), By.name("SearchBar"), By.name("Missing")};
+        for (By locator : locators) {
+            NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(locator));
+            for (String[] rows : screens) {
+                NodeTable table = NodeTable.parse(screen(rows));
+                watch.update(table);
+
+                NodeTable.Watch recounted = new NodeTable.Watch(NodeTable.matcher(locator));
+                recounted.update(table);
+                assertEquals(locator + " matches", recounted.matches(), watch.matches());
+                assertEquals(locator + " shown", recounted.shown(), watch.shown());
+                assertEquals(locator + " first", recounted.firstShown(), watch.firstShown());
+            }
+        }
+    }
+
+    @Test
+    public void watchCountsTheHiddenCellAsAMatchOnly() {
+        NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(By.className(ROW)));
+        watch.update(NodeTable.parse(screen()));
+        assertEquals(1, watch.matches());
+        assertEquals(0, watch.shown());
+        assertEquals(-1, watch.firstShown());
+
+        watch.update(NodeTable.parse(screen("Buttons")));
+        assertEquals(2, watch.matches());
+        assertEquals(1, watch.shown());
+        assertEquals(2, watch.firstShown());
+    }
+
+    @Test
+    public void watchCountsPositionsAgainWhenASiblingChanges() {
+        NodeTable.Watch watch = new NodeTable.Watch(NodeTable.matcher(By.xpath("//" + ROW + "[1]")));
+        watch.update(NodeTable.parse("<AppiumAUT><UIAImage/><" + ROW + "/><" + ROW + "/></AppiumAUT>"));
+        assertEquals(1, watch.matches());
+        // only the first row changed, but the second is no longer the first of its tag
+        watch.update(NodeTable.parse("<AppiumAUT><" + ROW + "/><" + ROW + "/><" + ROW + "/></AppiumAUT>"));
+        assertEquals(1, watch.matches());
+        watch.update(NodeTable.parse("<AppiumAUT><UIAImage/><UIAImage/><UIAImage/></AppiumAUT>"));
+        assertEquals(0, watch.matches());
+    }
+
+    @Test
+    public void uniqueNamesMakeNativeLocators() {
+        NodeTable table = NodeTable.parse(screen("Buttons", "Controls"));
+        assertEquals(MobileBy.AccessibilityId("Controls").toString(), table.nativeLocator(3).toString());
+        // the table has no name, and the hidden cell shares its name with the navigation bar
+        assertNull(table.nativeLocator(1));
+        assertNull(table.nativeLocator(4));
+    }
+
+    private static int count(NodeTable table, By locator) {
+        NodeTable.Matcher matcher = NodeTable.matcher(locator);
+        int count = 0;
+        for (int row = 0; row < table.size(); row++) {
+            if (matcher.matches(table, row)) count++;
+        }
+        return count;
+    }
+
+    /** A table of cells, a cell out of sight and the navigation bar **/
+    private static String screen(String... rows) {
+        StringBuilder page = new StringBuilder("<AppiumAUT>");
+        page.append("<UIATableView name=\"\" label=\"\" value=\"\" visible=\"true\" x=\"0\" y=\"64\" width=\"320\" height=\"504\">");
+        for (int i = 0; i < rows.length; i++) {
+            int y = 64 + i * 44;
+            page.append("<" + ROW + " name=\"").append(rows[i]).append("\" label=\"").append(rows[i])
+                    .append(" cell\" value=\"\" visible=\"true\" x=\"0\" y=\"").append(y)
+                    .append("\" width=\"320\" height=\"44\"/>");
+        }
+        page.append("</UIATableView>");
+        page.append("<" + ROW + " name=\"UICatalog\" label=\"\" value=\"\" visible=\"false\" x=\"0\" y=\"0\" width=\"320\" height=\"44\"/>");
+        page.append("<UIANavigationBar name=\"UICatalog\" label=\"UICatalog\" value=\"\" visible=\"true\" x=\"0\" y=\"20\" width=\"320\" height=\"44\"/>");
+        return page.append("</AppiumAUT>").toString();
+    }
+}
@@ -0,0 +1,312 @@
+package appium.tutorial.ios.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates page objects from page sources, one page per captured screen, and checks them.
+ *
+ * The page objects in {@link appium.tutorial.ios.page} find their elements with locators written by
+ * hand, and a locator which became an xpath search, or stopped matching when the app changed, only
+ * shows on a device. The generator reads a page source per screen captured from the app, e.g. the
+ * ones left in target/captures/ with -Dcapture=steps, unzipped to src/test/resources/pages/ with one
+ * file per screen named after it. It writes a class with a field for every named element whose
+ * accessibility id, which UIAutomation resolves by name, finds it first. Any other element is only
+ * reachable with an xpath search, or by its position among the elements of its class, which changes
+ * as soon as the device shows another label first, and gets no field. The stand-in's page sources
+ * are written by hand, so pages generated from them would only be checked against the stand-in.
+ *
+ * loaded() checks the locator with the fewest matches which matches on no other screen.
+ *
+ * With --check, run by the pages profile before any test, every generated page is verified against
+ * its page source instead: a locator which finds nothing or first finds an element of another name
+ * is broken, a class name finds an element by position, an xpath is slow, an anchor which matches on
+ * another screen doesn't tell the screens apart, and a class which differs from what the page source
+ * generates now is stale. Any of them fails the build.
+ *
+ *     java -cp target/test-classes:<test classpath> appium.tutorial.ios.util.PageGenerator [--check] [dumps] [sources]
+ */
+public class PageGenerator {
+
+    static final String PACKAGE = "appium.tutorial.ios.page.generated";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // not elements of the app's screens
+    private static final Set<String> CONTAINERS = new HashSet<String>(Arrays.asList("UIAApplication", "UIAWindow"));
+
+    /** A screen's page source **/
+    static class Screen {
+        final String page;
+        final String source;
+        final PageSnapshot snapshot;
+
+        Screen(File dump) throws IOException {
+            String file = dump.getName();
+            String name = file.substring(0, file.lastIndexOf('.'));
+            this.page = Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Page";
+            this.source = projectPath(dump);
+            this.snapshot = PageSnapshot.parse(new String(Files.readAllBytes(dump.toPath()), UTF8), -1);
+        }
+
+        /** The elements of the app the locator matches, in document order **/
+        List<Element> find(By locator) {
+            List<Element> found = new ArrayList<Element>();
+            for (Element element : snapshot.findAll(locator)) {
+                if (!CONTAINERS.contains(element.getTagName())) found.add(element);
+            }
+            return found;
+        }
+    }
+
+    private final List<Screen> screens = new ArrayList<Screen>();
+    private final File sources;
+
+    public PageGenerator(File dumps, File sources) throws IOException {
+        File[] files = dumps.listFiles();
+        if (files == null) throw new IOException("No page sources in " + dumps);
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".xml")) screens.add(new Screen(file));
+        }
+        this.sources = sources;
+    }
+
+    /** Write the page of every screen **/
+    public void generate() throws IOException {
+        for (Screen screen : screens) {
+            File file = file(screen);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), generate(screen).getBytes(UTF8));
+            System.out.println("  " + screen.page + " written to " + file);
+        }
+    }
+
+    /** Verify every page against its page source, and return the problems found **/
+    public List<String> check() throws IOException {
+        List<String> problems = new ArrayList<String>();
+        for (Screen screen : screens) {
+            Class<?> page;
+            try {
+                page = Class.forName(PACKAGE + "." + screen.page);
+            } catch (ClassNotFoundException e) {
+                problems.add(screen.page + ": missing, generate it from " + screen.source);
+                continue;
+            }
+            for (Field field : page.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) || !By.class.isAssignableFrom(field.getType())) continue;
+                By locator;
+                try {
+                    locator = (By) field.get(null);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                String where = screen.page + "." + field.getName() + " (" + locator + ")";
+                if (!PageSnapshot.supports(locator)) {
+                    problems.add(where + ": can't be checked against a page source");
+                } else if (locator.toString().startsWith("By.xpath")) {
+                    problems.add(where + ": slow, an xpath search");
+                } else if (locator.toString().startsWith("By.className")) {
+                    problems.add(where + ": finds the first element of its class, whichever that is on the device");
+                } else if (screen.find(locator).isEmpty()) {
+                    problems.add(where + ": broken, finds nothing in " + screen.source);
+                } else if (!named(field, screen.find(locator).get(0))) {
+                    problems.add(where + ": broken, first finds " + screen.find(locator).get(0).getAttribute("name")
+                            + " in " + screen.source);
+                } else if (field.getName().equals("LOADED")) {
+                    List<String> elsewhere = new ArrayList<String>();
+                    for (Screen other : screens) {
+                        if (other != screen && !other.find(locator).isEmpty()) elsewhere.add(other.source);
+                    }
+                    if (!elsewhere.isEmpty()) problems.add(where + ": doesn't tell the screen apart, also matches on " + elsewhere);
+                }
+            }
+            String generated = generate(screen);
+            File file = file(screen);
+            if (!file.exists() || !generated.equals(new String(Files.readAllBytes(file.toPath()), UTF8))) {
+                problems.add(screen.page + ": stale, generate it again from " + screen.source);
+            }
+        }
+        return problems;
+    }
+
+    /** True if the element is the one the field was generated for, LOADED being any of them **/
+    private static boolean named(Field field, Element element) {
+        String name = field.getName().replaceAll("_[0-9]+$", "");
+        if (name.equals("LOADED")) return true;
+        return name.equals(fieldName(element.getAttribute("name"), element.getTagName()));
+    }
+
+    /**
+     * The file's path from the project directory, e.g. src/test/resources/standin/home.xml, also when
+     * it was given as an absolute path, so the generated pages don't depend on where the build ran
+     */
+    static String projectPath(File file) {
+        String path = file.getAbsoluteFile().toURI().normalize().getPath();
+        int src = path.lastIndexOf("/src/test/");
+        return src < 0 ? file.getPath().replace(File.separatorChar, '/') : path.substring(src + 1);
+    }
+
+    private File file(Screen screen) {
+        return new File(sources, (PACKAGE + "." + screen.page).replace('.', File.separatorChar) + ".java");
+    }
+
+    /** The source of the screen's page **/
+    String generate(Screen screen) {
+        // field name -> locator expression, for the elements reachable without an xpath
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        Map<String, Element> elements = new LinkedHashMap<String, Element>();
+        Map<String, By> locators = new LinkedHashMap<String, By>();
+        int xpathOnly = 0;
+
+        for (Element element : screen.find(By.xpath("//*"))) {
+            String name = element.getAttribute("name");
+            if (name.length() == 0 || !"true".equals(element.getAttribute("visible"))) continue;
+
+            String tag = element.getTagName();
+            By locator = MobileBy.AccessibilityId(name);
+            String expression = "MobileBy.AccessibilityId(" + literal(name) + ")";
+            if (screen.find(locator).get(0) != element) {
+                xpathOnly++;
+                continue;
+            }
+
+            String field = fieldName(name, tag);
+            for (int i = 2; fields.containsKey(field); i++) {
+                field = fieldName(name, tag) + "_" + i;
+            }
+            fields.put(field, expression);
+            elements.put(field, element);
+            locators.put(field, locator);
+        }
+
+        String anchor = anchor(screen, locators);
+        String title = words(screen.page.substring(0, screen.page.length() - "Page".length()));
+
+        StringBuilder java = new StringBuilder();
+        java.append("package ").append(PACKAGE).append(";\n\n");
+        java.append("import io.appium.java_client.MobileBy;\n");
+        java.append("import org.openqa.selenium.By;\n\n");
+        java.append("import static appium.tutorial.ios.util.Helpers.check;\n\n");
+        java.append("/**\n");
+        java.append(" * Page object for the ").append(title).append(" page, generated from ").append(screen.source).append("\n");
+        java.append(" * by {@link appium.tutorial.ios.util.PageGenerator}. Don't edit it, generate it again.\n");
+        if (xpathOnly > 0) {
+            java.append(" * ").append(xpathOnly).append(xpathOnly == 1 ? " element is" : " elements are")
+                    .append(" only reachable with an xpath search and ").append(xpathOnly == 1 ? "has" : "have")
+                    .append(" no field.\n");
+        }
+        java.append(" */\n");
+        java.append("public abstract class ").append(screen.page).append(" {\n\n");
+        java.append("    /** The page source the page was generated from **/\n");
+        java.append("    public static final String SOURCE = ").append(literal(screen.source)).append(";\n\n");
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            Element element = elements.get(field.getKey());
+            java.append("    /** ").append(element.getTagName()).append(" ").append(comment(element.getAttribute("name")))
+                    .append(" **/\n");
+            java.append("    public static final By ").append(field.getKey()).append(" = ").append(field.getValue())
+                    .append(";\n\n");
+        }
+        if (anchor != null) {
+            java.append("    /** Found on no other screen, checked by {@link #loaded()} **/\n");
+            java.append("    public static final By LOADED = ").append(anchor).append(";\n\n");
+            java.append("    /** Verify the ").append(title).append(" page has loaded **/\n");
+            java.append("    public static void loaded() {\n");
+            java.append("        check(LOADED);\n");
+            java.append("    }\n");
+        } else {
+            java.append("    // every element is also found on another screen, so there is no loaded() check\n");
+        }
+        java.append("}\n");
+        return java.toString();
+    }
+
+    /** The field of the cheapest locator found on no other screen, or null **/
+    private String anchor(Screen screen, Map<String, By> locators) {
+        String best = null;
+        int bestCost = Integer.MAX_VALUE;
+        for (Map.Entry<String, By> field : locators.entrySet()) {
+            By locator = field.getValue();
+            boolean elsewhere = false;
+            for (Screen other : screens) {
+                if (other != screen && !other.find(locator).isEmpty()) elsewhere = true;
+            }
+            if (elsewhere) continue;
+
+            // fewer matches mean less for the device to look through
+            int cost = screen.find(locator).size();
+            if (cost < bestCost) {
+                best = field.getKey();
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /** "Buttons, Various uses" of a UIATableCell is BUTTONS_VARIOUS_USES_CELL **/
+    static String fieldName(String name, String tag) {
+        String kind = constant(tag.startsWith("UIA") ? tag.substring(3) : tag);
+        if (kind.equals("TABLE_CELL")) kind = "CELL";
+        if (kind.equals("STATIC_TEXT")) kind = "TEXT";
+
+        String words = name.toUpperCase(Locale.ENGLISH).replaceAll("[^A-Z0-9]+", "_").replaceAll("^_|_$", "");
+        String field = words.length() == 0 ? kind : words + "_" + kind;
+        return Character.isDigit(field.charAt(0)) ? "_" + field : field;
+    }
+
+    /** TextFields is TEXT_FIELDS **/
+    private static String constant(String camelCase) {
+        return camelCase.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ENGLISH);
+    }
+
+    /** TextFields is "text fields" **/
+    private static String words(String camelCase) {
+        return camelCase.replaceAll("([a-z0-9])([A-Z])", "$1 $2").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String comment(String value) {
+        return "\"" + value.replace("*/", "* /") + "\"";
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        boolean check = arguments.remove("--check");
+        File dumps = new File(arguments.size() > 0 ? arguments.get(0) : "src/test/resources/pages");
+        File sources = new File(arguments.size() > 1 ? arguments.get(1) : "src/test/java");
+
+        PageGenerator generator = new PageGenerator(dumps, sources);
+        if (!check) {
+            generator.generate();
+            return;
+        }
+
+        List<String> problems = generator.check();
+        if (!problems.isEmpty()) {
+            StringBuilder message = new StringBuilder(problems.size() + " generated page problem(s):");
+            for (String problem : problems) {
+                message.append("\n  ").append(problem);
+            }
+            // thrown rather than exiting, so the build fails with the message
+            throw new IllegalStateException(message.toString());
+        }
+        System.out.println("Generated pages: " + generator.screens.size() + " checked against " + dumps);
+    }
+}
@@ -0,0 +1,228 @@
+package appium.tutorial.ios.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed copy of the page source.
+ *
+ * XPath locators are evaluated against the copy in the JVM instead of on the device, where
+ * the translate()/contains() searches built by {@link Helpers#for_text(String)} are slow.
+ * A snapshot is only valid for the screen it was taken on; {@link Helpers} drops it whenever
+ * a command may have changed the screen.
+ */
+public class PageSnapshot {
+
+    // expressions kept per thread; xpaths built from row texts are mostly used once
+    private static final int MAX_EXPRESSIONS = 64;
+
+    /** XPath objects aren't thread safe, so every thread compiles its own, keeping the recently used ones **/
+    private static final ThreadLocal<Map<String, XPathExpression>> expressions = new ThreadLocal<Map<String, XPathExpression>>() {
+        protected Map<String, XPathExpression> initialValue() {
+            return new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                    return size() > MAX_EXPRESSIONS;
+                }
+            };
+        }
+    };
+
+    private static final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /** Attributes which tell screens apart, see fingerprint() **/
+    private static final String[] IDENTITY = {"name"};
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Document document;
+    private final long generation;
+
+    private PageSnapshot(Document document, long generation) {
+        this.document = document;
+        this.generation = generation;
+    }
+
+    /** Parse page source taken at the given screen generation **/
+    public static PageSnapshot parse(String pageSource, long generation) {
+        try {
+            return new PageSnapshot(builders.get().parse(new InputSource(new StringReader(pageSource))), generation);
+        } catch (Exception e) {
+            throw new WebDriverException("Unable to parse page source", e);
+        }
+    }
+
+    /** The screen generation the page source was taken at **/
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * A hash of the element tree and the names of the elements. Positions, values and visibility
+     * are left out, so the same screen taken twice has the same fingerprint.
+     */
+    public String fingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, document.getDocumentElement());
+        return String.format("%032x", new BigInteger(1, digest.digest()));
+    }
+
+    private static void update(MessageDigest digest, Element element) {
+        digest.update(element.getTagName().getBytes(UTF8));
+        for (String attribute : IDENTITY) {
+            digest.update((byte) 0);
+            digest.update(element.getAttribute(attribute).getBytes(UTF8));
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                update(digest, (Element) child);
+            }
+        }
+        // closes the children, so a sibling and a child don't hash the same
+        digest.update((byte) 1);
+    }
+
+    /** True when the locator can be evaluated locally **/
+    public static boolean supports(By locator) {
+        return xpath(locator) != null;
+    }
+
+    /** Return the elements the locator matches, in document order **/
+    public List<Element> findAll(By locator) {
+        String xpath = xpath(locator);
+        if (xpath == null) {
+            throw new IllegalArgumentException("Locator can't be evaluated on a snapshot: " + locator);
+        }
+
+        NodeList nodes;
+        try {
+            nodes = (NodeList) compile(xpath).evaluate(document, XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            throw new WebDriverException("Invalid xpath: " + xpath, e);
+        }
+
+        List<Element> elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /** True when the locator matches at least one element **/
+    public boolean contains(By locator) {
+        return !findAll(locator).isEmpty();
+    }
+
+    /** Return the attribute of every element the locator matches, as getAttribute would **/
+    public List<String> attributes(By locator, String attribute) {
+        List<Element> elements = findAll(locator);
+        List<String> values = new ArrayList<String>(elements.size());
+        for (Element element : elements) {
+            values.add(element.hasAttribute(attribute) ? element.getAttribute(attribute) : null);
+        }
+        return values;
+    }
+
+    /** Return whether each element the locator matches is displayed **/
+    public List<Boolean> displayed(By locator) {
+        List<Element> elements = findAll(locator);
+        List<Boolean> values = new ArrayList<Boolean>(elements.size());
+        for (Element element : elements) {
+            values.add("true".equals(element.getAttribute("visible")));
+        }
+        return values;
+    }
+
+    /**
+     * Return a native locator that finds exactly this element, or null if there is none.
+     * UIAutomation resolves an accessibility id much faster than an xpath search.
+     */
+    public By nativeLocator(Element element) {
+        String name = element.getAttribute("name");
+        if (name.length() == 0) return null;
+
+        By byName = MobileBy.AccessibilityId(name);
+        return findAll(byName).size() == 1 ? byName : null;
+    }
+
+    /** Translate a locator to the xpath matching the same elements in the page source **/
+    static String xpath(By locator) {
+        if (locator instanceof CompiledLocator) return ((CompiledLocator) locator).xpath();
+
+        String description = locator.toString();
+        int separator = description.indexOf(": ");
+        if (separator < 0) return null;
+
+        String strategy = description.substring(0, separator);
+        String value = description.substring(separator + 2);
+
+        if (strategy.equals("By.xpath")) return value;
+        if (strategy.equals("By.className")) return "//" + value;
+        if (strategy.equals("By.AccessibilityId") || strategy.equals("By.name")) {
+            return "//*[@name=" + literal(value) + "]";
+        }
+        return null;
+    }
+
+    /** Quote a string as an xpath literal, using concat() when it holds both quote kinds **/
+    static String literal(String value) {
+        if (value.indexOf('"') < 0) return "\"" + value + "\"";
+        if (value.indexOf('\'') < 0) return "'" + value + "'";
+
+        StringBuilder concat = new StringBuilder("concat(");
+        String[] parts = value.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) concat.append(", '\"', ");
+            concat.append('"').append(parts[i]).append('"');
+        }
+        return concat.append(')').toString();
+    }
+
+    private static XPathExpression compile(String xpath) throws XPathExpressionException {
+        Map<String, XPathExpression> compiled = expressions.get();
+        XPathExpression expression = compiled.get(xpath);
+        if (expression == null) {
+            XPath factory = XPathFactory.newInstance().newXPath();
+            expression = factory.compile(xpath);
+            compiled.put(xpath, expression);
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,63 @@
+package appium.tutorial.ios.util;
+
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the test methods of a class concurrently, one worker thread per configured endpoint.
+ *
+ * Every worker is bound to its own Appium server (see {@link Endpoints}), so each test opens
+ * its session on the server of the thread it runs on. With a single endpoint the tests run
+ * one after the other, exactly like the default runner.
+ *
+ * The tests are ordered and sharded as configured with -Dorder and -Dshard, see {@link TimingHistory}.
+ *
+ * When the class is done the runner prints the wall time next to the summed test time.
+ * Their ratio is the speedup over a serial run.
+ */
+public class ParallelRunner extends BlockJUnit4ClassRunner {
+
+    private final AtomicLong testNanos = new AtomicLong();
+    private final AtomicInteger tests = new AtomicInteger();
+
+    public ParallelRunner(Class<?> klass) throws InitializationError {
+        super(klass);
+        TimingHistory.configure(this, TimingHistory.order(TimingHistory.Order.DECLARED));
+        setScheduler(new EndpointScheduler(Endpoints.all()) {
+            protected void report(long wallMillis) {
+                ParallelRunner.this.report(wallMillis, workers());
+            }
+        });
+    }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return super.childrenInvoker(EndpointScheduler.notifier(notifier));
+    }
+
+    @Override
+    protected void runChild(FrameworkMethod method, RunNotifier notifier) {
+        long start = System.nanoTime();
+        try {
+            super.runChild(method, notifier);
+        } finally {
+            testNanos.addAndGet(System.nanoTime() - start);
+            tests.incrementAndGet();
+        }
+    }
+
+    private void report(long wallMillis, int workers) {
+        long testMillis = TimeUnit.NANOSECONDS.toMillis(testNanos.get());
+        double speedup = wallMillis == 0 ? 1 : (double) testMillis / wallMillis;
+        System.out.println(String.format("  %s: %d tests, %d at a time, in %d ms (%d ms of test time, %.2fx)",
+                getTestClass().getJavaClass().getSimpleName(), tests.get(), workers, wallMillis,
+                testMillis, speedup));
+    }
+}
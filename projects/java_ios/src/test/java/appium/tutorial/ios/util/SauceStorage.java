@@ -0,0 +1,230 @@
+package appium.tutorial.ios.util;
+
+import com.google.gson.Gson;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Uploads apps to Sauce storage at most once per run.
+ *
+ * The app is hashed once per run with MD5, the hash Sauce storage reports for its files. When
+ * storage already holds a file with the same name and hash the upload is skipped. Otherwise
+ * the file is streamed from a memory mapping with a fixed length, so it is never read onto the
+ * heap. Tests which need the same app at the same time wait for one upload.
+ *
+ * The REST API is https://saucelabs.com/rest/v1, or -Dsauce.rest=<url> to try uploads
+ * against {@link StandInServer#restUrl()}.
+ */
+public class SauceStorage {
+
+    private static final String SAUCE_REST = "https://saucelabs.com/rest/v1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // hashed a mapping at a time, so big files don't need one huge mapping
+    private static final long HASH_CHUNK = 64L * 1024 * 1024;
+
+    /** Hashes by file, path, size and modification time **/
+    private static final ConcurrentMap<String, FutureTask<String>> hashes = new ConcurrentHashMap<String, FutureTask<String>>();
+    /** Uploads by user, name and hash; a finished task is a file known to be in storage **/
+    private static final ConcurrentMap<String, FutureTask<String>> uploads = new ConcurrentHashMap<String, FutureTask<String>>();
+
+    private final String rest;
+    private final String user;
+    private final String authorization;
+
+    public SauceStorage(String user, String key) {
+        this(System.getProperty("sauce.rest", SAUCE_REST), user, key);
+    }
+
+    public SauceStorage(String rest, String user, String key) {
+        this.rest = rest.replaceAll("/$", "");
+        this.user = user;
+        this.authorization = "Basic " + Base64.encodeBase64String((user + ":" + key).getBytes(UTF8)).trim();
+    }
+
+    /**
+     * Make sure storage holds the file under the name, uploading it only if it doesn't.
+     * @return The MD5 of the file
+     */
+    public String upload(final File file, final String name) throws IOException {
+        final String md5 = once(hashes, file.getCanonicalPath() + ":" + file.length() + ":" + file.lastModified(),
+                new Callable<String>() {
+                    public String call() throws IOException {
+                        return md5(file);
+                    }
+                });
+
+        return once(uploads, user + "/" + name + "/" + md5, new Callable<String>() {
+            public String call() throws IOException {
+                if (md5.equals(storedMd5(name))) {
+                    System.out.println("  " + name + " is in Sauce storage already (md5 " + md5 + ")");
+                    return md5;
+                }
+                long start = System.currentTimeMillis();
+                String uploaded = put(file, name);
+                if (!md5.equals(uploaded)) {
+                    throw new IOException("Sauce storage has md5 " + uploaded + " for " + name + ", uploaded " + md5);
+                }
+                System.out.println("  uploaded " + name + " to Sauce storage, " + file.length() / 1024 + " KB in "
+                        + (System.currentTimeMillis() - start) + " ms");
+                return md5;
+            }
+        });
+    }
+
+    /**
+     * Run the task for a key once; callers with the same key wait for the running task.
+     * A failed task is forgotten, so the next caller tries again.
+     */
+    private static String once(ConcurrentMap<String, FutureTask<String>> tasks, String key, Callable<String> callable)
+            throws IOException {
+        FutureTask<String> task = tasks.get(key);
+        if (task == null) {
+            FutureTask<String> created = new FutureTask<String>(callable);
+            task = tasks.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + key);
+        } catch (ExecutionException e) {
+            tasks.remove(key, task);
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** The MD5 storage reports for the file, or null if there is no file with that name **/
+    @SuppressWarnings("unchecked")
+    private String storedMd5(String name) throws IOException {
+        HttpURLConnection connection = open(rest + "/storage/" + encode(user));
+        Map<String, Object> listing = new Gson().fromJson(read(connection), Map.class);
+        List<Map<String, Object>> files = (List<Map<String, Object>>) listing.get("files");
+        if (files != null) {
+            for (Map<String, Object> stored : files) {
+                if (name.equals(stored.get("name"))) {
+                    return (String) stored.get("md5");
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Stream the file to storage, returning the MD5 storage computed **/
+    @SuppressWarnings("unchecked")
+    private String put(File file, String name) throws IOException {
+        HttpURLConnection connection = open(rest + "/storage/" + encode(user) + "/" + encode(name) + "?overwrite=true");
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        connection.setDoOutput(true);
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            // no chunked encoding and no buffering of the whole body
+            connection.setFixedLengthStreamingMode(size);
+            OutputStream out = connection.getOutputStream();
+            try {
+                WritableByteChannel target = Channels.newChannel(out);
+                for (long sent = 0; sent < size; ) {
+                    sent += channel.transferTo(sent, size - sent, target);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        Map<String, Object> stored = new Gson().fromJson(read(connection), Map.class);
+        return (String) stored.get("md5");
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Authorization", authorization);
+        connection.setConnectTimeout(60 * 1000);
+        connection.setReadTimeout(10 * 60 * 1000);
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    body.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        String text = new String(body.toByteArray(), UTF8);
+        if (code >= 400) {
+            throw new IOException("Sauce storage answered " + code + " for " + connection.getURL() + ": " + text);
+        }
+        return text;
+    }
+
+    private static String encode(String segment) throws IOException {
+        return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+    }
+
+    /** MD5 of the file as hex, read through memory mappings **/
+    static String md5(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_CHUNK, size - position));
+                digest.update(chunk);
+            }
+        } finally {
+            in.close();
+        }
+        return String.format("%032x", new BigInteger(1, digest.digest()));
+    }
+}
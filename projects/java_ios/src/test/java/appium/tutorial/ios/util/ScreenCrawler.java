@@ -0,0 +1,495 @@
+package appium.tutorial.ios.util;
+
+import com.google.gson.GsonBuilder;
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Visits every screen reachable from the home screen, with several sessions at once.
+ *
+ * The work is a set of actions: go to a screen by a path of taps from home, then tap one more
+ * element. Every session has its own deque of actions. It takes the actions it found last,
+ * which are on the screen it is on, and when it runs out it steals the oldest action of another
+ * session, which is the fewest taps away from home. Screens are told apart by the fingerprint
+ * of their page source ({@link PageSnapshot#fingerprint()}), so a screen reached over several
+ * paths is explored once.
+ *
+ * The result is the graph of screens and the taps between them, with the time from a tap
+ * until the next screen showed up. A crawler crawls once.
+ */
+public class ScreenCrawler {
+
+    /** How the crawler finds the elements which may lead to another screen, and taps them **/
+    public interface Navigator {
+        /** The names of the elements on the screen to tap, in order **/
+        List<String> targets(PageSnapshot screen);
+
+        void tap(AppiumDriver driver, WaitEngine wait, String target);
+
+        void back(AppiumDriver driver);
+
+        /** Start over on the home screen, once a session lost track of where it is **/
+        void home(AppiumDriver driver);
+    }
+
+    /** Taps every table cell, like AutomatingASimpleActionTest.four() **/
+    public static final Navigator TABLE_CELLS = new Navigator() {
+        public List<String> targets(PageSnapshot screen) {
+            List<String> targets = new ArrayList<String>();
+            for (String name : screen.attributes(By.className("UIATableCell"), "name")) {
+                if (name != null && name.length() > 0 && !targets.contains(name)) {
+                    targets.add(name);
+                }
+            }
+            return targets;
+        }
+
+        public void tap(AppiumDriver driver, WaitEngine wait, String target) {
+            wait.find(MobileBy.AccessibilityId(target)).click();
+        }
+
+        public void back(AppiumDriver driver) {
+            driver.navigate().back();
+        }
+
+        public void home(AppiumDriver driver) {
+            driver.resetApp();
+        }
+    };
+
+    private static final String HOME = "home";
+    // how long an idle session waits before looking for work again
+    private static final long IDLE_MILLIS = 20;
+
+    private final Navigator navigator;
+    private final long settleMillis;
+
+    private final ConcurrentMap<String, Screen> screens = new ConcurrentHashMap<String, Screen>();
+    private final Queue<Edge> edges = new ConcurrentLinkedQueue<Edge>();
+    // actions queued or running; the crawl is done when there are none
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong actions = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+    private final AtomicLong replayedTaps = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private List<Worker> workers;
+    private long wallMillis;
+
+    /**
+     * @param settle How long a tap may take to show another screen. A tap which doesn't
+     *               change the screen within that time is taken to stay on it.
+     */
+    public ScreenCrawler(Navigator navigator, long settle, TimeUnit unit) {
+        this.navigator = navigator;
+        this.settleMillis = unit.toMillis(settle);
+    }
+
+    /** Crawl from the home screen, one worker thread per session. All sessions must be on home. **/
+    public void crawl(List<? extends AppiumDriver> sessions) throws InterruptedException {
+        if (workers != null) {
+            throw new IllegalStateException("A crawler crawls once");
+        }
+        long start = System.nanoTime();
+
+        workers = new ArrayList<Worker>();
+        for (AppiumDriver session : sessions) {
+            workers.add(new Worker(workers.size(), session));
+        }
+        workers.get(0).explore(new ArrayList<String>(), HOME);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "crawler-" + worker.index);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        wallMillis = millisSince(start);
+    }
+
+    /** The screens found, the ones closest to home first **/
+    public List<Screen> screens() {
+        List<Screen> sorted = new ArrayList<Screen>(screens.values());
+        Collections.sort(sorted, new Comparator<Screen>() {
+            public int compare(Screen a, Screen b) {
+                if (a.path.size() != b.path.size()) return a.path.size() - b.path.size();
+                return a.path.toString().compareTo(b.path.toString());
+            }
+        });
+        return sorted;
+    }
+
+    /** The taps which led from one screen to another **/
+    public List<Edge> edges() {
+        return new ArrayList<Edge>(edges);
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("  Crawled %d screens, %d transitions in %d ms with %d sessions: "
+                        + "%d taps, %d stolen, %d replayed taps, %d restarts, %d failed%n",
+                screens.size(), edges.size(), wallMillis, workers.size(), actions.get(), stolen.get(),
+                replayedTaps.get(), restarts.get(), failures.get()));
+        for (Screen screen : screens()) {
+            summary.append(String.format("    %-8s %-40s %3d targets, load ms %s%n", screen.id(),
+                    screen.name, screen.targets, screen.loadMillis));
+        }
+        return summary.toString();
+    }
+
+    /** Write the screen graph as JSON **/
+    public void write(File file) throws IOException {
+        List<Map<String, Object>> nodes = new ArrayList<Map<String, Object>>();
+        for (Screen screen : screens()) {
+            Map<String, Object> node = new LinkedHashMap<String, Object>();
+            node.put("id", screen.id());
+            node.put("name", screen.name);
+            node.put("path", screen.path);
+            node.put("targets", screen.targets);
+            node.put("stays", screen.stays.get());
+            Map<String, Object> loads = new LinkedHashMap<String, Object>();
+            loads.put("count", screen.loadMillis.count());
+            loads.put("mean", screen.loadMillis.mean());
+            loads.put("p50", screen.loadMillis.percentile(0.5));
+            loads.put("p90", screen.loadMillis.percentile(0.9));
+            loads.put("max", screen.loadMillis.max());
+            node.put("loadMillis", loads);
+            nodes.add(node);
+        }
+
+        List<Map<String, Object>> links = new ArrayList<Map<String, Object>>();
+        for (Edge edge : edges) {
+            Map<String, Object> link = new LinkedHashMap<String, Object>();
+            link.put("from", edge.from.id());
+            link.put("tap", edge.target);
+            link.put("to", edge.to.id());
+            link.put("millis", edge.millis);
+            links.add(link);
+        }
+
+        Map<String, Object> graph = new LinkedHashMap<String, Object>();
+        graph.put("screens", nodes);
+        graph.put("edges", links);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        Writer writer = new FileWriter(file);
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(graph, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** A screen, first reached by the path of taps from home **/
+    public static class Screen {
+        final String fingerprint;
+        final String name;
+        final List<String> path;
+        final Histogram loadMillis = new Histogram();
+        final AtomicInteger stays = new AtomicInteger();
+        volatile int targets;
+
+        Screen(String fingerprint, String name, List<String> path) {
+            this.fingerprint = fingerprint;
+            this.name = name;
+            this.path = Collections.unmodifiableList(new ArrayList<String>(path));
+        }
+
+        /** A short id, unique enough for one app **/
+        public String id() {
+            return fingerprint.substring(0, 8);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public List<String> path() {
+            return path;
+        }
+
+        /** Time from a tap until this screen showed up **/
+        public Histogram loadMillis() {
+            return loadMillis;
+        }
+    }
+
+    /** A tap which led from one screen to another **/
+    public static class Edge {
+        final Screen from;
+        final String target;
+        final Screen to;
+        final long millis;
+
+        Edge(Screen from, String target, Screen to, long millis) {
+            this.from = from;
+            this.target = target;
+            this.to = to;
+            this.millis = millis;
+        }
+
+        public String toString() {
+            return from.name + " -[" + target + "]-> " + to.name;
+        }
+    }
+
+    /** Tap the target on the screen **/
+    private static class Action {
+        final Screen from;
+        final String target;
+
+        Action(Screen from, String target) {
+            this.from = from;
+            this.target = target;
+        }
+
+        public String toString() {
+            return from.path + " tap " + target;
+        }
+    }
+
+    private class Worker implements Runnable {
+        final int index;
+        final AppiumDriver driver;
+        final WaitEngine wait;
+        final Deque<Action> queue = new ConcurrentLinkedDeque<Action>();
+
+        // the taps from home to the screen the session is on, or null when it lost track
+        List<String> at = new ArrayList<String>();
+        // the screen the session is known to be on, or null
+        Screen screen;
+
+        Worker(int index, AppiumDriver driver) {
+            this.index = index;
+            this.driver = driver;
+            this.wait = new WaitEngine(driver, settleMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            Action action;
+            while ((action = next()) != null) {
+                try {
+                    perform(action);
+                } catch (RuntimeException e) {
+                    // the crawl goes on without this tap
+                    failures.incrementAndGet();
+                    System.out.println("  crawl: " + action + " failed: "
+                            + String.valueOf(e.getMessage()).split("\n")[0]);
+                    at = null;
+                    screen = null;
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        }
+
+        /** Own work first, the newest; then the oldest work of another session **/
+        private Action next() {
+            while (true) {
+                Action action = queue.pollFirst();
+                if (action != null) return action;
+
+                for (int i = 1; i < workers.size(); i++) {
+                    action = workers.get((index + i) % workers.size()).queue.pollLast();
+                    if (action != null) {
+                        stolen.incrementAndGet();
+                        return action;
+                    }
+                }
+
+                // a session still tapping may find more screens
+                if (pending.get() == 0) return null;
+                try {
+                    Thread.sleep(IDLE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        private void perform(Action action) {
+            moveTo(action.from);
+            actions.incrementAndGet();
+
+            long start = System.nanoTime();
+            navigator.tap(driver, wait, action.target);
+            PageSnapshot after = changedFrom(action.from);
+            long millis = millisSince(start);
+            if (after == null) {
+                action.from.stays.incrementAndGet();
+                return;
+            }
+
+            at.add(action.target);
+            Screen reached = explore(at, action.target, after);
+            reached.loadMillis.record(millis);
+            edges.add(new Edge(action.from, action.target, reached, millis));
+        }
+
+        /** Record the screen the session is on, queueing its targets when it is new **/
+        Screen explore(List<String> path, String name) {
+            return explore(path, name, snapshot());
+        }
+
+        private Screen explore(List<String> path, String name, PageSnapshot snapshot) {
+            Screen found = new Screen(snapshot.fingerprint(), name, path);
+            Screen known = screens.putIfAbsent(found.fingerprint, found);
+            screen = known != null ? known : found;
+            if (known != null) return known;
+
+            List<String> targets = navigator.targets(snapshot);
+            found.targets = targets.size();
+            // the first target is taken first
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                pending.incrementAndGet();
+                queue.addFirst(new Action(found, targets.get(i)));
+            }
+            return found;
+        }
+
+        /** Get to the screen, backing up to the common part of the paths and tapping on from there **/
+        private void moveTo(Screen target) {
+            if (target == screen) return;
+
+            if (at != null) {
+                replay(target.path);
+                if (arrivedAt(target)) return;
+            }
+
+            restarts.incrementAndGet();
+            navigator.home(driver);
+            at = new ArrayList<String>();
+            replay(target.path);
+            if (!arrivedAt(target)) {
+                at = null;
+                screen = null;
+                throw new WebDriverException("Unable to get to " + target.name + " by " + target.path);
+            }
+        }
+
+        private void replay(List<String> path) {
+            int common = 0;
+            while (common < at.size() && common < path.size() && at.get(common).equals(path.get(common))) {
+                common++;
+            }
+            for (int i = at.size(); i > common; i--) {
+                navigator.back(driver);
+            }
+            for (String tap : path.subList(common, path.size())) {
+                navigator.tap(driver, wait, tap);
+                replayedTaps.incrementAndGet();
+            }
+            at = new ArrayList<String>(path);
+        }
+
+        private boolean arrivedAt(final Screen target) {
+            try {
+                wait.until("crawl: arrive at " + target.name, new ExpectedCondition<Boolean>() {
+                    public Boolean apply(WebDriver webDriver) {
+                        return target.fingerprint.equals(snapshot().fingerprint());
+                    }
+                });
+            } catch (TimeoutException e) {
+                return false;
+            }
+            screen = target;
+            return true;
+        }
+
+        /** The screen after a tap, or null if it is still the same one after the settle time **/
+        private PageSnapshot changedFrom(final Screen before) {
+            try {
+                return wait.until("crawl: leave " + before.name, new ExpectedCondition<PageSnapshot>() {
+                    public PageSnapshot apply(WebDriver webDriver) {
+                        PageSnapshot current = snapshot();
+                        return before.fingerprint.equals(current.fingerprint()) ? null : current;
+                    }
+                });
+            } catch (TimeoutException e) {
+                return null;
+            }
+        }
+
+        private PageSnapshot snapshot() {
+            return PageSnapshot.parse(driver.getPageSource(), 0);
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Crawl the app with one session per endpoint (see {@link Endpoints}) and write the screen
+     * graph to target/crawl.json, or -Dcrawl.out=<file>. -Dcrawl.settleMillis is how long a tap
+     * may take to show another screen, 3000 by default.
+     */
+    public static void main(String[] args) throws Exception {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("appium-version", "1.1.0");
+        capabilities.setCapability("platformVersion", "7.1");
+        capabilities.setCapability("platformName", "ios");
+        capabilities.setCapability("deviceName", "iPhone Simulator");
+        capabilities.setCapability("name", "Java iOS tutorial crawl");
+        capabilities.setCapability("app",
+                Paths.get(System.getProperty("user.dir"), "UICatalog6.1.app.zip").toAbsolutePath().toString());
+
+        List<AppiumDriver> sessions = new ArrayList<AppiumDriver>();
+        try {
+            for (URL endpoint : Endpoints.all()) {
+                sessions.add(new InstrumentedDriver(endpoint, capabilities));
+            }
+
+            ScreenCrawler crawler = new ScreenCrawler(TABLE_CELLS, Long.getLong("crawl.settleMillis", 3000),
+                    TimeUnit.MILLISECONDS);
+            crawler.crawl(sessions);
+            System.out.print(crawler.summary());
+
+            File out = new File(System.getProperty("crawl.out", "target/crawl.json"));
+            crawler.write(out);
+            System.out.println("  screen graph written to " + out);
+        } finally {
+            for (AppiumDriver session : sessions) {
+                session.quit();
+            }
+        }
+        // a stand-in server would keep the JVM running
+        System.exit(0);
+    }
+}
@@ -0,0 +1,117 @@
+package appium.tutorial.ios.util;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A screen served without a device, built from a page source.
+ *
+ * Finds are answered the way UIAutomation would answer them, by evaluating the locator on the
+ * page source with {@link PageSnapshot}. Every element found gets an id which stays the same
+ * for the life of the model, so elements can be read back by id like remote elements.
+ *
+ * A model is not thread safe; use one per session.
+ */
+public class ScreenModel {
+
+    private final String pageSource;
+    private final PageSnapshot snapshot;
+    private final String idPrefix;
+
+    private final Map<Element, String> ids = new IdentityHashMap<Element, String>();
+    private final Map<String, Element> elements = new HashMap<String, Element>();
+
+    private ScreenModel(String pageSource, String idPrefix) {
+        this.pageSource = pageSource;
+        this.snapshot = PageSnapshot.parse(pageSource, 0);
+        this.idPrefix = idPrefix;
+    }
+
+    /** Build a screen from page source **/
+    public static ScreenModel parse(String pageSource) {
+        return new ScreenModel(pageSource, "");
+    }
+
+    /**
+     * Build a screen whose element ids start with a prefix, so ids of elements on a screen
+     * which has been left are stale instead of naming elements on the new one.
+     */
+    public static ScreenModel parse(String pageSource, String idPrefix) {
+        return new ScreenModel(pageSource, idPrefix);
+    }
+
+    /** The page source, as getPageSource returns it **/
+    public String pageSource() {
+        return pageSource;
+    }
+
+    /**
+     * Return the ids of the elements matching a locator, in document order.
+     * @param using The strategy as sent over the wire, e.g. "xpath" or "accessibility id"
+     */
+    public List<String> find(String using, String value) {
+        List<Element> found = snapshot.findAll(locator(using, value));
+        List<String> foundIds = new ArrayList<String>(found.size());
+        for (Element element : found) {
+            foundIds.add(id(element));
+        }
+        return foundIds;
+    }
+
+    /** The attribute of an element, as getAttribute returns it **/
+    public String attribute(String id, String attribute) {
+        Element element = element(id);
+        return element.hasAttribute(attribute) ? element.getAttribute(attribute) : null;
+    }
+
+    /** The text of an element: its value, or its name when it has none **/
+    public String text(String id) {
+        Element element = element(id);
+        String value = element.getAttribute("value");
+        return value.length() > 0 ? value : element.getAttribute("name");
+    }
+
+    public boolean displayed(String id) {
+        return "true".equals(element(id).getAttribute("visible"));
+    }
+
+    public String tagName(String id) {
+        return element(id).getTagName();
+    }
+
+    /** Translate a wire strategy to a locator the snapshot can evaluate **/
+    private static By locator(String using, String value) {
+        if ("xpath".equals(using)) return By.xpath(value);
+        if ("class name".equals(using)) return By.className(value);
+        if ("accessibility id".equals(using)) return MobileBy.AccessibilityId(value);
+        if ("name".equals(using)) return By.name(value);
+        throw new InvalidSelectorException("Strategy isn't supported without a device: " + using);
+    }
+
+    private String id(Element element) {
+        String id = ids.get(element);
+        if (id == null) {
+            id = idPrefix + (ids.size() + 1);
+            ids.put(element, id);
+            elements.put(id, element);
+        }
+        return id;
+    }
+
+    private Element element(String id) {
+        Element element = elements.get(id);
+        if (element == null) {
+            throw new StaleElementReferenceException("No element with id " + id + " on this screen");
+        }
+        return element;
+    }
+}
@@ -0,0 +1,197 @@
+package appium.tutorial.ios.util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Answers the driver commands of one session from a {@link ScreenScript} instead of a device.
+ *
+ * Every command takes the configured latency plus a random jitter, so code on top of the
+ * driver can be measured as if a server were answering. Finds, attributes, text, visibility
+ * and page source come from the current screen, a screenshot is an image in a color of its
+ * own for every screen. Clicking an element may open another screen
+ * of the script, back returns to the previous one and resetting the app returns home.
+ * Other commands succeed without changing anything.
+ */
+public class ScriptedExecutor implements CommandExecutor {
+
+    private static final ErrorCodes errorCodes = new ErrorCodes();
+    private static final int SCREENSHOT_WIDTH = 320;
+    private static final int SCREENSHOT_HEIGHT = 480;
+
+    private final ScreenScript script;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Random random = new Random();
+
+    // screens opened so far, the current one last
+    private final LinkedList<String> history = new LinkedList<String>();
+    // base64 PNGs by screen
+    private final Map<String, String> screenshots = new HashMap<String, String>();
+    private ScreenModel screen;
+    private int visits;
+
+    public ScriptedExecutor(ScreenScript script, long latency, TimeUnit unit) {
+        this(script, latency, 0, unit);
+    }
+
+    public ScriptedExecutor(ScreenScript script, long latency, long jitter, TimeUnit unit) {
+        this.script = script;
+        this.latencyNanos = unit.toNanos(latency);
+        this.jitterNanos = unit.toNanos(jitter);
+        open(ScreenScript.HOME);
+    }
+
+    public Response execute(Command command) {
+        long delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0);
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+
+        Response response = new Response(command.getSessionId());
+        try {
+            // a session answers one command at a time, like a device
+            synchronized (this) {
+                response.setValue(answer(command.getName(), command.getParameters()));
+            }
+            response.setStatus(ErrorCodes.SUCCESS);
+        } catch (WebDriverException e) {
+            Map<String, Object> error = new HashMap<String, Object>();
+            error.put("message", e.getMessage());
+            response.setValue(error);
+            response.setStatus(errorCodes.toStatusCode(e));
+        }
+        return response;
+    }
+
+    /** The screen the session is on **/
+    public synchronized String currentScreen() {
+        return history.getLast();
+    }
+
+    private Object answer(String name, Map<String, ?> parameters) {
+        if (DriverCommand.FIND_ELEMENT.equals(name) || DriverCommand.FIND_CHILD_ELEMENT.equals(name)) {
+            List<String> ids = find(parameters);
+            if (ids.isEmpty()) {
+                throw new NoSuchElementException("No element found using " + parameters.get("using") + ": "
+                        + parameters.get("value"));
+            }
+            return element(ids.get(0));
+        }
+        if (DriverCommand.FIND_ELEMENTS.equals(name) || DriverCommand.FIND_CHILD_ELEMENTS.equals(name)) {
+            List<Map<String, String>> elements = new ArrayList<Map<String, String>>();
+            for (String id : find(parameters)) {
+                elements.add(element(id));
+            }
+            return elements;
+        }
+        if (DriverCommand.GET_ELEMENT_ATTRIBUTE.equals(name)) {
+            return screen.attribute(id(parameters), String.valueOf(parameters.get("name")));
+        }
+        if (DriverCommand.GET_ELEMENT_TEXT.equals(name)) {
+            return screen.text(id(parameters));
+        }
+        if (DriverCommand.IS_ELEMENT_DISPLAYED.equals(name)) {
+            return screen.displayed(id(parameters));
+        }
+        if (DriverCommand.GET_ELEMENT_TAG_NAME.equals(name)) {
+            return screen.tagName(id(parameters));
+        }
+        if (DriverCommand.GET_PAGE_SOURCE.equals(name)) {
+            return screen.pageSource();
+        }
+        if (DriverCommand.SCREENSHOT.equals(name)) {
+            return screenshot(history.getLast());
+        }
+        if (DriverCommand.CLICK_ELEMENT.equals(name)) {
+            String target = script.target(screen.attribute(id(parameters), "name"));
+            if (target != null && !target.equals(history.getLast())) {
+                open(target);
+            }
+            return null;
+        }
+        if (DriverCommand.GO_BACK.equals(name)) {
+            if (history.size() > 1) {
+                history.removeLast();
+                show(history.getLast());
+            }
+            return null;
+        }
+        if ("reset".equals(name)) {
+            history.clear();
+            open(ScreenScript.HOME);
+            return null;
+        }
+        if (DriverCommand.GET_CURRENT_CONTEXT_HANDLE.equals(name)) {
+            return "NATIVE_APP";
+        }
+        return null;
+    }
+
+    private void open(String screenName) {
+        history.add(screenName);
+        show(screenName);
+    }
+
+    // every visit gets new element ids, elements of a screen which was left are stale
+    private void show(String screenName) {
+        screen = ScreenModel.parse(script.source(screenName), (++visits) + ".");
+    }
+
+    private String screenshot(String screenName) {
+        String png = screenshots.get(screenName);
+        if (png == null) {
+            BufferedImage image = new BufferedImage(SCREENSHOT_WIDTH, SCREENSHOT_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(new Color(screenName.hashCode() & 0xffffff));
+            graphics.fillRect(0, 0, SCREENSHOT_WIDTH, SCREENSHOT_HEIGHT);
+            graphics.dispose();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                ImageIO.write(image, "png", bytes);
+            } catch (IOException e) {
+                throw new WebDriverException("Unable to draw a screenshot of " + screenName, e);
+            }
+            png = Base64.encodeBase64String(bytes.toByteArray());
+            screenshots.put(screenName, png);
+        }
+        return png;
+    }
+
+    // child finds search the whole screen; the tutorial only searches from the root
+    private List<String> find(Map<String, ?> parameters) {
+        return screen.find(String.valueOf(parameters.get("using")), String.valueOf(parameters.get("value")));
+    }
+
+    private static String id(Map<String, ?> parameters) {
+        return String.valueOf(parameters.get("id"));
+    }
+
+    private static Map<String, String> element(String id) {
+        Map<String, String> element = new HashMap<String, String>();
+        element.put("ELEMENT", id);
+        return element;
+    }
+}
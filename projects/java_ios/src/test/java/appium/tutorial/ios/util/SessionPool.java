@@ -0,0 +1,215 @@
+package appium.tutorial.ios.util;
+
+import io.appium.java_client.AppiumDriver;
+import org.openqa.selenium.Capabilities;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps Appium sessions alive between test methods.
+ *
+ * Creating a session installs and launches the app, which is most of the time a test takes.
+ * Instead of quitting the driver in tearDown, the test gives it back to the pool and the next
+ * test with the same server and capabilities leases it again. The app is reset before a session
+ * is handed out a second time, so every test still starts on the home screen.
+ *
+ * Sessions are evicted when they fail the health check, are older than the maximum age or have
+ * been leased too many times. Idle sessions are quit when the JVM exits.
+ */
+public class SessionPool<D extends AppiumDriver> {
+
+    /** Creates a new session when the pool has no idle one to hand out **/
+    public interface Factory<D extends AppiumDriver> {
+        D create(URL server, Capabilities capabilities) throws Exception;
+    }
+
+    /** Capabilities that only label the job and don't change the session **/
+    private static final String NAME_KEY = "name";
+
+    private final Factory<D> factory;
+    private final long maxAgeMillis;
+    private final int maxLeases;
+
+    private final Map<String, LinkedList<Session<D>>> idle = new HashMap<String, LinkedList<Session<D>>>();
+    private final Map<D, Session<D>> leased = new HashMap<D, Session<D>>();
+
+    private final AtomicLong coldStarts = new AtomicLong();
+    private final AtomicLong coldStartMillis = new AtomicLong();
+    private final AtomicLong warmLeases = new AtomicLong();
+    private final AtomicLong warmLeaseMillis = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SessionPool(Factory<D> factory, long maxAge, TimeUnit maxAgeUnit, int maxLeases) {
+        this.factory = factory;
+        this.maxAgeMillis = maxAgeUnit.toMillis(maxAge);
+        this.maxLeases = maxLeases;
+
+        Runtime.getRuntime().addShutdownHook(new Thread("session-pool-shutdown") {
+            public void run() {
+                shutdown();
+            }
+        });
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return coldStarts.get() + warmLeases.get() > 0 ? SessionPool.this.summary() : null;
+            }
+        });
+    }
+
+    /**
+     * Return a session for the server and capabilities. An idle session is reset and reused when
+     * one is healthy, otherwise a new session is created.
+     */
+    public D lease(URL server, Capabilities capabilities) throws Exception {
+        String key = key(server, capabilities);
+        long start = System.nanoTime();
+
+        Session<D> session;
+        while ((session = poll(key)) != null) {
+            if (reusable(session)) {
+                session.leases++;
+                synchronized (this) {
+                    leased.put(session.driver, session);
+                }
+                warmLeases.incrementAndGet();
+                warmLeaseMillis.addAndGet(millisSince(start));
+                return session.driver;
+            }
+            evict(session);
+        }
+
+        D driver = factory.create(server, capabilities);
+        coldStarts.incrementAndGet();
+        coldStartMillis.addAndGet(millisSince(start));
+
+        session = new Session<D>(key, driver);
+        session.leases++;
+        synchronized (this) {
+            leased.put(driver, session);
+        }
+        return driver;
+    }
+
+    /** Give a leased session back so the next test can reuse it **/
+    public void release(D driver) {
+        Session<D> session;
+        synchronized (this) {
+            session = leased.remove(driver);
+            if (session != null) {
+                LinkedList<Session<D>> sessions = idle.get(session.key);
+                if (sessions == null) {
+                    sessions = new LinkedList<Session<D>>();
+                    idle.put(session.key, sessions);
+                }
+                sessions.addFirst(session);
+                return;
+            }
+        }
+        // not from this pool
+        driver.quit();
+    }
+
+    /** Quit a leased session instead of returning it, e.g. when it is known to be broken **/
+    public void discard(D driver) {
+        Session<D> session;
+        synchronized (this) {
+            session = leased.remove(driver);
+        }
+        if (session != null) {
+            evict(session);
+        } else {
+            driver.quit();
+        }
+    }
+
+    /** Quit all idle sessions **/
+    public void shutdown() {
+        List<Session<D>> sessions = new ArrayList<Session<D>>();
+        synchronized (this) {
+            for (LinkedList<Session<D>> list : idle.values()) {
+                sessions.addAll(list);
+            }
+            idle.clear();
+        }
+        for (Session<D> session : sessions) {
+            quietQuit(session.driver);
+        }
+    }
+
+    /** Cold start versus warm lease times for this run **/
+    public String summary() {
+        return "Session pool: " + coldStarts.get() + " cold starts (avg "
+                + average(coldStartMillis.get(), coldStarts.get()) + " ms), "
+                + warmLeases.get() + " warm leases (avg "
+                + average(warmLeaseMillis.get(), warmLeases.get()) + " ms), "
+                + evictions.get() + " evicted";
+    }
+
+    private synchronized Session<D> poll(String key) {
+        LinkedList<Session<D>> sessions = idle.get(key);
+        return sessions == null ? null : sessions.poll();
+    }
+
+    /** Check age, lease count and health, then reset the app for the new lease **/
+    private boolean reusable(Session<D> session) {
+        if (System.currentTimeMillis() - session.created > maxAgeMillis) return false;
+        if (session.leases >= maxLeases) return false;
+
+        try {
+            // cheap round trip which fails when the server dropped the session
+            session.driver.getContext();
+            session.driver.resetApp();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void evict(Session<D> session) {
+        evictions.incrementAndGet();
+        quietQuit(session.driver);
+    }
+
+    private static void quietQuit(AppiumDriver driver) {
+        try {
+            driver.quit();
+        } catch (RuntimeException ignored) {
+            // the session is gone already
+        }
+    }
+
+    /** Sessions are interchangeable when server and capabilities match, job name excluded **/
+    private static String key(URL server, Capabilities capabilities) {
+        Map<String, Object> sorted = new TreeMap<String, Object>(capabilities.asMap());
+        sorted.remove(NAME_KEY);
+        return server + " " + sorted;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static long average(long total, long count) {
+        return count == 0 ? 0 : total / count;
+    }
+
+    private static class Session<D> {
+        final String key;
+        final D driver;
+        final long created = System.currentTimeMillis();
+        int leases;
+
+        Session(String key, D driver) {
+            this.key = key;
+            this.driver = driver;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package appium.tutorial.ios.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * What the helpers counted during the run, printed once when the JVM exits with -Dstats=true.
+ *
+ * The session pool, the locator and element caches, the waits, the stand-in server and the other
+ * helpers keep their own counters and register a summary here. Without -Dstats=true nothing is
+ * printed, so a plain run shows the test output only.
+ */
+public abstract class Stats {
+
+    /** The stats of one helper **/
+    public interface Summary {
+        /** The lines to print, or null when the helper wasn't used in this run **/
+        String summary();
+    }
+
+    private static final boolean enabled = Boolean.getBoolean("stats");
+    private static final List<Summary> summaries = new CopyOnWriteArrayList<Summary>();
+
+    static {
+        if (enabled) {
+            Runtime.getRuntime().addShutdownHook(new Thread("stats") {
+                public void run() {
+                    for (Summary summary : summaries) {
+                        String lines = summary.summary();
+                        if (lines != null) System.out.println(lines);
+                    }
+                }
+            });
+        }
+    }
+
+    /** True with -Dstats=true **/
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    /** Print the summary when the JVM exits, in the order the summaries were registered **/
+    public static void register(Summary summary) {
+        if (enabled) summaries.add(summary);
+    }
+}
@@ -0,0 +1,205 @@
+package appium.tutorial.ios.util;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openqa.selenium.ElementNotVisibleException;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries a failed step of a test from the last checkpoint, in the same session.
+ *
+ * Without it a wait that times out once fails the test, and running it again means a new
+ * session, installing the app and every step before the failed one again. A test marks screens
+ * it can be brought back to as checkpoints, e.g. {@link appium.tutorial.ios.page.HomePage#loaded()}
+ * marks "on HomePage", and wraps steps which may fail transiently in {@link #step(String, Step)}.
+ * When such a step fails because an element wasn't found, wasn't visible or went stale, or a wait
+ * timed out, the app is brought back to the checkpoint by going back, at most -Dsteps.maxBacks
+ * times (5), then by resetting the app, and the step runs again. After each of these the checkpoint
+ * gets -Dsteps.settleMillis (2000) to show. A test has -Dsteps.retries retries (2 by default);
+ * other errors and failures without a checkpoint fail the test as before.
+ *
+ * Steps, retries and an estimate of the time saved are printed when the JVM exits with
+ * -Dstats=true: a retry saves the time from the start of the test, session start included, to the
+ * failed step, less the time it took to get back to the checkpoint.
+ */
+public class Steps implements TestRule {
+
+    /** A step of a test **/
+    public interface Step<T> {
+        T run() throws Exception;
+    }
+
+    /** A screen the app can be brought back to **/
+    public interface Checkpoint {
+        /** True if the app shows the screen now **/
+        boolean reached();
+    }
+
+    /** How the app is brought back to a checkpoint **/
+    public interface Navigation {
+        void back();
+
+        void resetApp();
+    }
+
+    private static final int RETRIES = Integer.getInteger("steps.retries", 2);
+    private static final int MAX_BACKS = Integer.getInteger("steps.maxBacks", 5);
+    private static final long SETTLE_MILLIS = Long.getLong("steps.settleMillis", 2000);
+    private static final long POLL_MILLIS = 100;
+
+    private static final AtomicLong steps = new AtomicLong();
+    private static final AtomicLong retries = new AtomicLong();
+    // steps which passed once retried
+    private static final AtomicLong recovered = new AtomicLong();
+    private static final AtomicLong notRestored = new AtomicLong();
+    private static final AtomicLong outOfBudget = new AtomicLong();
+    private static final AtomicLong savedNanos = new AtomicLong();
+    private static final AtomicLong restoreNanos = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return retries.get() + outOfBudget.get() > 0 ? Steps.summary() : null;
+            }
+        });
+    }
+
+    private static final ThreadLocal<Steps> current = new ThreadLocal<Steps>();
+
+    private final Navigation navigation;
+    private long testStart;
+    private int retriesLeft;
+    private String checkpointName;
+    private Checkpoint checkpoint;
+
+    public Steps(Navigation navigation) {
+        this.navigation = navigation;
+    }
+
+    public Statement apply(final Statement base, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                testStart = System.nanoTime();
+                retriesLeft = RETRIES;
+                checkpointName = null;
+                checkpoint = null;
+                current.set(Steps.this);
+                try {
+                    base.evaluate();
+                } finally {
+                    current.remove();
+                }
+            }
+        };
+    }
+
+    /** Mark the screen the app shows as the checkpoint failed steps are retried from **/
+    public static void checkpoint(String name, Checkpoint checkpoint) {
+        Steps steps = current.get();
+        if (steps != null) {
+            steps.checkpointName = name;
+            steps.checkpoint = checkpoint;
+        }
+    }
+
+    /**
+     * Run a step of the test on the current thread. After a transient failure the app is brought
+     * back to the last checkpoint and the step runs again, while the test has retries left.
+     */
+    public static <T> T step(String name, Step<T> step) throws Exception {
+        Steps steps = current.get();
+        if (steps == null) return step.run();
+        return steps.run(name, step);
+    }
+
+    private <T> T run(String name, Step<T> step) throws Exception {
+        steps.incrementAndGet();
+        long saved = 0;
+        boolean retried = false;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                T result = step.run();
+                if (retried) {
+                    recovered.incrementAndGet();
+                    savedNanos.addAndGet(saved);
+                }
+                return result;
+            } catch (WebDriverException e) {
+                if (!isTransient(e) || checkpoint == null) throw e;
+                if (retriesLeft == 0) {
+                    outOfBudget.incrementAndGet();
+                    e.addInfo("step", name + ", no retries left");
+                    throw e;
+                }
+                retriesLeft--;
+                retries.incrementAndGet();
+                retried = true;
+
+                long restoreStart = System.nanoTime();
+                boolean restored = restore();
+                long restoring = System.nanoTime() - restoreStart;
+                restoreNanos.addAndGet(restoring);
+                if (!restored) {
+                    notRestored.incrementAndGet();
+                    e.addInfo("step", name + ", unable to get back to " + checkpointName);
+                    throw e;
+                }
+                // running the test again would repeat everything up to this step
+                saved += Math.max(0, start - testStart - restoring);
+            }
+        }
+    }
+
+    private static boolean isTransient(WebDriverException e) {
+        return e instanceof TimeoutException || e instanceof NotFoundException
+                || e instanceof StaleElementReferenceException || e instanceof ElementNotVisibleException;
+    }
+
+    /** Go back until the checkpoint shows, and reset the app if it doesn't **/
+    private boolean restore() {
+        try {
+            if (checkpoint.reached()) return true;
+            for (int backs = 0; backs < MAX_BACKS; backs++) {
+                navigation.back();
+                if (settled()) return true;
+            }
+            navigation.resetApp();
+            return settled();
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    /** Wait for the checkpoint to show while the screen changes **/
+    private boolean settled() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+        while (!checkpoint.reached()) {
+            if (System.nanoTime() >= deadline) return false;
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Steps run, retries and the time they saved so far **/
+    public static String summary() {
+        return String.format("Steps: %d run, %d retries from a checkpoint, %d steps passed once retried, "
+                + "%d times not brought back, %d out of retries; about %d ms of running tests again saved, "
+                + "%d ms spent getting back",
+                steps.get(), retries.get(), recovered.get(), notRestored.get(), outOfBudget.get(),
+                TimeUnit.NANOSECONDS.toMillis(savedNanos.get()), TimeUnit.NANOSECONDS.toMillis(restoreNanos.get()));
+    }
+}
@@ -0,0 +1,80 @@
+package appium.tutorial.ios.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A device configuration to run tests on, a platform version and a device name.
+ *
+ * The matrix of targets is configured with
+ * -Dmatrix=7.1/iPhone Simulator,7.1/iPad Simulator
+ * and is the one configuration the tutorial was written for by default. {@link MatrixSuite}
+ * binds every test it runs to a target; tests run any other way use the first one.
+ */
+public class Target {
+
+    public static final String DEFAULT = "7.1/iPhone Simulator";
+
+    private static final List<Target> matrix = parse(System.getProperty("matrix", DEFAULT));
+
+    private static final ThreadLocal<Target> bound = new ThreadLocal<Target>();
+
+    private final String platformVersion;
+    private final String deviceName;
+
+    public Target(String platformVersion, String deviceName) {
+        this.platformVersion = platformVersion;
+        this.deviceName = deviceName;
+    }
+
+    /** All configured targets **/
+    public static List<Target> matrix() {
+        return matrix;
+    }
+
+    /** The target bound to the current thread, or the first configured one **/
+    public static Target current() {
+        Target target = bound.get();
+        return target != null ? target : matrix.get(0);
+    }
+
+    /** Bind the current thread to a target, null to unbind it **/
+    static void bind(Target target) {
+        if (target == null) {
+            bound.remove();
+        } else {
+            bound.set(target);
+        }
+    }
+
+    public String platformVersion() {
+        return platformVersion;
+    }
+
+    public String deviceName() {
+        return deviceName;
+    }
+
+    @Override
+    public String toString() {
+        return platformVersion + " " + deviceName;
+    }
+
+    private static List<Target> parse(String value) {
+        List<Target> targets = new ArrayList<Target>();
+        for (String target : value.split(",")) {
+            target = target.trim();
+            if (target.length() == 0) continue;
+            int slash = target.indexOf('/');
+            if (slash <= 0 || slash == target.length() - 1) {
+                throw new IllegalArgumentException("Invalid target, expected <platform version>/<device name>: " + target);
+            }
+            targets.add(new Target(target.substring(0, slash).trim(), target.substring(slash + 1).trim()));
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No target configured");
+        }
+        return Collections.unmodifiableList(targets);
+    }
+}
@@ -0,0 +1,140 @@
+package appium.tutorial.ios.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyHistoryKnowsNothing() throws IOException {
+        TimingHistory history = TimingHistory.load(folder.getRoot(), 0, 1);
+        assertEquals(-1, history.expectedMillis("Test.one[device]"));
+        assertFalse(history.failedLast("Test.one[device]"));
+    }
+
+    @Test
+    public void runsAreFoldedIntoAMovingAverage() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.one[device]", 100, true);
+        TimingHistory.record(directory, "Test.one[device]", 200, false);
+        TimingHistory.record(directory, "Test.two[device]", 50, true);
+
+        TimingHistory history = TimingHistory.load(directory, 0, 1);
+        // the first run sets the average, the next one weighs 0.3
+        assertEquals(130, history.expectedMillis("Test.one[device]"));
+        assertEquals(50, history.expectedMillis("Test.two[device]"));
+        assertTrue(history.failedLast("Test.one[device]"));
+        assertFalse(history.failedLast("Test.two[device]"));
+    }
+
+    @Test
+    public void loadingCompactsTheLog() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.one[device]", 100, true);
+        assertTrue(log(directory).length() > 0);
+
+        TimingHistory.load(directory, 0, 1);
+        assertEquals(0, log(directory).length());
+        assertTrue(new File(directory, "tests.bin").isFile());
+
+        // read back from tests.bin alone, then with the next run from the log
+        assertEquals(100, TimingHistory.load(directory, 0, 1).expectedMillis("Test.one[device]"));
+        TimingHistory.record(directory, "Test.one[device]", 200, true);
+        assertEquals(130, TimingHistory.load(directory, 0, 1).expectedMillis("Test.one[device]"));
+    }
+
+    @Test
+    public void shardsDontCompact() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.one[device]", 100, true);
+        long written = log(directory).length();
+
+        TimingHistory history = TimingHistory.load(directory, 0, 2);
+        assertEquals(100, history.expectedMillis("Test.one[device]"));
+        assertEquals(written, log(directory).length());
+        assertFalse(new File(directory, "tests.bin").exists());
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.one[device]", 100, true);
+        // a run killed while writing: the key and the time, without the duration and outcome
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(log(directory), true));
+        try {
+            out.writeUTF("Test.torn[device]");
+            out.writeLong(System.currentTimeMillis());
+        } finally {
+            out.close();
+        }
+
+        TimingHistory history = TimingHistory.load(directory, 0, 1);
+        assertEquals(100, history.expectedMillis("Test.one[device]"));
+        assertEquals(-1, history.expectedMillis("Test.torn[device]"));
+        assertEquals(0, log(directory).length());
+    }
+
+    @Test
+    public void otherTargetsStandInForANewOne() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.one[phone]", 100, true);
+        TimingHistory.record(directory, "Test.one[tablet]", 300, true);
+
+        TimingHistory history = TimingHistory.load(directory, 0, 1);
+        assertEquals(200, history.expectedMillis("Test.one[emulator]"));
+    }
+
+    @Test
+    public void shardsAreBalancedLongestFirst() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.a[device]", 1000, true);
+        TimingHistory.record(directory, "Test.b[device]", 600, true);
+        TimingHistory.record(directory, "Test.c[device]", 500, true);
+        TimingHistory.record(directory, "Test.d[device]", 100, true);
+        TimingHistory.load(directory, 0, 1);
+
+        TimingHistory first = TimingHistory.load(directory, 0, 2);
+        TimingHistory second = TimingHistory.load(directory, 1, 2);
+        String[] keys = {"Test.a[device]", "Test.b[device]", "Test.c[device]", "Test.d[device]", "Test.new[device]"};
+        for (String key : keys) {
+            assertEquals(key, first.shardOf(key), second.shardOf(key));
+        }
+        // a: 1000, then b and c: 600 + 500, then d onto the lighter shard
+        assertEquals(0, first.shardOf("Test.a[device]"));
+        assertEquals(1, first.shardOf("Test.b[device]"));
+        assertEquals(1, first.shardOf("Test.c[device]"));
+        assertEquals(0, first.shardOf("Test.d[device]"));
+        assertEquals(("Test.new[device]".hashCode() & Integer.MAX_VALUE) % 2, first.shardOf("Test.new[device]"));
+    }
+
+    @Test
+    public void shardsIgnoreTheLog() throws IOException {
+        File directory = folder.getRoot();
+        TimingHistory.record(directory, "Test.a[device]", 1000, true);
+        TimingHistory.record(directory, "Test.b[device]", 600, true);
+        TimingHistory.load(directory, 0, 1);
+
+        // a run of b in one shard mustn't move it in a shard loading later
+        TimingHistory.record(directory, "Test.b[device]", 100000, true);
+        TimingHistory history = TimingHistory.load(directory, 0, 2);
+        assertEquals(0, history.shardOf("Test.a[device]"));
+        assertEquals(1, history.shardOf("Test.b[device]"));
+    }
+
+    private static File log(File directory) {
+        return new File(directory, "runs.log");
+    }
+}
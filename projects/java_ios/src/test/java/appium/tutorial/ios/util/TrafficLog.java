@@ -0,0 +1,353 @@
+package appium.tutorial.ios.util;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.BeanToJsonConverter;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.JsonToBeanConverter;
+import org.openqa.selenium.remote.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the driver traffic of every test, and replays it without a device.
+ *
+ * Device timings vary more from run to run than the helpers change between commits, so their
+ * cost can't be compared on a device. With -Dtraffic=record every command of a session and the
+ * response it got are written to traffic/<test>.bin (-Dtraffic.dir), and with -Dtraffic=replay the
+ * sessions are answered from there instead of by a server: no device, no network, and the same
+ * responses every run. Responses come back at once, or after the time they took when recorded
+ * with -Dtraffic.latency=original. The command count and the CPU time of every test, see
+ * {@link CommandStats}, can then be compared between commits.
+ *
+ * A log is a gzipped stream of commands: name, parameters, session id, status, value and
+ * round trip time. Strings are written once and referred to by number after that, so a page
+ * source polled many times costs its size once.
+ *
+ * A replayed command gets the response of the next recorded command with the same name and
+ * parameters, a new session the next recorded one. Recorded commands the helpers no longer send are skipped, and a command sent
+ * again without one recorded ahead, e.g. one more poll of the same screen, gets the latest
+ * response to it. A command never recorded fails, since there is no response for it.
+ */
+public class TrafficLog {
+
+    private static final int MAGIC = 0x54524631;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String mode = System.getProperty("traffic");
+    private static final File directory = new File(System.getProperty("traffic.dir", "traffic"));
+    private static final boolean originalLatency = "original".equals(System.getProperty("traffic.latency"));
+
+    private static final AtomicLong recorded = new AtomicLong();
+    private static final AtomicLong recordedBytes = new AtomicLong();
+    private static final AtomicLong replayed = new AtomicLong();
+    private static final AtomicLong repeated = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return recorded.get() + replayed.get() + repeated.get() > 0 ? TrafficLog.summary() : null;
+            }
+        });
+    }
+
+    /** The test running on the current thread, and the sessions it opened so far **/
+    private static final ThreadLocal<String> currentTest = new ThreadLocal<String>();
+    private static final ThreadLocal<Integer> sessions = new ThreadLocal<Integer>();
+    private static final ThreadLocal<List<Recorder>> recorders = new ThreadLocal<List<Recorder>>();
+
+    /** True with -Dtraffic=record **/
+    public static boolean recording() {
+        return "record".equals(mode);
+    }
+
+    /** True with -Dtraffic=replay **/
+    public static boolean replaying() {
+        return "replay".equals(mode);
+    }
+
+    /** Record or replay the sessions the test opens on the current thread **/
+    public static void start(String test) {
+        currentTest.set(test);
+        sessions.set(0);
+    }
+
+    /** Close the logs of the current thread's test **/
+    public static void finish() {
+        List<Recorder> open = recorders.get();
+        recorders.remove();
+        currentTest.remove();
+        sessions.remove();
+        if (open == null) return;
+        for (Recorder recorder : open) {
+            recorder.close();
+        }
+    }
+
+    /** The log of the next session the current test opens, or null outside a test **/
+    private static File nextLog() {
+        String test = currentTest.get();
+        if (test == null) return null;
+        int session = sessions.get();
+        sessions.set(session + 1);
+        String name = test.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_|_$", "");
+        return new File(directory, name + (session == 0 ? "" : "-" + session) + ".bin");
+    }
+
+    /** A recorder for the next session of the current test, or null outside a test **/
+    static Recorder recorder() {
+        File log = nextLog();
+        if (log == null) return null;
+        try {
+            Recorder recorder = new Recorder(log);
+            List<Recorder> open = recorders.get();
+            if (open == null) {
+                open = new ArrayList<Recorder>();
+                recorders.set(open);
+            }
+            open.add(recorder);
+            return recorder;
+        } catch (IOException e) {
+            throw new WebDriverException("Unable to record the traffic to " + log, e);
+        }
+    }
+
+    /** A replayer for the next session of the current test, or null outside a test **/
+    static Replayer replayer() {
+        File log = nextLog();
+        if (log == null) return null;
+        try {
+            return new Replayer(log);
+        } catch (IOException e) {
+            throw new WebDriverException("Unable to replay the traffic of " + log + ", record it first with -Dtraffic=record", e);
+        }
+    }
+
+    /** Writes the commands of a session and their responses while passing them on **/
+    static class Recorder implements CommandExecutor {
+
+        private final File log;
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final BeanToJsonConverter json = new BeanToJsonConverter();
+        // not synchronized: a virtual thread waiting for the log file would pin its carrier thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private CommandExecutor delegate;
+        private boolean closed;
+
+        Recorder(File log) throws IOException {
+            this.log = log;
+            log.getParentFile().mkdirs();
+            out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(log), 64 * 1024)));
+            out.writeInt(MAGIC);
+        }
+
+        /** Pass commands on to the executor, which the driver may replace after its session started **/
+        Recorder delegateTo(CommandExecutor executor) {
+            if (executor != this) delegate = executor;
+            return this;
+        }
+
+        public Response execute(Command command) throws IOException {
+            long start = System.nanoTime();
+            Response response = delegate.execute(command);
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            lock.lock();
+            try {
+                if (!closed) {
+                    writeString(command.getName());
+                    writeString(json(json, command.getParameters()));
+                    writeString(response.getSessionId() == null ? "" : response.getSessionId());
+                    writeVarint(out, response.getStatus());
+                    writeString(json(json, response.getValue()));
+                    writeVarint(out, micros);
+                    recorded.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (DriverCommand.QUIT.equals(command.getName())) {
+                close();
+            }
+            return response;
+        }
+
+        /** A string the first time, its number after that **/
+        private void writeString(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(out, index + 1);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(UTF8);
+            writeVarint(out, 0);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                out.close();
+                recordedBytes.addAndGet(log.length());
+            } catch (IOException e) {
+                System.out.println("    unable to write the traffic log " + log + ": " + e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Answers the commands of a session from a recorded log **/
+    static class Replayer implements CommandExecutor {
+
+        private final File log;
+        private final List<String> keys = new ArrayList<String>();
+        private final List<Response> responses = new ArrayList<Response>();
+        private final List<Long> micros = new ArrayList<Long>();
+        private final BeanToJsonConverter json = new BeanToJsonConverter();
+        private int next;
+
+        Replayer(File log) throws IOException {
+            this.log = log;
+            DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(log), 64 * 1024)));
+            try {
+                if (in.readInt() != MAGIC) throw new IOException("Not a traffic log: " + log);
+                List<String> strings = new ArrayList<String>();
+                JsonToBeanConverter beans = new JsonToBeanConverter();
+                while (true) {
+                    String name;
+                    try {
+                        name = readString(in, strings);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String parameters = readString(in, strings);
+                    String session = readString(in, strings);
+                    int status = (int) readVarint(in);
+                    String value = readString(in, strings);
+
+                    Response response = new Response();
+                    response.setSessionId(session.length() == 0 ? null : session);
+                    response.setStatus(status);
+                    response.setValue(((Map<?, ?>) beans.convert(Map.class, value)).get("value"));
+
+                    keys.add(key(name, parameters));
+                    responses.add(response);
+                    micros.add(readVarint(in));
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        public synchronized Response execute(Command command) {
+            String key = key(command.getName(), json(json, command.getParameters()));
+            int found = -1;
+            for (int i = next; i < keys.size(); i++) {
+                if (keys.get(i).equals(key)) {
+                    found = i;
+                    break;
+                }
+            }
+            if (found >= 0) {
+                skipped.addAndGet(found - next);
+                replayed.incrementAndGet();
+                next = found + 1;
+            } else {
+                found = keys.lastIndexOf(key);
+                if (found < 0) {
+                    throw new WebDriverException("Not recorded in " + log + ": " + key);
+                }
+                repeated.incrementAndGet();
+            }
+
+            if (originalLatency) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros.get(found)));
+            }
+            Response recorded = responses.get(found);
+            Response response = new Response();
+            response.setSessionId(recorded.getSessionId());
+            response.setStatus(recorded.getStatus());
+            response.setValue(recorded.getValue());
+            return response;
+        }
+    }
+
+    /** What a replayed command is matched by; the capabilities of a new session name the run, with its date **/
+    private static String key(String name, String parameters) {
+        return DriverCommand.NEW_SESSION.equals(name) ? name : name + " " + parameters;
+    }
+
+    /**
+     * The value as the JSON of an object holding it. A bare string or null isn't converted to JSON,
+     * and only an object converts back to the types a server response converts to.
+     */
+    private static String json(BeanToJsonConverter converter, Object value) {
+        return converter.convert(Collections.singletonMap("value", value));
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int index = (int) readVarint(in);
+        if (index > 0) return strings.get(index - 1);
+
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        String value = new String(bytes, UTF8);
+        strings.add(value);
+        return value;
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    /** Commands recorded and replayed so far **/
+    public static String summary() {
+        if (recording()) {
+            return String.format("Traffic: %d commands recorded to %s (%d KB of logs)",
+                    recorded.get(), directory, recordedBytes.get() / 1024);
+        }
+        return String.format("Traffic: %d commands replayed from %s, %d answered again, %d recorded commands not sent any more",
+                replayed.get(), directory, repeated.get(), skipped.get());
+    }
+}
@@ -0,0 +1,83 @@
+package appium.tutorial.ios.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wait times of every condition waited on during the run, printed when the JVM exits with
+ * -Dstats=true.
+ *
+ * Conditions are listed by total time waited. A condition with a high median is a slow
+ * screen. One that is usually met on the first poll but shows up with timeouts is being
+ * waited on when it can't happen, e.g. a check for the wrong screen.
+ */
+public abstract class WaitStats {
+
+    private static final int MAX_NAME_LENGTH = 100;
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    static {
+        Stats.register(new Stats.Summary() {
+            public String summary() {
+                return !entries.isEmpty() ? WaitStats.report() : null;
+            }
+        });
+    }
+
+    /** Record one wait for a condition **/
+    public static void record(String condition, long millis, int polls, boolean timedOut) {
+        Entry entry = entries.get(condition);
+        if (entry == null) {
+            Entry created = new Entry(condition);
+            entry = entries.putIfAbsent(condition, created);
+            if (entry == null) entry = created;
+        }
+
+        entry.millis.record(millis);
+        if (polls == 1) entry.firstPoll.incrementAndGet();
+        if (timedOut) entry.timeouts.incrementAndGet();
+    }
+
+    /** Wait times per condition, slowest total first **/
+    public static String report() {
+        List<Entry> sorted = new ArrayList<Entry>(entries.values());
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                long ta = a.millis.total();
+                long tb = b.millis.total();
+                return ta < tb ? 1 : ta == tb ? 0 : -1;
+            }
+        });
+
+        StringBuilder report = new StringBuilder("Wait times (ms):\n");
+        for (Entry entry : sorted) {
+            report.append("  ").append(entry.millis)
+                    .append(" total=").append(entry.millis.total())
+                    .append(" met on first poll=").append(entry.firstPoll.get())
+                    .append(" timeouts=").append(entry.timeouts.get())
+                    .append("  ").append(shorten(entry.condition)).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String shorten(String condition) {
+        return condition.length() <= MAX_NAME_LENGTH ? condition : condition.substring(0, MAX_NAME_LENGTH) + "...";
+    }
+
+    private static class Entry {
+        final String condition;
+        final Histogram millis = new Histogram();
+        final AtomicLong firstPoll = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+
+        Entry(String condition) {
+            this.condition = condition;
+        }
+    }
+}